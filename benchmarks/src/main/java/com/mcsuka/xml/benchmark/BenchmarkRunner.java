@@ -0,0 +1,21 @@
+package com.mcsuka.xml.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Run all benchmarks, or the ones matching the regular expression in the first argument, with the GC profiler to
+ * report allocation rates.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+            .include(args.length > 0 ? args[0] : "com.mcsuka.xml.benchmark")
+            .addProfiler(GCProfiler.class)
+            .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.mcsuka.xml.benchmark;
+
+import java.nio.file.Path;
+
+/**
+ * Input files and generated payloads of the benchmarks. The test data directory defaults to ../testdata, it can be
+ * overridden with the testdata.dir system property.
+ */
+final class Payloads {
+
+    private Payloads() {
+    }
+
+    /**
+     * @return absolute path of a file in the test data directory, e.g. input("Simple.xsd")
+     */
+    static String input(String fileName) {
+        return Path.of(System.getProperty("testdata.dir", "../testdata"), "input", fileName)
+            .toAbsolutePath()
+            .normalize()
+            .toString();
+    }
+
+    /**
+     * An instance of the Simple.xsd root2 element, with the given number of nested address elements
+     */
+    static String simpleRoot2Xml(int addresses) {
+        StringBuilder xml = new StringBuilder("<ns0:root2 xmlns:ns0=\"http://dummy.org/1231312\"><address>")
+            .append("<street>strt</street><houseNumber>1</houseNumber><postCode>zip</postCode><city>cty</city>")
+            .append("<ns0:municipality x=\"x\">true</ns0:municipality>");
+        for (int i = 0; i < addresses; i++) {
+            xml.append("<address><street>s").append(i).append("</street><houseNumber>").append(i)
+                .append("</houseNumber><postCode>zip</postCode><city>cty</city>")
+                .append("<ns0:municipality x=\"x\">false</ns0:municipality></address>");
+        }
+        return xml.append("</address></ns0:root2>").toString();
+    }
+
+    /**
+     * The JSON representation of simpleRoot2Xml
+     */
+    static String simpleRoot2Json(int addresses) {
+        StringBuilder json = new StringBuilder("{\"address\":{\"street\":\"strt\",\"houseNumber\":1,\"postCode\":\"zip\",")
+            .append("\"city\":\"cty\",\"municipality\":{\"x\":\"x\",\"_content\":true},\"address\":[");
+        for (int i = 0; i < addresses; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"street\":\"s").append(i).append("\",\"houseNumber\":").append(i)
+                .append(",\"postCode\":\"zip\",\"city\":\"cty\",\"municipality\":{\"x\":\"x\",\"_content\":false}}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    /**
+     * A PlaceOrder request of eCommerce.wsdl, with the given number of products
+     */
+    static String orderJson(int products) {
+        StringBuilder json = new StringBuilder("{\"OrderId\":\"24252542\",\"CustomerName\":\"Joe\",\"Products\":{\"Product\":[");
+        for (int i = 0; i < products; i++) {
+            json.append(i == 0 ? "" : ",")
+                .append("{\"ProductId\":\"prod-").append(i).append("\",\"ProductName\":\"Apple ").append(i)
+                .append("\",\"Price\":1.23}");
+        }
+        return json.append("]}}").toString();
+    }
+
+    /**
+     * A GetProduct response of eCommerce.wsdl
+     */
+    static String productSoapResponse() {
+        return "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"><SOAP-ENV:Body>"
+            + "<Product xmlns=\"http://example.com/ecommerce/schema\"><ProductId>31415</ProductId>"
+            + "<ProductName>Fidget Spinner</ProductName><Price>13.14</Price></Product>"
+            + "</SOAP-ENV:Body></SOAP-ENV:Envelope>";
+    }
+}
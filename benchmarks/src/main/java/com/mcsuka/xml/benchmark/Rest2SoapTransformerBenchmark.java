@@ -0,0 +1,83 @@
+package com.mcsuka.xml.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mcsuka.xml.http.RequestParameter;
+import com.mcsuka.xml.http.Rest2SoapTransformer;
+import com.mcsuka.xml.http.RestRequest;
+import com.mcsuka.xml.http.RestResponse;
+import com.mcsuka.xml.http.SoapRequest;
+import com.mcsuka.xml.http.SoapResponse;
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+
+/**
+ * REST to SOAP request and SOAP to REST response transformation of the eCommerce.wsdl operations, as done by the
+ * proxy for each request, without the HTTP transport. The size parameter is the number of products in the order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class Rest2SoapTransformerBenchmark {
+
+    @Param({"1", "100"})
+    public int size;
+
+    private Rest2SoapTransformer transformer;
+    private SoapRestServiceDefinition getProduct;
+    private RestRequest getRequest;
+    private RestRequest postRequest;
+    private SoapResponse getResponse;
+
+    @Setup
+    public void setup() throws Exception {
+        String wsdl = "file://" + Payloads.input("eCommerce.wsdl");
+        RequestParameter productId = new RequestParameter("productId", "path", Map.of("type", "string"),
+            false, true, new String[]{"ProductId"}, null);
+        getProduct = new SoapRestServiceDefinition("http://localhost/soap", "/order/{productId}", "get",
+            List.of(productId), new WsdlDocumentSource(wsdl), "GetProduct", "GetProduct");
+        SoapRestServiceDefinition placeOrder = new SoapRestServiceDefinition("http://localhost/soap", "/order", "post",
+            List.of(), new WsdlDocumentSource(wsdl), "PlaceOrder", "PlaceOrder");
+        transformer = new Rest2SoapTransformer(List.of(placeOrder, getProduct));
+
+        NavigableMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Content-Type", "application/json");
+        getRequest = new RestRequest("get", "/order/123456", null, null, headers);
+        postRequest = new RestRequest("post", "/order", null, Payloads.orderJson(size), headers);
+        getResponse = new SoapResponse(200, Payloads.productSoapResponse());
+    }
+
+    @Benchmark
+    public SoapRequest getRequest() throws Exception {
+        return transformer.transformRequest(getRequest);
+    }
+
+    @Benchmark
+    public SoapRequest postRequest() throws Exception {
+        return transformer.transformRequest(postRequest);
+    }
+
+    @Benchmark
+    public RestResponse getResponse() throws Exception {
+        return transformer.transformResponse(getProduct, getResponse);
+    }
+}
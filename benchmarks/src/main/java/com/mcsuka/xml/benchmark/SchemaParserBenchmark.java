@@ -0,0 +1,76 @@
+package com.mcsuka.xml.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.gson.JsonObject;
+import com.mcsuka.xml.json.Xsd2JsonSchema;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.model.SchemaParser;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
+
+/**
+ * Building the SchemaNode tree of an element (SchemaParser.parse) and translating it to JSON Schema. The XSD and
+ * WSDL documents are loaded once, in the setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SchemaParserBenchmark {
+
+    private SchemaParser simpleXsd;
+    private SchemaParser complexXsd;
+    private SchemaParser eCommerceWsdl;
+    private SchemaNode simpleRoot2;
+    private SchemaNode complexRoot;
+
+    @Setup
+    public void setup() throws Exception {
+        simpleXsd = SchemaParserFactory.newSchemaParser(Payloads.input("Simple.xsd"), new XsdDocumentSource());
+        complexXsd = SchemaParserFactory.newSchemaParser(Payloads.input("Complex.xsd"), new XsdDocumentSource());
+        eCommerceWsdl = SchemaParserFactory.newSchemaParser("http://example.com/ecommerce/schema",
+            new WsdlDocumentSource("file://" + Payloads.input("eCommerce.wsdl")));
+        simpleRoot2 = simpleXsd.parse("root2");
+        complexRoot = complexXsd.parse("root");
+    }
+
+    @Benchmark
+    public SchemaNode parseSimpleXsd() throws Exception {
+        return simpleXsd.parse("root2");
+    }
+
+    @Benchmark
+    public SchemaNode parseComplexXsd() throws Exception {
+        return complexXsd.parse("root");
+    }
+
+    @Benchmark
+    public SchemaNode parseWsdl() throws Exception {
+        return eCommerceWsdl.parse("Order");
+    }
+
+    @Benchmark
+    public JsonObject translateSimpleSchema() {
+        return Xsd2JsonSchema.translateSchema(simpleRoot2);
+    }
+
+    @Benchmark
+    public JsonObject translateComplexSchema() {
+        return Xsd2JsonSchema.translateSchema(complexRoot);
+    }
+}
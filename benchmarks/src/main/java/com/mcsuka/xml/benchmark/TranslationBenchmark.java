@@ -0,0 +1,112 @@
+package com.mcsuka.xml.benchmark;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import com.mcsuka.xml.json.Json2Xml;
+import com.mcsuka.xml.json.StreamingJson2Xml;
+import com.mcsuka.xml.json.StreamingXml2Json;
+import com.mcsuka.xml.json.TranslationPlan;
+import com.mcsuka.xml.json.Xml2Json;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
+
+/**
+ * XML to JSON and JSON to XML translation of the Simple.xsd root2 element, with and without the XML Schema. The size
+ * parameter is the number of repeated address elements in the payload.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslationBenchmark {
+
+    @Param({"1", "100", "10000"})
+    public int size;
+
+    private String xml;
+    private String json;
+    private JsonElement jsonTree;
+
+    private Xml2Json xml2json;
+    private Xml2Json xml2jsonXsd;
+    private StreamingXml2Json streamingXml2jsonXsd;
+    private Json2Xml json2xml;
+    private Json2Xml json2xmlXsd;
+    private StreamingJson2Xml streamingJson2xmlXsd;
+
+    @Setup
+    public void setup() throws Exception {
+        xml = Payloads.simpleRoot2Xml(size);
+        json = Payloads.simpleRoot2Json(size);
+        jsonTree = JsonParser.parseString(json);
+
+        SchemaNode grammar = SchemaParserFactory.newSchemaParser(Payloads.input("Simple.xsd"), new XsdDocumentSource())
+            .parse("root2");
+        TranslationPlan plan = TranslationPlan.compile(grammar);
+        xml2json = new Xml2Json(true);
+        xml2jsonXsd = new Xml2Json(true, plan);
+        streamingXml2jsonXsd = new StreamingXml2Json(true, plan);
+        json2xml = new Json2Xml();
+        json2xmlXsd = new Json2Xml(plan);
+        streamingJson2xmlXsd = new StreamingJson2Xml(plan);
+    }
+
+    @Benchmark
+    public JsonElement xml2json() throws Exception {
+        return xml2json.translate(xml);
+    }
+
+    @Benchmark
+    public JsonElement xml2jsonXsd() throws Exception {
+        return xml2jsonXsd.translate(xml);
+    }
+
+    @Benchmark
+    public String streamingXml2jsonXsd() throws Exception {
+        StringWriter sw = new StringWriter();
+        streamingXml2jsonXsd.translate(new StringReader(xml), sw);
+        return sw.toString();
+    }
+
+    @Benchmark
+    public Document json2xml() {
+        return json2xml.translate(jsonTree, "root2", "http://dummy.org/1231312");
+    }
+
+    @Benchmark
+    public Document json2xmlXsd() {
+        return json2xmlXsd.translate(jsonTree);
+    }
+
+    @Benchmark
+    public Document parseAndJson2xmlXsd() {
+        return json2xmlXsd.translate(json);
+    }
+
+    @Benchmark
+    public String streamingJson2xmlXsd() throws Exception {
+        StringWriter sw = new StringWriter();
+        streamingJson2xmlXsd.translate(new StringReader(json), sw);
+        return sw.toString();
+    }
+}
@@ -0,0 +1,208 @@
+package com.mcsuka.xml.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binary parts of MTOM / XOP responses, streamed to temporary files. The JSON response refers to them by links, which
+ * the REST client may download until the attachments expire. The content of an attachment is never held in memory,
+ * nor base64-encoded.
+ * <br/>
+ * Expired attachments are deleted when attachments are stored or downloaded, at most once a second, and an expired
+ * attachment at once when it is requested. The total size of the stored attachments is capped: storing a part that
+ * does not fit fails with an IOException.
+ */
+public class AttachmentStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentStore.class);
+
+    /**
+     * Path prefix of the attachment links
+     */
+    public static final String PATH = "/attachments/";
+
+    private static final long CLEANUP_INTERVAL_MS = 1000;
+
+    /**
+     * A stored attachment
+     *
+     * @param file the content
+     * @param contentType the Content-Type of the MIME part
+     * @param size the size of the content in bytes
+     */
+    public record Attachment(Path file, String contentType, long size) {
+    }
+
+    private record Entry(Attachment attachment, long expiresAt) {
+    }
+
+    private final Path dir;
+    private final long ttlMs;
+    private final long maxBytes;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong nextCleanup = new AtomicLong();
+
+    /**
+     * @param dir directory of the temporary files, it is created if it does not exist
+     * @param ttlMs time to live of the attachments, from the time they are stored
+     */
+    public AttachmentStore(Path dir, long ttlMs) {
+        this(dir, ttlMs, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param maxBytes maximum total size of the stored attachments
+     */
+    public AttachmentStore(Path dir, long ttlMs, long maxBytes) {
+        this.dir = dir;
+        this.ttlMs = ttlMs;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return a new, unguessable ID that groups the attachments of a response
+     */
+    public String newResponseId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * @param href the href of an xop:Include, a cid: URL
+     * @return the link to the attachment, relative to the root of the server
+     */
+    public String link(String responseId, String href) {
+        String contentId = href;
+        if (href.regionMatches(true, 0, "cid:", 0, 4)) {
+            try {
+                contentId = new URI(href).getSchemeSpecificPart();
+            } catch (URISyntaxException e) {
+                contentId = href.substring(4);
+            }
+        }
+        return PATH + key(responseId, contentId);
+    }
+
+    private static String key(String responseId, String contentId) {
+        return responseId + "/"
+            + Base64.getUrlEncoder().withoutPadding().encodeToString(contentId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Stream a binary part to a temporary file, and remove the expired attachments
+     *
+     * @throws IOException also if the attachments would exceed the maximum total size
+     */
+    public void store(String responseId, MultipartReader.Part part) throws IOException {
+        removeExpired();
+        String contentId = part.contentId();
+        if (contentId == null) {
+            logger.warn("MIME part without Content-ID is skipped");
+            return;
+        }
+        Files.createDirectories(dir);
+        Path file = Files.createTempFile(dir, "attachment", ".bin");
+        long size = 0;
+        try {
+            try (OutputStream out = Files.newOutputStream(file)) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = part.body().read(buffer)) >= 0) {
+                    size += n;
+                    if (totalBytes.addAndGet(n) > maxBytes) {
+                        throw new IOException("Attachment " + contentId + " exceeds the maximum total size of the "
+                            + "attachments, " + maxBytes + " bytes");
+                    }
+                    out.write(buffer, 0, n);
+                }
+            }
+            Entry old = entries.put(key(responseId, contentId), new Entry(new Attachment(file, part.contentType(),
+                size), System.currentTimeMillis() + ttlMs));
+            if (old != null) {
+                delete(old.attachment());
+            }
+        } catch (IOException | RuntimeException e) {
+            totalBytes.addAndGet(-size);
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    /**
+     * @param path the path of a link, starting with PATH
+     * @return the attachment, unless it is unknown or expired
+     */
+    public Optional<Attachment> get(String path) {
+        removeExpired();
+        String key = path.startsWith(PATH) ? path.substring(PATH.length()) : null;
+        Entry entry = key == null ? null : entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expiresAt() < System.currentTimeMillis()) {
+            remove(key, entry);
+            return Optional.empty();
+        }
+        return Optional.of(entry.attachment());
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total size of the stored attachments in bytes
+     */
+    public long totalBytes() {
+        return totalBytes.get();
+    }
+
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        long next = nextCleanup.get();
+        if (now < next || !nextCleanup.compareAndSet(next, now + CLEANUP_INTERVAL_MS)) {
+            return;
+        }
+        entries.forEach((key, entry) -> {
+            if (entry.expiresAt() < now) {
+                remove(key, entry);
+            }
+        });
+    }
+
+    private void remove(String key, Entry entry) {
+        if (entries.remove(key, entry)) {
+            delete(entry.attachment());
+        }
+    }
+
+    /**
+     * Remove all attachments
+     */
+    public void clear() {
+        entries.forEach(this::remove);
+    }
+
+    private void delete(Attachment attachment) {
+        totalBytes.addAndGet(-attachment.size());
+        try {
+            Files.deleteIfExists(attachment.file());
+        } catch (IOException e) {
+            logger.warn("Unable to delete attachment " + attachment.file(), e);
+        }
+    }
+}
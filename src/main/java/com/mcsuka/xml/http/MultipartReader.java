@@ -0,0 +1,227 @@
+package com.mcsuka.xml.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Reads the parts of a MIME multipart message, e.g. an MTOM / XOP response, one after the other while the message is
+ * being received. The content of a part is streamed through a small buffer, it is never held in memory as a whole.
+ * A part must be read, or skipped, before the next part is requested.
+ */
+public final class MultipartReader {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MAX_HEADER_LINE = 8192;
+
+    /**
+     * A part of the message
+     *
+     * @param headers the part headers, with case-insensitive names
+     * @param body the content of the part, valid until the next part is requested
+     */
+    public record Part(Map<String, String> headers, InputStream body) {
+
+        /**
+         * @return the Content-ID header, without the angle brackets, or null
+         */
+        public String contentId() {
+            String id = headers.get("Content-ID");
+            return id == null ? null : stripAngleBrackets(id.trim());
+        }
+
+        public String contentType() {
+            return headers.getOrDefault("Content-Type", "application/octet-stream");
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean eof = false;
+    private PartInputStream current;
+    private boolean finished = false;
+
+    /**
+     * @param boundary the boundary parameter of the multipart Content-Type
+     */
+    public MultipartReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        // the first delimiter may be at the very start of the message, without a preceding line break
+        buffer[limit++] = '\r';
+        buffer[limit++] = '\n';
+    }
+
+    /**
+     * @return true if the Content-Type is a multipart media type
+     */
+    public static boolean isMultipart(String contentType) {
+        return contentType != null && contentType.trim().toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    /**
+     * @return a parameter of a Content-Type header, without quotes, e.g. the boundary
+     */
+    public static Optional<String> getParameter(String contentType, String name) {
+        if (contentType == null) {
+            return Optional.empty();
+        }
+        for (String param : contentType.split(";(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)")) {
+            int eq = param.indexOf('=');
+            if (eq > 0 && param.substring(0, eq).trim().equalsIgnoreCase(name)) {
+                String value = param.substring(eq + 1).trim();
+                if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                    value = value.substring(1, value.length() - 1);
+                }
+                return Optional.of(value);
+            }
+        }
+        return Optional.empty();
+    }
+
+    static String stripAngleBrackets(String id) {
+        return id.startsWith("<") && id.endsWith(">") ? id.substring(1, id.length() - 1) : id;
+    }
+
+    /**
+     * Skip the rest of the current part, and read the headers of the next one
+     *
+     * @return the next part, or empty after the last part
+     * @throws IOException reading failed, or the message is truncated
+     */
+    public Optional<Part> nextPart() throws IOException {
+        if (finished) {
+            return Optional.empty();
+        }
+        // skip the preamble before the first part, or the rest of the current part
+        (current == null ? new PartInputStream() : current).transferTo(OutputStream.nullOutputStream());
+        String delimiterLine = readLine();
+        if (delimiterLine == null || delimiterLine.startsWith("--")) {
+            finished = true;
+            return Optional.empty();
+        }
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+            }
+        }
+        if (line == null) {
+            throw new IOException("Truncated multipart message");
+        }
+        current = new PartInputStream();
+        return Optional.of(new Part(headers, current));
+    }
+
+    /**
+     * Make at least n bytes available in the buffer, unless the end of the stream is reached
+     */
+    private void fill(int n) throws IOException {
+        if (limit - pos >= n || eof) {
+            return;
+        }
+        System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+        limit -= pos;
+        pos = 0;
+        while (limit < n) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0) {
+                eof = true;
+                return;
+            }
+            limit += read;
+        }
+    }
+
+    /**
+     * @return the next line without its line break, or null at the end of the stream
+     */
+    private String readLine() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        while (true) {
+            fill(1);
+            if (pos == limit) {
+                return sb.isEmpty() ? null : sb.toString();
+            }
+            byte b = buffer[pos++];
+            if (b == '\n') {
+                int len = sb.length();
+                return len > 0 && sb.charAt(len - 1) == '\r' ? sb.substring(0, len - 1) : sb.toString();
+            }
+            if (sb.length() == MAX_HEADER_LINE) {
+                throw new IOException("Multipart header line is too long");
+            }
+            sb.append((char) (b & 0xFF));
+        }
+    }
+
+    private int indexOfDelimiter() {
+        int last = limit - delimiter.length;
+        outer:
+        for (int i = pos; i <= last; i++) {
+            for (int j = 0; j < delimiter.length; j++) {
+                if (buffer[i + j] != delimiter[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Content of a part: the bytes up to the next delimiter. The bytes that may be the start of a delimiter are held
+     * back in the buffer, until it is decided.
+     */
+    private final class PartInputStream extends InputStream {
+
+        private boolean ended = false;
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) throws IOException {
+            if (ended) {
+                return -1;
+            }
+            if (len == 0) {
+                return 0;
+            }
+            fill(delimiter.length);
+            int found = indexOfDelimiter();
+            int available;
+            if (found >= 0) {
+                available = found - pos;
+            } else if (eof) {
+                throw new IOException("Truncated multipart message");
+            } else {
+                available = limit - pos - delimiter.length + 1;
+            }
+            if (available == 0) {
+                pos += delimiter.length;
+                ended = true;
+                return -1;
+            }
+            int n = Math.min(len, available);
+            System.arraycopy(buffer, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+    }
+}
@@ -3,13 +3,10 @@ package com.mcsuka.xml.http;
 import com.google.gson.*;
 import com.mcsuka.xml.json.Xsd2JsonSchema;
 import com.mcsuka.xml.xsd.model.SchemaNode;
-import com.mcsuka.xml.xsd.model.SchemaParser;
-import com.mcsuka.xml.xsd.model.SchemaParserFactory;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.xml.namespace.QName;
 import java.util.List;
 
 public class OasGenerator {
@@ -89,14 +86,11 @@ public class OasGenerator {
         });
         service.add("parameters", parameters);
 
-        serviceDef.getWsdlSource()
-            .getOperation(serviceDef.getOperationName())
+        serviceDef.getOperation()
             .ifPresent(op -> {
                 if (serviceDef.getRestMethod().startsWith("p")) { // post, put, patch
-                    QName reqRoot = op.requestRootElement();
                     try {
-                        SchemaParser p = SchemaParserFactory.newSchemaParser(reqRoot.getNamespaceURI(), serviceDef.getWsdlSource());
-                        SchemaNode requestXmlSchema = p.parse(reqRoot.getLocalPart());
+                        SchemaNode requestXmlSchema = serviceDef.getRequestSchema().orElseThrow();
                         JsonObject requestJsonSchema = Xsd2JsonSchema.renderElement(requestXmlSchema);
                         service.add("requestBody", contentWithSchema(requestJsonSchema, "Request Body"));
                     } catch (Exception e) {
@@ -104,12 +98,10 @@ public class OasGenerator {
                         service.add("requestBody", contentWithSchema(createJsonObject("type", "string"), "Request Body"));
                     }
                 }
-                QName respRoot = op.responseRootElement();
                 JsonObject responses = new JsonObject();
                 service.add("responses", responses);
                 try {
-                    SchemaParser p = SchemaParserFactory.newSchemaParser(respRoot.getNamespaceURI(), serviceDef.getWsdlSource());
-                    SchemaNode responseXmlSchema = p.parse(respRoot.getLocalPart());
+                    SchemaNode responseXmlSchema = serviceDef.getResponseSchema().orElseThrow();
                     JsonObject responseJsonSchema = Xsd2JsonSchema.renderElement(responseXmlSchema);
                     responses.add("200", contentWithSchema(responseJsonSchema, "Success Response"));
                 } catch (Exception e) {
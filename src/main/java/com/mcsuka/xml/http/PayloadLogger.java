@@ -0,0 +1,364 @@
+package com.mcsuka.xml.http;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Sampled logging of the REST and SOAP messages. A request is sampled by the log settings of its service. The events
+ * of the sampled requests are put into a ring buffer of preallocated slots, and formatted and logged by a background
+ * thread, which is parked while the buffer is empty and unparked by the next event. The request threads only copy the
+ * start of the REST request body, the one part of the message that does not outlive the request, into the buffer of a
+ * slot; they never format, wait for the log I/O or block on a full buffer: events that do not fit into the buffer are
+ * dropped and counted.
+ */
+public final class PayloadLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(PayloadLogger.class);
+
+    /**
+     * @param sampleRate the ratio of the requests logged, from 0 (none) to 1 (all)
+     * @param maxBodyBytes the maximum number of bytes logged of a message body, the rest is truncated
+     */
+    public record Settings(double sampleRate, int maxBodyBytes) {
+
+        public Settings {
+            if (!(sampleRate >= 0 && sampleRate <= 1) || maxBodyBytes < 0) {
+                throw new IllegalArgumentException("Payload log settings are invalid: " + sampleRate + ", "
+                    + maxBodyBytes);
+            }
+        }
+    }
+
+    /**
+     * Statistics of the logger, since it was created
+     *
+     * @param loggedCount number of events logged
+     * @param droppedCount number of events dropped, because the buffer was full
+     */
+    public record LogStats(long loggedCount, long droppedCount) {
+    }
+
+    private enum Kind {
+        REST_REQUEST, SOAP_REQUEST, SOAP_RESPONSE, REST_RESPONSE
+    }
+
+    /**
+     * An event in the ring buffer. The fields are written by the producer before it publishes the sequence, and read
+     * by the consumer after it has seen the sequence.
+     */
+    private static final class Slot {
+        private volatile long sequence = -1;
+        private Kind kind;
+        private long traceId;
+        private Object subject;
+        private int status;
+        private int maxBodyBytes;
+        private String method;
+        private String uri;
+        private String query;
+        private Map<String, String> headers;
+        private byte[] body;
+        private int bodyLength;
+        private long bodySize;  // -1 if the message has no body
+        private Charset charset;
+
+        private Slot(int bodyCapacity) {
+            body = new byte[bodyCapacity];
+        }
+    }
+
+    private final Settings defaults;
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private volatile long tail = 0;
+    private final AtomicLong traceIds = new AtomicLong();
+    private final LongAdder loggedCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final Consumer<String> sink;
+    private final BooleanSupplier enabled;
+    private volatile boolean running;
+    private volatile boolean parked;
+    private volatile Thread consumer;
+
+    /**
+     * @param defaults the settings of the services without log settings, and of the requests not routed to a service
+     * @param bufferSize the number of events the buffer holds, rounded up to a power of 2. Each slot preallocates a
+     *                   body buffer of the default maxBodyBytes.
+     */
+    public PayloadLogger(Settings defaults, int bufferSize) {
+        this(defaults, bufferSize, logger::info, logger::isInfoEnabled);
+    }
+
+    PayloadLogger(Settings defaults, int bufferSize, Consumer<String> sink, BooleanSupplier enabled) {
+        this.defaults = defaults;
+        int capacity = Integer.highestOneBit(Math.max(1, bufferSize - 1)) << 1;
+        this.slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(defaults.maxBodyBytes());
+        }
+        this.mask = capacity - 1;
+        this.sink = sink;
+        this.enabled = enabled;
+    }
+
+    public Settings getDefaults() {
+        return defaults;
+    }
+
+    public int getBufferSize() {
+        return slots.length;
+    }
+
+    /**
+     * Start the background thread, if it is not running
+     */
+    public synchronized void start() {
+        if (consumer == null) {
+            running = true;
+            consumer = new Thread(this::consume, "payload-logger");
+            consumer.setDaemon(true);
+            consumer.start();
+        }
+    }
+
+    /**
+     * Log the events in the buffer, and stop the background thread
+     */
+    public synchronized void stop() throws InterruptedException {
+        if (consumer != null) {
+            running = false;
+            LockSupport.unpark(consumer);
+            consumer.join();
+            consumer = null;
+        }
+    }
+
+    /**
+     * Decide whether the request is sampled, and log it if it is. Must be called before the body of the request is
+     * released. The request line and the headers are referenced by the slot, the start of the body is copied into the
+     * buffer of the slot; nothing is formatted here.
+     *
+     * @param serviceDef the service of the request, or null if it could not be routed
+     * @return the trace ID of the request, to be passed to the other log methods; 0 if the request is not sampled
+     */
+    public long logRestRequest(RestRequest restRequest, SoapRestServiceDefinition serviceDef) {
+        Settings settings = serviceDef == null ? defaults : serviceDef.getLogSettings().orElse(defaults);
+        if (!sampled(settings.sampleRate()) || !enabled.getAsBoolean()) {
+            return 0;
+        }
+        long traceId = traceIds.incrementAndGet();
+        long sequence = claim();
+        if (sequence >= 0) {
+            Slot slot = slots[(int) sequence & mask];
+            fill(slot, Kind.REST_REQUEST, traceId, null, 0, settings.maxBodyBytes());
+            slot.method = restRequest.method();
+            slot.uri = restRequest.requestUri();
+            slot.query = restRequest.queryString();
+            slot.headers = restRequest.headers();
+            RequestBody body = restRequest.requestBody();
+            try {
+                if (body != null) {
+                    int length = Math.min(body.length(), settings.maxBodyBytes());
+                    ensureCapacity(slot, length);
+                    slot.charset = body.charset();
+                    slot.bodySize = body.length();
+                    slot.bodyLength = body.copyTo(slot.body, length);
+                }
+            } finally {
+                // a claimed slot is always published, the consumer waits for it
+                slot.sequence = sequence;
+                wakeConsumer();
+            }
+        }
+        return traceId;
+    }
+
+    public void logSoapRequest(long traceId, SoapRequest soapRequest) {
+        publish(Kind.SOAP_REQUEST, traceId, soapRequest, 0,
+            soapRequest.serviceDef().getLogSettings().orElse(defaults).maxBodyBytes());
+    }
+
+    /**
+     * @param body the start of the response body, its first length bytes are copied
+     * @param size the size of the whole response body
+     */
+    public void logSoapResponse(long traceId, int status, String contentType, byte[] body, int length, long size) {
+        publishBody(Kind.SOAP_RESPONSE, traceId, contentType, status, body, length, size, null);
+    }
+
+    /**
+     * @param source where the response comes from, e.g. "cache", or null if it is translated from the SOAP response
+     * @param body the start of the JSON response body, its first length bytes are copied
+     * @param size the size of the whole response body
+     */
+    public void logRestResponse(long traceId, int status, String source, byte[] body, int length, long size) {
+        publishBody(Kind.REST_RESPONSE, traceId, source, status, body, length, size, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the number of bytes logged of the bodies of a service, see logSoapResponse and logRestResponse
+     */
+    public int maxBodyBytes(SoapRestServiceDefinition serviceDef) {
+        return serviceDef.getLogSettings().orElse(defaults).maxBodyBytes();
+    }
+
+    public LogStats getStats() {
+        return new LogStats(loggedCount.sum(), droppedCount.sum());
+    }
+
+    private static boolean sampled(double sampleRate) {
+        return sampleRate >= 1 || sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    private void publish(Kind kind, long traceId, Object subject, int status, int maxBodyBytes) {
+        if (traceId == 0) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence >= 0) {
+            Slot slot = slots[(int) sequence & mask];
+            fill(slot, kind, traceId, subject, status, maxBodyBytes);
+            slot.sequence = sequence;
+            wakeConsumer();
+        }
+    }
+
+    /**
+     * Publish an event with a body, copied into the buffer of the slot
+     *
+     * @param charset the charset of the body, or null to take it from the content type in the subject
+     */
+    private void publishBody(Kind kind, long traceId, Object subject, int status, byte[] body, int length, long size,
+                             Charset charset) {
+        if (traceId == 0) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence >= 0) {
+            Slot slot = slots[(int) sequence & mask];
+            fill(slot, kind, traceId, subject, status, length);
+            ensureCapacity(slot, length);
+            System.arraycopy(body, 0, slot.body, 0, length);
+            slot.bodyLength = length;
+            slot.bodySize = size;
+            slot.charset = charset;
+            slot.sequence = sequence;
+            wakeConsumer();
+        }
+    }
+
+    private static void ensureCapacity(Slot slot, int length) {
+        if (slot.body.length < length) {
+            slot.body = new byte[length];   // the service logs more than the defaults
+        }
+    }
+
+    /**
+     * Unpark the consumer if it waits for an event. The consumer sets parked before it checks the next slot for the
+     * last time, and the producers publish before they check parked, so either the consumer sees the event or the
+     * producer sees the consumer parked.
+     */
+    private void wakeConsumer() {
+        if (parked) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private static void fill(Slot slot, Kind kind, long traceId, Object subject, int status, int maxBodyBytes) {
+        slot.kind = kind;
+        slot.traceId = traceId;
+        slot.subject = subject;
+        slot.status = status;
+        slot.maxBodyBytes = maxBodyBytes;
+        slot.bodyLength = 0;
+        slot.bodySize = -1;
+    }
+
+    /**
+     * @return the sequence of a free slot, or -1 if the buffer is full
+     */
+    private long claim() {
+        while (true) {
+            long sequence = head.get();
+            if (sequence - tail >= slots.length) {
+                droppedCount.increment();
+                return -1;
+            }
+            if (head.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void consume() {
+        long next = tail;
+        while (running || next < head.get()) {
+            Slot slot = slots[(int) next & mask];
+            if (slot.sequence != next) {
+                parked = true;
+                if (slot.sequence != next && (running || next < head.get())) {
+                    LockSupport.park(this);
+                }
+                parked = false;
+                continue;
+            }
+            try {
+                sink.accept(format(slot));
+                loggedCount.increment();
+            } catch (RuntimeException e) {
+                logger.warn("Unable to log a payload", e);
+            }
+            slot.subject = null;
+            slot.headers = null;
+            slot.charset = null;
+            tail = ++next;
+        }
+    }
+
+    private static String format(Slot slot) {
+        String prefix = "[" + slot.traceId + "] ";
+        return switch (slot.kind) {
+            case REST_REQUEST -> prefix + "Received REST Request: URI: " + slot.method + " " + slot.uri + " Query: "
+                + slot.query + " Headers: " + slot.headers + " Body: "
+                + (slot.bodySize < 0 ? null : truncate(slot.body, slot.bodyLength, slot.bodySize, slot.charset));
+            case SOAP_REQUEST -> {
+                SoapRequest soapRequest = (SoapRequest) slot.subject;
+                byte[] body = soapRequest.body();
+                yield prefix + "Sending SOAP Request: URL: " + soapRequest.serviceDef().getTargetUrl()
+                    + " SOAPAction: " + soapRequest.serviceDef().getSoapAction() + " Contents: "
+                    + truncate(body, Math.min(body.length, slot.maxBodyBytes), body.length, StandardCharsets.UTF_8);
+            }
+            case SOAP_RESPONSE -> prefix + "Received SOAP Response: status " + slot.status + ", Content-Type "
+                + slot.subject + " Contents: "
+                + truncate(slot.body, slot.bodyLength, slot.bodySize, charset((String) slot.subject));
+            case REST_RESPONSE -> prefix + "Sending REST Response" + (slot.subject == null ? "" : " from "
+                + slot.subject) + ": status " + slot.status + " Body: "
+                + truncate(slot.body, slot.bodyLength, slot.bodySize, slot.charset);
+        };
+    }
+
+    private static Charset charset(String contentType) {
+        try {
+            return MultipartReader.getParameter(contentType, "charset").map(Charset::forName)
+                .orElse(StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return StandardCharsets.UTF_8;
+        }
+    }
+
+    private static String truncate(byte[] body, int length, long size, Charset charset) {
+        String text = new String(body, 0, length, charset);
+        return length < size ? text + "... (" + size + " bytes)" : text;
+    }
+}
@@ -0,0 +1,220 @@
+package com.mcsuka.xml.http;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of a REST request, held in buffers taken from a ByteBufferPool. The JSON parser reads the buffers through a
+ * Reader of the request charset, the body is decoded to a String only if it is asked for, e.g. for logging.
+ * <br/>
+ * The buffers must be returned to the pool with release(), once the request is processed. The body is not thread
+ * safe, but it may be handed over between threads.
+ */
+public final class RequestBody {
+
+    static final ByteBufferPool DEFAULT_POOL = new ArrayByteBufferPool();
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_BUFFER_SIZE = CHUNK_SIZE * 16;
+
+    private final ByteBufferPool pool;
+    private final List<ByteBuffer> buffers;
+    private final Charset charset;
+    private String text;
+    private boolean released;
+
+    private RequestBody(ByteBufferPool pool, List<ByteBuffer> buffers, Charset charset, String text) {
+        this.pool = pool;
+        this.buffers = buffers;
+        this.charset = charset;
+        this.text = text;
+    }
+
+    /**
+     * Wrap a String, e.g. in tests. Nothing is taken from a pool.
+     */
+    public static RequestBody of(@NotNull String text) {
+        return new RequestBody(null, List.of(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8))),
+            StandardCharsets.UTF_8, text);
+    }
+
+    /**
+     * Read a request body into pooled buffers. The buffers are taken as the data arrives, at most MAX_BUFFER_SIZE
+     * bytes each: a Content-Length alone does not allocate the body. A body of known length is read up to its length.
+     *
+     * @param contentLength length of the body if known, or -1
+     */
+    public static RequestBody read(InputStream stream, int contentLength, Charset charset, ByteBufferPool pool)
+            throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        try {
+            long remaining = contentLength < 0 ? Long.MAX_VALUE : contentLength;
+            boolean eof = false;
+            while (!eof && remaining > 0) {
+                ByteBuffer buffer = pool.acquire(contentLength < 0 ? CHUNK_SIZE
+                    : (int) Math.min(remaining, MAX_BUFFER_SIZE), false);
+                buffers.add(buffer);
+                buffer.clear();
+                // pooled buffers may be larger than asked for
+                buffer.limit((int) Math.min(buffer.capacity(), remaining));
+                while (buffer.hasRemaining()) {
+                    int n = stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    buffer.position(buffer.position() + n);
+                }
+                buffer.flip();
+                remaining -= buffer.remaining();
+            }
+            return new RequestBody(pool, buffers, charset, null);
+        } catch (IOException | RuntimeException e) {
+            buffers.forEach(pool::release);
+            throw e;
+        }
+    }
+
+    public int length() {
+        int length = 0;
+        for (ByteBuffer buffer : buffers) {
+            length += buffer.remaining();
+        }
+        return length;
+    }
+
+    public Charset charset() {
+        return charset;
+    }
+
+    /**
+     * Copy the start of the body, without allocating
+     *
+     * @param dst the destination, at least length bytes long
+     * @param length the maximum number of bytes to copy
+     * @return the number of bytes copied
+     */
+    public int copyTo(byte[] dst, int length) {
+        checkReleased();
+        int copied = 0;
+        for (ByteBuffer buffer : buffers) {
+            int n = Math.min(length - copied, buffer.remaining());
+            buffer.get(buffer.position(), dst, copied, n);
+            copied += n;
+            if (copied == length) {
+                break;
+            }
+        }
+        return copied;
+    }
+
+    /**
+     * @return the first byte of the body, or -1 if it is empty
+     */
+    public int firstByte() {
+        checkReleased();
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return buffer.get(buffer.position()) & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return a new Reader of the body, decoding the buffers in place
+     */
+    public Reader newReader() {
+        checkReleased();
+        return new InputStreamReader(new BuffersInputStream(buffers), charset);
+    }
+
+    /**
+     * Return the buffers to the pool. The String form of the body remains available, if it was created before.
+     */
+    public void release() {
+        if (!released && pool != null) {
+            buffers.forEach(pool::release);
+        }
+        released = true;
+    }
+
+    private void checkReleased() {
+        if (released && pool != null) {
+            throw new IllegalStateException("Request body was released");
+        }
+    }
+
+    @Override
+    public String toString() {
+        if (text == null) {
+            if (released && pool != null) {
+                return "<released>";
+            }
+            StringBuilder sb = new StringBuilder(length());
+            try (Reader reader = newReader()) {
+                char[] chars = new char[CHUNK_SIZE];
+                int n;
+                while ((n = reader.read(chars)) > 0) {
+                    sb.append(chars, 0, n);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            text = sb.toString();
+        }
+        return text;
+    }
+
+    /**
+     * Reads the buffers in order, without moving their positions
+     */
+    private static final class BuffersInputStream extends InputStream {
+
+        private final List<ByteBuffer> buffers;
+        private int index = 0;
+        private ByteBuffer current;
+
+        BuffersInputStream(List<ByteBuffer> buffers) {
+            this.buffers = buffers;
+        }
+
+        private boolean advance() {
+            while (current == null || !current.hasRemaining()) {
+                if (index == buffers.size()) {
+                    return false;
+                }
+                current = buffers.get(index++).duplicate();
+            }
+            return true;
+        }
+
+        @Override
+        public int read() {
+            return advance() ? current.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte @NotNull [] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!advance()) {
+                return -1;
+            }
+            int n = Math.min(len, current.remaining());
+            current.get(b, off, n);
+            return n;
+        }
+    }
+}
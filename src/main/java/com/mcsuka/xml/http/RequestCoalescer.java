@@ -0,0 +1,113 @@
+package com.mcsuka.xml.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight execution of the backend calls of a read service. The first request of a key becomes the leader of
+ * the call: it calls the backend, translates the response into memory and shares it, then writes it to its own
+ * client. Requests of the same key arriving while the call is in flight are collapsed into it: they wait for the
+ * leader's response, and get the same status and JSON bytes. A call is in flight from begin() until the leader
+ * completes, fails or abandons it; the requests of an abandoned call make their own calls.
+ */
+public final class RequestCoalescer {
+
+    /**
+     * The response of a call
+     *
+     * @param status the REST status
+     * @param json the JSON response
+     */
+    public record Result(int status, byte[] json) {
+    }
+
+    /**
+     * Statistics of the coalescer, since it was created
+     *
+     * @param leaderCount number of backend calls made
+     * @param collapsedCount number of requests served by another request's call
+     * @param inFlight number of calls in flight
+     */
+    public record CoalescerStats(long leaderCount, long collapsedCount, int inFlight) {
+    }
+
+    /**
+     * A request's part in a call
+     */
+    public final class Call {
+
+        private final String key;
+        private final CompletableFuture<Result> result;
+        private final boolean leader;
+
+        private Call(String key, CompletableFuture<Result> result, boolean leader) {
+            this.key = key;
+            this.result = result;
+            this.leader = leader;
+        }
+
+        /**
+         * @return true if this request must call the backend, and complete or fail the call
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * @return the response of the call, for the collapsed requests. Null if the call was abandoned.
+         */
+        public CompletableFuture<Result> result() {
+            return result;
+        }
+
+        /**
+         * Share the leader's response with the collapsed requests, and end the call
+         */
+        public void complete(Result response) {
+            inFlight.remove(key, result);
+            result.complete(response);
+        }
+
+        /**
+         * End the call without a response, e.g. if it is too large to share: the collapsed requests make their own
+         * calls. Has no effect after complete() or fail().
+         */
+        public void abandon() {
+            inFlight.remove(key, result);
+            result.complete(null);
+        }
+
+        /**
+         * Fail the collapsed requests, and end the call. Has no effect after complete() or abandon().
+         */
+        public void fail(Throwable t) {
+            inFlight.remove(key, result);
+            result.completeExceptionally(t);
+        }
+    }
+
+    private final ConcurrentHashMap<String, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder leaderCount = new LongAdder();
+    private final LongAdder collapsedCount = new LongAdder();
+
+    /**
+     * Join the call of the key in flight, or start a new one with this request as its leader
+     *
+     * @param key the key of the request, see SoapRequest.payloadKey()
+     */
+    public Call begin(String key) {
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        CompletableFuture<Result> existing = inFlight.putIfAbsent(key, result);
+        if (existing != null) {
+            collapsedCount.increment();
+            return new Call(key, existing, false);
+        }
+        leaderCount.increment();
+        return new Call(key, result, true);
+    }
+
+    public CoalescerStats getStats() {
+        return new CoalescerStats(leaderCount.sum(), collapsedCount.sum(), inFlight.size());
+    }
+}
@@ -0,0 +1,123 @@
+package com.mcsuka.xml.http;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the JSON responses of a GET service. Entries are keyed by SoapRequest.payloadKey(): the route and the
+ * translated SOAP payload, the SOAP headers are not part of the key. Only successful (200) responses are cached; a hit
+ * skips the SOAP call and the response translation. The cache is bounded by the number of entries and by their total
+ * weight, the bytes of the keys and the responses; the least recently used entries are evicted over the limits.
+ */
+public final class ResponseCache {
+
+    /**
+     * @param ttlMs time to live of the entries, from the time they are stored
+     * @param maxEntries maximum number of entries
+     * @param maxWeight maximum total size of the keys and responses in bytes
+     */
+    public record Settings(long ttlMs, int maxEntries, long maxWeight) {
+
+        public Settings {
+            if (ttlMs < 1 || maxEntries < 1 || maxWeight < 1) {
+                throw new IllegalArgumentException("Response cache settings must be positive: " + ttlMs + ", "
+                    + maxEntries + ", " + maxWeight);
+            }
+        }
+    }
+
+    /**
+     * Statistics of the cache, since it was created
+     *
+     * @param hitCount number of responses served from the cache
+     * @param missCount number of lookups that found no entry, or an expired one
+     * @param evictionCount number of entries evicted to keep the cache within its limits
+     * @param size number of entries, including the expired ones not yet removed
+     * @param weight total weight of the entries
+     */
+    public record CacheStats(long hitCount, long missCount, long evictionCount, int size, long weight) {
+    }
+
+    private record Entry(byte[] json, int weight, long expiresAt) {
+    }
+
+    private final Settings settings;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight = 0;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    public ResponseCache(Settings settings) {
+        this.settings = settings;
+    }
+
+    public Settings getSettings() {
+        return settings;
+    }
+
+    private static int weight(String key, byte[] json) {
+        return key.length() + json.length;
+    }
+
+    /**
+     * @return the JSON response, unless it is not cached or expired
+     */
+    public Optional<byte[]> get(String key) {
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() >= System.currentTimeMillis()) {
+                hitCount.increment();
+                return Optional.of(entry.json());
+            }
+            if (entry != null) {
+                remove(key);
+            }
+        }
+        missCount.increment();
+        return Optional.empty();
+    }
+
+    /**
+     * Store a JSON response, and evict the least recently used entries over the limits. Responses heavier than the
+     * weight limit are not stored.
+     */
+    public void put(String key, byte[] json) {
+        int entryWeight = weight(key, json);
+        if (entryWeight > settings.maxWeight()) {
+            return;
+        }
+        synchronized (this) {
+            remove(key);
+            entries.put(key, new Entry(json, entryWeight, System.currentTimeMillis() + settings.ttlMs()));
+            weight += entryWeight;
+            Iterator<Entry> lru = entries.values().iterator();
+            while (entries.size() > settings.maxEntries() || weight > settings.maxWeight()) {
+                weight -= lru.next().weight();
+                lru.remove();
+                evictionCount.increment();
+            }
+        }
+    }
+
+    private void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            weight -= old.weight();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public CacheStats getStats() {
+        synchronized (this) {
+            return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), entries.size(), weight);
+        }
+    }
+}
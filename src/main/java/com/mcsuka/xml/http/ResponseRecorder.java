@@ -0,0 +1,95 @@
+package com.mcsuka.xml.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Optional;
+
+/**
+ * Writes through to a stream and keeps a copy of the bytes, up to a limit: a response can be cached or shared while
+ * it is streamed to its client. The copy is dropped once the limit is exceeded. The start of the stream can be kept
+ * separately, regardless of the limit, e.g. to be logged.
+ */
+public final class ResponseRecorder extends FilterOutputStream {
+
+    private final long limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+    private final byte[] head;
+    private long count;
+
+    /**
+     * @param limit maximum number of bytes copied
+     */
+    public ResponseRecorder(OutputStream out, long limit) {
+        this(out, limit, 0);
+    }
+
+    /**
+     * @param limit maximum number of bytes copied
+     * @param headLength number of bytes kept of the start of the stream
+     */
+    public ResponseRecorder(OutputStream out, long limit, int headLength) {
+        super(out);
+        this.limit = limit;
+        this.head = new byte[headLength];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        if (count < head.length) {
+            head[(int) count] = (byte) b;
+        }
+        count++;
+        if (fits(1)) {
+            copy.write(b);
+        }
+    }
+
+    @Override
+    public void write(byte @NotNull [] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        if (count < head.length) {
+            System.arraycopy(b, off, head, (int) count, (int) Math.min(len, head.length - count));
+        }
+        count += len;
+        if (fits(len)) {
+            copy.write(b, off, len);
+        }
+    }
+
+    private boolean fits(int len) {
+        if (copy != null && (long) copy.size() + len > limit) {
+            copy = null;
+        }
+        return copy != null;
+    }
+
+    /**
+     * @return the bytes written so far, or empty if they exceeded the limit
+     */
+    public Optional<byte[]> getBytes() {
+        return copy == null ? Optional.empty() : Optional.of(copy.toByteArray());
+    }
+
+    /**
+     * @return the buffer of the start of the stream, its first getHeadLength() bytes are valid
+     */
+    public byte[] getHead() {
+        return head;
+    }
+
+    public int getHeadLength() {
+        return (int) Math.min(count, head.length);
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public long getCount() {
+        return count;
+    }
+}
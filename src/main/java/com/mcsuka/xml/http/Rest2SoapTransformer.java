@@ -1,58 +1,78 @@
 package com.mcsuka.xml.http;
 
 import com.google.gson.*;
-import com.mcsuka.xml.json.Json2Xml;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mcsuka.xml.json.StreamingJson2Xml;
+import com.mcsuka.xml.json.StreamingXml2Json;
 import com.mcsuka.xml.json.Xml2Json;
 import com.mcsuka.xml.xsd.tools.XmlTools;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.xml.sax.SAXException;
 
-import javax.xml.transform.TransformerException;
-import javax.xml.xpath.XPathExpressionException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
-import static com.mcsuka.xml.xsd.tools.XmlTools.SOAP_ENVELOPE_NS;
 
 public class Rest2SoapTransformer {
 
-    private final List<SoapRestServiceDefinition> serviceDefs;
+    private final RestRouter router;
 
     public Rest2SoapTransformer(List<SoapRestServiceDefinition> serviceDefs) {
-        this.serviceDefs = serviceDefs;
+        this.router = new RestRouter(serviceDefs);
     }
 
-    public SoapRequest transformRequest(RestRequest restRequest) throws IllegalArgumentException, TransformerException {
-        for (SoapRestServiceDefinition serviceDef: serviceDefs) {
-            if (serviceDef.match(restRequest)) {
+    public SoapRequest transformRequest(RestRequest restRequest) throws IllegalArgumentException, IOException, XMLStreamException {
+        RestRouter.Route route = router.route(restRequest)
+            .orElseThrow(() -> new IllegalArgumentException("Could not find service matching request method " +
+                restRequest.method() + " and URI " + restRequest.requestUri()));
+        SoapRestServiceDefinition serviceDef = route.serviceDef();
 
-                Json2Xml requestTranslator = serviceDef.getRequestSchema().map(Json2Xml::new)
-                    .orElseThrow(() -> new IllegalArgumentException("Could not find WSDL matching request method "
-                        + restRequest.method() + " and URI " + restRequest.requestUri()));
+        StreamingJson2Xml requestTranslator = serviceDef.getRequestTranslator()
+            .orElseThrow(() -> new IllegalArgumentException("Could not find WSDL matching request method "
+                + restRequest.method() + " and URI " + restRequest.requestUri()));
 
-                String body = restRequest.body() == null ? "" : restRequest.body();
-                JsonObject jsonRoot = body.startsWith("{") || body.startsWith("[")
-                    ? (JsonObject)JsonParser.parseString(body)
-                    : (JsonObject)JsonParser.parseString("{}");
-
-                if (!serviceDef.getRequestParameters().isEmpty()) {
-                    addParamsToJson(restRequest, serviceDef, jsonRoot);
-                }
+        RequestBody body = restRequest.requestBody();
+        int firstByte = body == null ? -1 : body.firstByte();
+        if (firstByte == '[') {
+            throw new IllegalArgumentException("Request body must be a JSON object");
+        }
 
-                Document soapRequestBody = requestTranslator.translate(jsonRoot);
-                return new SoapRequest(serviceDef, wrapInSoapEnvelope(soapRequestBody));
-            }
+        JsonObject params = new JsonObject();
+        if (!serviceDef.getRequestParameters().isEmpty()) {
+            addParamsToJson(restRequest, serviceDef, route.pathParams(), params);
         }
 
-        throw new IllegalArgumentException("Could not find service matching request method " +
-            restRequest.method() + " and URI " + restRequest.requestUri());
+        JsonReader jsonReader = new JsonReader(firstByte == '{' ? body.newReader() : new StringReader("{}"));
+        ByteArrayOutputStream soapRequest = new ByteArrayOutputStream(Math.max(256, 2 * (body == null ? 0 : body.length())));
+        SoapEnvelopeWriter envelopeWriter = serviceDef.getEnvelopeWriter();
+        envelopeWriter.writeStart(soapRequest, restRequest);
+        int payloadStart = soapRequest.size();
+        XMLStreamWriter xmlWriter = XmlTools.newXMLStreamWriter(soapRequest);
+        requestTranslator.translate(jsonReader, xmlWriter, params);
+        xmlWriter.flush();
+        int payloadEnd = soapRequest.size();
+        envelopeWriter.writeEnd(soapRequest);
+        return new SoapRequest(serviceDef, soapRequest.toByteArray(), payloadStart, payloadEnd);
     }
 
-    static void addParamsToJson(RestRequest restRequest, SoapRestServiceDefinition serviceDef, JsonObject jsonRoot) {
+    static void addParamsToJson(RestRequest restRequest, SoapRestServiceDefinition serviceDef,
+                                Map<String, String> pathParams, JsonObject jsonRoot) {
         Map<String, List<String>> queryParams = restRequest.queryString() == null
             ? Map.of()
             : Arrays.stream(restRequest.queryString().split("&"))
@@ -64,9 +84,7 @@ public class Rest2SoapTransformer {
 
         for (RequestParameter param : serviceDef.getRequestParameters()) {
             if ("path".equals(param.paramType())) {
-                String[] path = restRequest.requestUri().split("/");
-                serviceDef.getPathParamIndex(param.name())
-                    .map(idx -> path[idx])
+                Optional.ofNullable(pathParams.get(param.name()))
                     .ifPresent(value -> addValueToJson(jsonRoot, param.jsonPath(), value, param.getOasType()));
             } else if ("query".equals(param.paramType())) {
                 Optional.ofNullable(queryParams.get(param.name()))
@@ -120,39 +138,135 @@ public class Rest2SoapTransformer {
         }
     }
 
-    static String wrapInSoapEnvelope(Document soapRequestBody) throws TransformerException {
-        Element requestMessageRoot = soapRequestBody.getDocumentElement();
-        Element soapEnvelope = soapRequestBody.createElementNS(SOAP_ENVELOPE_NS, "SOAP-ENV:Envelope");
-        Element soapBody = soapRequestBody.createElementNS(SOAP_ENVELOPE_NS, "SOAP-ENV:Body");
-        soapEnvelope.appendChild(soapBody);
-        requestMessageRoot.getParentNode().replaceChild(soapEnvelope, requestMessageRoot);
-        soapBody.appendChild(requestMessageRoot);
-
-        return XmlTools.renderDOM(soapRequestBody, false);
-    }
-
     private static final Gson GSON = new GsonBuilder()
         .create();
 
-    public RestResponse transformResponse(SoapRestServiceDefinition serviceDef, SoapResponse clientResponse) throws IOException, SAXException, XPathExpressionException {
+    private static final Xml2Json SCHEMALESS_TRANSLATOR = new Xml2Json(true);
+    private static final StreamingXml2Json SCHEMALESS_STREAMING_TRANSLATOR = new StreamingXml2Json(true);
+
+    public RestResponse transformResponse(SoapRestServiceDefinition serviceDef, SoapResponse clientResponse) throws IOException, SAXException {
         Document soapResponseDoc = XmlTools.parseXML(clientResponse.contents());
-        Element soapBody = XmlTools.newXPath().evaluateExpression("//SOAP-ENV:Body/*", soapResponseDoc, Element.class);
+        Element soapBody = SoapEnvelope.read(soapResponseDoc).flatMap(SoapEnvelope::getPayload).orElse(null);
 
         if (clientResponse.status() == 200 && soapBody != null) {
-            Xml2Json responseTranslator = serviceDef.getResponseSchema()
-                .map(schema -> new Xml2Json(true, schema))
-                .orElse(new Xml2Json(true));
-            JsonElement response = responseTranslator.translate(soapBody);
+            JsonElement response = serviceDef.getResponseTranslator().translate(soapBody);
             if (response.isJsonNull() || response.isJsonObject() && response.getAsJsonObject().isEmpty()) {
                 return new RestResponse(404, GSON.toJson(response));
             } else {
                 return new RestResponse(200, GSON.toJson(response));
             }
         } else {
-            Xml2Json responseTranslator = new Xml2Json(true);
-            JsonElement response = responseTranslator.translate(soapBody != null ? soapBody : soapResponseDoc.getDocumentElement());
+            JsonElement response = SCHEMALESS_TRANSLATOR.translate(soapBody != null ? soapBody : soapResponseDoc.getDocumentElement());
             return new RestResponse(clientResponse.status(), GSON.toJson(response));
         }
     }
 
+    /**
+     * Translate a SOAP response to JSON while it is being read, without buffering the SOAP response or the JSON. The
+     * JSON is the same as the body returned by transformResponse(serviceDef, SoapResponse), except for an empty SOAP
+     * Body, which is translated to an empty JSON object.
+     *
+     * @param status HTTP status of the SOAP response
+     * @param soapResponse the SOAP response, the encoding is detected from the XML declaration. It is read to its end,
+     *          but not closed.
+     * @param json UTF-8 encoded JSON output, it is flushed but not closed
+     * @param restStatus receives the HTTP status of the REST response, before the first byte of the JSON is written:
+     *          404 if the JSON is null or an empty object, the status of the SOAP response otherwise
+     */
+    public void transformResponse(SoapRestServiceDefinition serviceDef, int status, InputStream soapResponse,
+                                  OutputStream json, IntConsumer restStatus) throws IOException, XMLStreamException {
+        transformResponse(serviceDef, status, soapResponse, json, restStatus, null);
+    }
+
+    /**
+     * Translate the root part of an MTOM / XOP response to JSON while it is being read, see
+     * transformResponse(serviceDef, status, soapResponse, json, restStatus). The xop:Include elements are replaced by
+     * the text returned by the resolver, e.g. a link to the binary part.
+     *
+     * @param xopResolver maps the href of an xop:Include to its JSON text, or null if the response is not XOP
+     */
+    public void transformResponse(SoapRestServiceDefinition serviceDef, int status, InputStream soapResponse,
+                                  OutputStream json, IntConsumer restStatus, Function<String, String> xopResolver)
+            throws IOException, XMLStreamException {
+        XMLStreamReader reader = xopResolver == null
+            ? XmlTools.newXMLStreamReader(soapResponse)
+            : new XopIncludeReader(XmlTools.newXMLStreamReader(soapResponse), xopResolver);
+        try {
+            StatusFirstOutputStream statusFirst = new StatusFirstOutputStream(json, status, restStatus);
+            JsonWriter jsonWriter = GSON.newJsonWriter(new OutputStreamWriter(statusFirst, StandardCharsets.UTF_8));
+            boolean inBody = SoapEnvelope.moveToBodyContent(reader);
+            if (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {     // empty Body
+                jsonWriter.beginObject().endObject();
+            } else if (status == 200 && inBody) {
+                serviceDef.getStreamingResponseTranslator().translate(reader, jsonWriter);
+            } else {
+                SCHEMALESS_STREAMING_TRANSLATOR.translate(reader, jsonWriter);
+            }
+            while (reader.hasNext()) {   // reach the end of the envelope, so that a truncated response is detected
+                reader.next();
+            }
+            jsonWriter.flush();
+            statusFirst.finish();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Holds back the first few bytes of the JSON, until the REST status is known: the status of the SOAP response, or
+     * 404 if the whole JSON is "null" or "{}".
+     */
+    private static final class StatusFirstOutputStream extends OutputStream {
+
+        private static final int HOLD_SIZE = 4;
+
+        private final OutputStream out;
+        private final int status;
+        private final IntConsumer restStatus;
+        private final byte[] held = new byte[HOLD_SIZE];
+        private int heldCount = 0;
+        private boolean statusSent = false;
+
+        StatusFirstOutputStream(OutputStream out, int status, IntConsumer restStatus) {
+            this.out = out;
+            this.status = status;
+            this.restStatus = restStatus;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (statusSent) {
+                out.write(b, off, len);
+            } else if (heldCount + len <= HOLD_SIZE) {
+                System.arraycopy(b, off, held, heldCount, len);
+                heldCount += len;
+            } else {
+                sendStatus(status);
+                out.write(b, off, len);
+            }
+        }
+
+        /**
+         * Send the status and the bytes held back, if the JSON was short enough to be held back as a whole
+         */
+        void finish() throws IOException {
+            if (!statusSent) {
+                String heldJson = new String(held, 0, heldCount, StandardCharsets.UTF_8);
+                sendStatus(status == 200 && ("null".equals(heldJson) || "{}".equals(heldJson)) ? 404 : status);
+            }
+            out.flush();
+        }
+
+        private void sendStatus(int sentStatus) throws IOException {
+            statusSent = true;
+            restStatus.accept(sentStatus);
+            out.write(held, 0, heldCount);
+        }
+    }
+
 }
@@ -1,30 +1,107 @@
 package com.mcsuka.xml.http;
 
 import jakarta.servlet.http.HttpServletRequest;
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 
-public record RestRequest(
-    @NotNull String method,
-    @NotNull String requestUri,
-    String queryString,
-    String body,
-    @NotNull NavigableMap<String, String> headers
-) {
+/**
+ * A REST request received by the proxy. The body is kept in pooled buffers, see RequestBody; release() must be called
+ * once the request is processed.
+ */
+public final class RestRequest {
+
+    private final String method;
+    private final String requestUri;
+    private final String queryString;
+    private final RequestBody requestBody;
+    private final NavigableMap<String, String> headers;
+
+    public RestRequest(
+        @NotNull String method,
+        @NotNull String requestUri,
+        String queryString,
+        String body,
+        @NotNull NavigableMap<String, String> headers
+    ) {
+        this(method, requestUri, queryString, body == null ? null : RequestBody.of(body), headers);
+    }
+
+    private RestRequest(
+        @NotNull String method,
+        @NotNull String requestUri,
+        String queryString,
+        RequestBody requestBody,
+        @NotNull NavigableMap<String, String> headers
+    ) {
+        this.method = method;
+        this.requestUri = requestUri;
+        this.queryString = queryString;
+        this.requestBody = requestBody;
+        this.headers = headers;
+    }
+
+    public @NotNull String method() {
+        return method;
+    }
+
+    public @NotNull String requestUri() {
+        return requestUri;
+    }
+
+    public String queryString() {
+        return queryString;
+    }
+
+    /**
+     * @return the body as a String, decoded on the first call. Prefer requestBody() for parsing.
+     */
+    public String body() {
+        return requestBody == null ? null : requestBody.toString();
+    }
+
+    /**
+     * @return the body in pooled buffers, or null if the request has no body
+     */
+    public RequestBody requestBody() {
+        return requestBody;
+    }
+
+    public @NotNull NavigableMap<String, String> headers() {
+        return headers;
+    }
 
     public String getHeader(String headerName) {
         return headers.get(headerName);
     }
 
+    /**
+     * Return the buffers of the body to their pool
+     */
+    public void release() {
+        if (requestBody != null) {
+            requestBody.release();
+        }
+    }
+
     public static RestRequest fromHttpRequest(HttpServletRequest servletRequest) throws IOException {
+        return fromHttpRequest(servletRequest, RequestBody.DEFAULT_POOL);
+    }
+
+    /**
+     * @param pool the body is read into buffers of this pool, typically the pool of the server connector
+     */
+    public static RestRequest fromHttpRequest(HttpServletRequest servletRequest, ByteBufferPool pool) throws IOException {
         String requestUri = servletRequest.getRequestURI();
         String method = servletRequest.getMethod().toLowerCase();
         String queryString = servletRequest.getQueryString();
-        String body = getRequestBody(servletRequest);
+        RequestBody body = getRequestBody(servletRequest, pool);
         NavigableMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         servletRequest.getHeaderNames().asIterator().forEachRemaining(headerName ->
             headers.put(headerName, servletRequest.getHeader(headerName))
@@ -32,20 +109,21 @@ public record RestRequest(
         return new RestRequest(method, requestUri, queryString, body, headers);
     }
 
-    static String getRequestBody(HttpServletRequest request) throws IOException {
+    static RequestBody getRequestBody(HttpServletRequest request, ByteBufferPool pool) throws IOException {
         try (InputStream inputStream = request.getInputStream()) {
             if (inputStream != null) {
-                byte[] buf = inputStream.readAllBytes();
-                return new String(buf);
+                String encoding = request.getCharacterEncoding();
+                Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+                return RequestBody.read(inputStream, request.getContentLength(), charset, pool);
             } else {
-                return "";
+                return RequestBody.of("");
             }
         }
     }
 
     @Override
     public @NotNull String toString() {
-        return "URI: " + method + " " + requestUri + " Query: " + queryString + " Headers: " + headers + " Body: " + body;
+        return "URI: " + method + " " + requestUri + " Query: " + queryString + " Headers: " + headers + " Body: " + body();
     }
 
 }
@@ -0,0 +1,162 @@
+package com.mcsuka.xml.http;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * Finds the service definition of a REST request. The REST paths of the service definitions are compiled into a
+ * prefix tree per HTTP method, keyed by the literal path segments. Path parameter segments (e.g. {productId}) match
+ * any non-empty segment of letters, digits and underscores, and capture its value.
+ * <br/>
+ * If more than one service definition matches a request, a literal segment takes precedence over a path parameter,
+ * segment by segment from the left: of /a/{x}/c and /a/b/{y}, the request /a/b/c is routed to /a/b/{y}, and to
+ * /a/{x}/c only if there were no /a/b/... route of the same length. Of the service definitions with the same path
+ * up to the names of the parameters, the one listed first wins.
+ * <br/>
+ * The request path is matched in a single pass over its segments: the candidate nodes of each segment are kept in
+ * the order of precedence, so the lookup never backtracks, and each segment is compared against at most as many nodes
+ * as the tree has at its depth. The router is immutable and thread safe.
+ */
+public class RestRouter {
+
+    private static final Pattern PARAM_SEGMENT = Pattern.compile("\\{[a-zA-Z0-9_]+\\}");
+
+    /**
+     * The result of routing a REST request
+     *
+     * @param serviceDef the matching service definition
+     * @param pathParams path parameter name -> value of the request path
+     */
+    public record Route(SoapRestServiceDefinition serviceDef, Map<String, String> pathParams) {
+    }
+
+    private static final class Node {
+        private final Map<String, Node> literals = new HashMap<>();
+        private Node param;
+        private int serviceIndex = -1;   // index of the first service definition ending here, -1 if none
+    }
+
+    private final List<SoapRestServiceDefinition> serviceDefs;
+    private final List<Map<String, Integer>> pathParamIndexes = new ArrayList<>();
+    private final Map<String, Node> roots = new HashMap<>();
+
+    public RestRouter(List<SoapRestServiceDefinition> serviceDefs) {
+        this.serviceDefs = List.copyOf(serviceDefs);
+        for (int i = 0; i < this.serviceDefs.size(); i++) {
+            SoapRestServiceDefinition serviceDef = this.serviceDefs.get(i);
+            Node node = roots.computeIfAbsent(serviceDef.getRestMethod(), m -> new Node());
+            Map<String, Integer> paramIndex = new HashMap<>();
+            List<String> segments = split(serviceDef.getRestPath());
+            for (int j = 0; j < segments.size(); j++) {
+                String segment = segments.get(j);
+                if (PARAM_SEGMENT.matcher(segment).matches()) {
+                    paramIndex.put(segment.substring(1, segment.length() - 1), j);
+                    if (node.param == null) {
+                        node.param = new Node();
+                    }
+                    node = node.param;
+                } else {
+                    node = node.literals.computeIfAbsent(segment, s -> new Node());
+                }
+            }
+            if (node.serviceIndex < 0) {
+                node.serviceIndex = i;
+            }
+            pathParamIndexes.add(Map.copyOf(paramIndex));
+        }
+    }
+
+    /**
+     * Split a path to segments. Unlike String.split, empty segments are kept, including the trailing one.
+     */
+    static List<String> split(String path) {
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        int end = path.indexOf('/');
+        while (end >= 0) {
+            segments.add(path.substring(start, end));
+            start = end + 1;
+            end = path.indexOf('/', start);
+        }
+        segments.add(path.substring(start));
+        return segments;
+    }
+
+    /**
+     * Find the service definition of a REST request
+     *
+     * @param method lower case HTTP method
+     * @param requestUri request path, without the query string
+     * @return the matching service definition with the captured path parameters, or empty
+     */
+    public Optional<Route> route(String method, String requestUri) {
+        Node root = roots.get(method);
+        if (root == null) {
+            return Optional.empty();
+        }
+        List<String> segments = split(requestUri);
+        Node match = find(root, segments);
+        if (match == null) {
+            return Optional.empty();
+        }
+        Map<String, String> pathParams = new HashMap<>();
+        pathParamIndexes.get(match.serviceIndex).forEach((name, idx) -> pathParams.put(name, segments.get(idx)));
+        return Optional.of(new Route(serviceDefs.get(match.serviceIndex), pathParams));
+    }
+
+    public Optional<Route> route(RestRequest restRequest) {
+        return route(restRequest.method(), restRequest.requestUri());
+    }
+
+    private static boolean isParamValue(String segment) {
+        if (segment.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the matching end node of the highest precedence, or null
+     */
+    private static Node find(Node root, List<String> segments) {
+        // candidates in the order of precedence: the children of a node follow those of the nodes before it, and its
+        // literal child precedes its param child
+        List<Node> candidates = new ArrayList<>(List.of(root));
+        List<Node> next = new ArrayList<>();
+        for (String segment : segments) {
+            boolean paramValue = isParamValue(segment);
+            for (Node node : candidates) {
+                Node literal = node.literals.get(segment);
+                if (literal != null) {
+                    next.add(literal);
+                }
+                if (paramValue && node.param != null) {
+                    next.add(node.param);
+                }
+            }
+            if (next.isEmpty()) {
+                return null;
+            }
+            List<Node> matched = next;
+            next = candidates;
+            next.clear();
+            candidates = matched;
+        }
+        for (Node node : candidates) {
+            if (node.serviceIndex >= 0) {
+                return node;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A SOAP 1.1 or 1.2 envelope, read by navigating the child elements of the DOM: the Header, the Body, the payload of
+ * the Body and the Fault, if the payload is a Fault. For streaming, moveToBodyContent() positions a StAX reader at the
+ * payload.
+ */
+public final class SoapEnvelope {
+
+    /**
+     * A SOAP Fault
+     *
+     * @param code the faultcode (1.1) or Code/Value (1.2), e.g. SOAP-ENV:Client
+     * @param reason the faultstring (1.1) or the first Reason/Text (1.2)
+     * @param actor the faultactor (1.1) or Role (1.2), or null
+     * @param detail the detail (1.1) or Detail (1.2) element, or null
+     */
+    public record SoapFault(String code, String reason, String actor, Element detail) {
+    }
+
+    private final SoapVersion version;
+    private final Element header;
+    private final Element body;
+    private final Element payload;
+
+    private SoapEnvelope(SoapVersion version, Element header, Element body, Element payload) {
+        this.version = version;
+        this.header = header;
+        this.body = body;
+        this.payload = payload;
+    }
+
+    /**
+     * @return the envelope, or empty if the root element of the document is not a SOAP Envelope with a Body
+     */
+    public static Optional<SoapEnvelope> read(Document document) {
+        Element root = document.getDocumentElement();
+        SoapVersion version = root == null ? null : SoapVersion.ofEnvelopeNamespace(root.getNamespaceURI()).orElse(null);
+        if (version == null || !"Envelope".equals(root.getLocalName())) {
+            return Optional.empty();
+        }
+        Element header = null;
+        for (Element child = firstChildElement(root); child != null; child = nextSiblingElement(child)) {
+            if (isSoapElement(child, version, "Header")) {
+                header = child;
+            } else if (isSoapElement(child, version, "Body")) {
+                return Optional.of(new SoapEnvelope(version, header, child, firstChildElement(child)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    public SoapVersion getVersion() {
+        return version;
+    }
+
+    public Optional<Element> getHeader() {
+        return Optional.ofNullable(header);
+    }
+
+    /**
+     * @return the child elements of the Header
+     */
+    public List<Element> getHeaderEntries() {
+        List<Element> entries = new ArrayList<>();
+        if (header != null) {
+            for (Element child = firstChildElement(header); child != null; child = nextSiblingElement(child)) {
+                entries.add(child);
+            }
+        }
+        return entries;
+    }
+
+    public Element getBody() {
+        return body;
+    }
+
+    /**
+     * @return the first child element of the Body, or empty if the Body is empty
+     */
+    public Optional<Element> getPayload() {
+        return Optional.ofNullable(payload);
+    }
+
+    public boolean isFault() {
+        return payload != null && isSoapElement(payload, version, "Fault");
+    }
+
+    /**
+     * @return the Fault, if the payload of the Body is a Fault
+     */
+    public Optional<SoapFault> getFault() {
+        if (!isFault()) {
+            return Optional.empty();
+        }
+        String code = null;
+        String reason = null;
+        String actor = null;
+        Element detail = null;
+        for (Element child = firstChildElement(payload); child != null; child = nextSiblingElement(child)) {
+            switch (child.getLocalName()) {
+                case "faultcode" -> code = child.getTextContent().trim();
+                case "faultstring" -> reason = child.getTextContent().trim();
+                case "faultactor", "Role" -> actor = child.getTextContent().trim();
+                case "detail", "Detail" -> detail = child;
+                case "Code" -> code = firstChildText(child, "Value");
+                case "Reason" -> reason = firstChildText(child, "Text");
+                default -> { }
+            }
+        }
+        return Optional.of(new SoapFault(code, reason, actor, detail));
+    }
+
+    /**
+     * Move the reader to the first element in the SOAP Body, or to the end tag of an empty Body. The Header is
+     * skipped. If the XML is not a SOAP envelope, the reader is left at its root element.
+     *
+     * @param reader StAX reader, positioned before the root element
+     * @return true if the reader is in the SOAP Body
+     * @throws XMLStreamException parsing failed, or the envelope has no Body
+     */
+    public static boolean moveToBodyContent(XMLStreamReader reader) throws XMLStreamException {
+        reader.nextTag();
+        SoapVersion version = SoapVersion.ofEnvelopeNamespace(reader.getNamespaceURI()).orElse(null);
+        if (version == null || !"Envelope".equals(reader.getLocalName())) {
+            return false;
+        }
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (isSoapElement(reader, version, "Body")) {
+                while (reader.next() != XMLStreamConstants.START_ELEMENT
+                        && reader.getEventType() != XMLStreamConstants.END_ELEMENT) {
+                    // skip white space and comments
+                }
+                return true;
+            }
+            skipElement(reader);
+        }
+        throw new XMLStreamException("SOAP Envelope has no Body", reader.getLocation());
+    }
+
+    private static boolean isSoapElement(Element element, SoapVersion version, String localName) {
+        return localName.equals(element.getLocalName())
+            && version.getEnvelopeNamespace().equals(element.getNamespaceURI());
+    }
+
+    private static boolean isSoapElement(XMLStreamReader reader, SoapVersion version, String localName) {
+        return localName.equals(reader.getLocalName())
+            && version.getEnvelopeNamespace().equals(reader.getNamespaceURI());
+    }
+
+    private static String firstChildText(Element parent, String localName) {
+        for (Element child = firstChildElement(parent); child != null; child = nextSiblingElement(child)) {
+            if (localName.equals(child.getLocalName())) {
+                return child.getTextContent().trim();
+            }
+        }
+        return null;
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static Element firstChildElement(Node parent) {
+        Node child = parent.getFirstChild();
+        while (child != null && child.getNodeType() != Node.ELEMENT_NODE) {
+            child = child.getNextSibling();
+        }
+        return (Element) child;
+    }
+
+    private static Element nextSiblingElement(Node node) {
+        Node sibling = node.getNextSibling();
+        while (sibling != null && sibling.getNodeType() != Node.ELEMENT_NODE) {
+            sibling = sibling.getNextSibling();
+        }
+        return (Element) sibling;
+    }
+}
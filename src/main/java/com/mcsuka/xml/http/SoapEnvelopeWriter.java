@@ -0,0 +1,157 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the SOAP envelope of a request around a payload, which is streamed in between by the caller. The envelope is
+ * serialized once, at construction, to a prefix and a suffix of UTF-8 bytes; only the SOAP headers that vary per
+ * message (WS-Addressing MessageID, tracking ID) are serialized per request.
+ * <br/>
+ * The writer is immutable and thread safe.
+ */
+public final class SoapEnvelopeWriter {
+
+    public static final String WS_ADDRESSING_NS = "http://www.w3.org/2005/08/addressing";
+
+    // XML name without a colon, see https://www.w3.org/TR/xml-names/#NT-NCName
+    private static final String NAME_START_CHAR = "A-Z_a-z\\u00C0-\\u00D6\\u00D8-\\u00F6\\u00F8-\\u02FF\\u0370-\\u037D"
+        + "\\u037F-\\u1FFF\\u200C-\\u200D\\u2070-\\u218F\\u2C00-\\u2FEF\\u3001-\\uD7FF\\uF900-\\uFDCF\\uFDF0-\\uFFFD"
+        + "\\x{10000}-\\x{EFFFF}";
+    private static final Pattern NCNAME = Pattern.compile(
+        "[" + NAME_START_CHAR + "][" + NAME_START_CHAR + "\\-.0-9\\u00B7\\u0300-\\u036F\\u203F-\\u2040]*");
+
+    /**
+     * SOAP headers added to the requests of a service
+     *
+     * @param wsAddressing add the WS-Addressing headers Action, To and MessageID
+     * @param trackingHeader name of the REST request header, whose value is copied to a SOAP header, or null
+     * @param trackingElement name of the SOAP header element of the tracking ID, it must have a name space, and its
+     * local part must be an NCName
+     */
+    public record HeaderSettings(boolean wsAddressing, String trackingHeader, QName trackingElement) {
+
+        public static final HeaderSettings NONE = new HeaderSettings(false, null, null);
+
+        public HeaderSettings {
+            if (trackingHeader != null && (trackingElement == null || trackingElement.getNamespaceURI().isEmpty())) {
+                throw new IllegalArgumentException("The SOAP header of " + trackingHeader + " must have a name space");
+            }
+            // the name is written into the envelope as it is
+            if (trackingElement != null && !NCNAME.matcher(trackingElement.getLocalPart()).matches()) {
+                throw new IllegalArgumentException("The SOAP header of " + trackingHeader + " is not a valid XML name: "
+                    + trackingElement.getLocalPart());
+            }
+        }
+
+        boolean hasHeaders() {
+            return wsAddressing || trackingHeader != null;
+        }
+    }
+
+    private final HeaderSettings settings;
+    private final byte[] prefix;
+    private final byte[] bodyStart;
+    private final byte[] suffix;
+    private final byte[] messageIdStart;
+    private final byte[] messageIdEnd;
+    private final byte[] trackingStart;
+    private final byte[] trackingEnd;
+
+    /**
+     * Envelope without SOAP headers
+     */
+    public SoapEnvelopeWriter() {
+        this(SoapVersion.SOAP_11, null, null, HeaderSettings.NONE);
+    }
+
+    /**
+     * @param version SOAP version of the envelope
+     * @param soapAction value of the WS-Addressing Action header
+     * @param targetUrl value of the WS-Addressing To header
+     */
+    public SoapEnvelopeWriter(SoapVersion version, String soapAction, String targetUrl, HeaderSettings settings) {
+        this.settings = settings;
+        StringBuilder sb = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+            .append("<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"").append(version.getEnvelopeNamespace()).append('"');
+        if (settings.wsAddressing()) {
+            sb.append(" xmlns:wsa=\"").append(WS_ADDRESSING_NS).append('"');
+        }
+        sb.append('>');
+        if (settings.hasHeaders()) {
+            sb.append("<SOAP-ENV:Header>");
+        }
+        if (settings.wsAddressing()) {
+            sb.append("<wsa:Action>").append(escape(soapAction)).append("</wsa:Action>")
+                .append("<wsa:To>").append(escape(targetUrl)).append("</wsa:To>");
+        }
+        this.prefix = bytes(sb);
+        this.bodyStart = bytes((settings.hasHeaders() ? "</SOAP-ENV:Header>" : "") + "<SOAP-ENV:Body>");
+        this.suffix = bytes("</SOAP-ENV:Body></SOAP-ENV:Envelope>");
+        this.messageIdStart = bytes("<wsa:MessageID>urn:uuid:");
+        this.messageIdEnd = bytes("</wsa:MessageID>");
+        QName tracking = settings.trackingElement();
+        this.trackingStart = tracking == null ? null
+            : bytes("<trk:" + tracking.getLocalPart() + " xmlns:trk=\"" + escape(tracking.getNamespaceURI()) + "\">");
+        this.trackingEnd = tracking == null ? null : bytes("</trk:" + tracking.getLocalPart() + ">");
+    }
+
+    /**
+     * Write the envelope up to the start of the payload
+     *
+     * @param restRequest the SOAP headers that vary per message are taken from it
+     */
+    public void writeStart(OutputStream out, RestRequest restRequest) throws IOException {
+        out.write(prefix);
+        if (settings.wsAddressing()) {
+            out.write(messageIdStart);
+            out.write(bytes(UUID.randomUUID().toString()));
+            out.write(messageIdEnd);
+        }
+        String trackingId = settings.trackingHeader() == null ? null : restRequest.getHeader(settings.trackingHeader());
+        if (trackingId != null) {
+            out.write(trackingStart);
+            out.write(bytes(escape(trackingId)));
+            out.write(trackingEnd);
+        }
+        out.write(bodyStart);
+    }
+
+    /**
+     * Write the envelope after the payload
+     */
+    public void writeEnd(OutputStream out) throws IOException {
+        out.write(suffix);
+    }
+
+    private static byte[] bytes(CharSequence text) {
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Escape text for element content and attribute values
+     */
+    private static String escape(String text) {
+        if (text == null) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> sb.append("&amp;");
+                case '<' -> sb.append("&lt;");
+                case '>' -> sb.append("&gt;");
+                case '"' -> sb.append("&quot;");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
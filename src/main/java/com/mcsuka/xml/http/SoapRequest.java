@@ -2,14 +2,46 @@ package com.mcsuka.xml.http;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @param body the UTF-8 encoded SOAP envelope
+ * @param payloadStart offset of the content of the SOAP Body in body
+ * @param payloadEnd end offset of the content of the SOAP Body in body, exclusive
+ */
 public record SoapRequest(
     @NotNull SoapRestServiceDefinition serviceDef,
-    @NotNull String contents
+    byte @NotNull [] body,
+    int payloadStart,
+    int payloadEnd
 ) {
 
+    /**
+     * A request without a known payload position: the whole envelope is taken as the payload
+     */
+    public SoapRequest(@NotNull SoapRestServiceDefinition serviceDef, byte @NotNull [] body) {
+        this(serviceDef, body, 0, body.length);
+    }
+
+    /**
+     * @return the SOAP envelope as a String
+     */
+    public @NotNull String contents() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the REST method and path of the service, and the SOAP payload: requests with the same key get the same
+     * response from the backend, whatever their SOAP headers are
+     */
+    public @NotNull String payloadKey() {
+        return serviceDef.getRestMethod() + " " + serviceDef.getRestPath() + "\n"
+            + new String(body, payloadStart, payloadEnd - payloadStart, StandardCharsets.UTF_8);
+    }
+
     @Override
     public @NotNull String toString() {
-        return "URL: " + serviceDef.getTargetUrl() + "SOAPAction: " + serviceDef.getSoapAction() + " Contents: " + contents;
+        return "URL: " + serviceDef.getTargetUrl() + "SOAPAction: " + serviceDef.getSoapAction() + " Contents: " + contents();
     }
 
 }
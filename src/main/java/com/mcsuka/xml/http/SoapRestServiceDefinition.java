@@ -1,19 +1,34 @@
 package com.mcsuka.xml.http;
 
+import com.google.gson.stream.JsonReader;
+import com.mcsuka.xml.json.StreamingJson2Xml;
+import com.mcsuka.xml.json.StreamingXml2Json;
+import com.mcsuka.xml.json.TranslationPlan;
+import com.mcsuka.xml.json.Xml2Json;
 import com.mcsuka.xml.xsd.model.SchemaNode;
 import com.mcsuka.xml.xsd.model.SchemaParser;
 import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import com.mcsuka.xml.xsd.model.SchemaSnapshot;
+import com.mcsuka.xml.xsd.tools.SoapVersion;
 import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.xml.namespace.QName;
-import java.util.HashMap;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Path;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
 public class SoapRestServiceDefinition {
 
+    private static final Logger logger = LoggerFactory.getLogger(SoapRestServiceDefinition.class);
+
     private final String restPath;
     private final String restMethod;
     private final List<RequestParameter> requestParameters;
@@ -21,7 +36,16 @@ public class SoapRestServiceDefinition {
     private final String operationName;
     private final String description;
     private final String targetUrl;
-    private final String pattern;
+    private final WsdlDocumentSource.SoapOperation operation;
+    private final SchemaNode requestSchema;
+    private final SchemaNode responseSchema;
+    private final StreamingJson2Xml requestTranslator;
+    private final Xml2Json responseTranslator;
+    private final StreamingXml2Json streamingResponseTranslator;
+    private final SoapEnvelopeWriter envelopeWriter;
+    private final ResponseCache responseCache;
+    private final RequestCoalescer requestCoalescer;
+    private final PayloadLogger.Settings logSettings;
 
     public String getRestPath() {
         return restPath;
@@ -51,6 +75,52 @@ public class SoapRestServiceDefinition {
         return description;
     }
 
+    /**
+     * The optional settings of a service
+     *
+     * @param snapshotDir directory of the SchemaSnapshots. If a snapshot of the same WSDL content and operation
+     *                    exists, the operation and the schemas are restored from it, without parsing the WSDL.
+     *                    Otherwise they are parsed and a new snapshot is saved. If null, snapshots are not used.
+     * @param headerSettings the SOAP headers added to the requests
+     * @param cacheSettings settings of the response cache, or null for no caching. Only GET services are cached.
+     * @param coalesce if true, concurrent requests of a GET service with the same SOAP payload share a single backend
+     *                 call, see RequestCoalescer
+     * @param logSettings sampling and truncation of the logged messages, see PayloadLogger. If null, the defaults of
+     *                    the logger apply.
+     */
+    public record Options(Path snapshotDir, SoapEnvelopeWriter.HeaderSettings headerSettings,
+                          ResponseCache.Settings cacheSettings, boolean coalesce, PayloadLogger.Settings logSettings) {
+
+        public static final Options DEFAULT = new Options(null, SoapEnvelopeWriter.HeaderSettings.NONE, null, false,
+            null);
+
+        public Options {
+            if (headerSettings == null) {
+                headerSettings = SoapEnvelopeWriter.HeaderSettings.NONE;
+            }
+        }
+
+        public Options withSnapshotDir(Path snapshotDir) {
+            return new Options(snapshotDir, headerSettings, cacheSettings, coalesce, logSettings);
+        }
+
+        public Options withHeaderSettings(SoapEnvelopeWriter.HeaderSettings headerSettings) {
+            return new Options(snapshotDir, headerSettings, cacheSettings, coalesce, logSettings);
+        }
+
+        public Options withCacheSettings(ResponseCache.Settings cacheSettings) {
+            return new Options(snapshotDir, headerSettings, cacheSettings, coalesce, logSettings);
+        }
+
+        public Options withCoalesce(boolean coalesce) {
+            return new Options(snapshotDir, headerSettings, cacheSettings, coalesce, logSettings);
+        }
+
+        public Options withLogSettings(PayloadLogger.Settings logSettings) {
+            return new Options(snapshotDir, headerSettings, cacheSettings, coalesce, logSettings);
+        }
+    }
+
     public SoapRestServiceDefinition(
         String targetUrl,
         String restPath,
@@ -59,6 +129,20 @@ public class SoapRestServiceDefinition {
         WsdlDocumentSource wsdlSource,
         String operationName,
         String description
+    ) {
+        this(targetUrl, restPath, restMethod, requestParameters, wsdlSource, operationName, description,
+            Options.DEFAULT);
+    }
+
+    public SoapRestServiceDefinition(
+        String targetUrl,
+        String restPath,
+        String restMethod,
+        List<RequestParameter> requestParameters,
+        WsdlDocumentSource wsdlSource,
+        String operationName,
+        String description,
+        Options options
     ) {
         this.targetUrl = targetUrl;
         this.restPath = restPath;
@@ -67,37 +151,44 @@ public class SoapRestServiceDefinition {
         this.wsdlSource = wsdlSource;
         this.operationName = operationName;
         this.description = description;
-        this.pattern = restPath.replaceAll("\\{[a-zA-Z0-9_]+\\}", "[a-zA-Z0-9_]+");
 
-        this.pathParamIndex = new HashMap<>();
-        String[] path = restPath.split("/");
-        for (int i = 0; i < path.length; i++) {
-            if (path[i].matches("\\{[a-zA-Z0-9_]+\\}")) {
-                pathParamIndex.put(path[i].substring(1, path[i].length() - 1), i);
-            }
+        SchemaSnapshot schemas = loadSchemas(options.snapshotDir());
+        operation = schemas.getOperation().orElse(null);
+        requestSchema = schemas.getRequestSchema().orElse(null);
+        responseSchema = schemas.getResponseSchema().orElse(null);
+        requestTranslator = requestSchema == null ? null : new StreamingJson2Xml(TranslationPlan.compile(requestSchema));
+        TranslationPlan responsePlan = responseSchema == null ? null : TranslationPlan.compile(responseSchema);
+        responseTranslator = new Xml2Json(true, responsePlan);
+        streamingResponseTranslator = new StreamingXml2Json(true, responsePlan);
+        envelopeWriter = operation == null
+            ? new SoapEnvelopeWriter(SoapVersion.SOAP_11, "", targetUrl, options.headerSettings())
+            : new SoapEnvelopeWriter(operation.soapVersion(), operation.soapAction(), targetUrl,
+                options.headerSettings());
+        if (options.cacheSettings() != null && !"get".equalsIgnoreCase(restMethod)) {
+            logger.warn("Response cache of " + restMethod + " " + restPath + " is ignored, only GET services are cached");
         }
-
-        requestSchema = getSchema(WsdlDocumentSource.SoapOperation::requestRootElement);
-        responseSchema = getSchema(WsdlDocumentSource.SoapOperation::responseRootElement);
+        responseCache = options.cacheSettings() == null || !"get".equalsIgnoreCase(restMethod) ? null
+            : new ResponseCache(options.cacheSettings());
+        requestCoalescer = options.coalesce() && "get".equalsIgnoreCase(restMethod) ? new RequestCoalescer() : null;
+        this.logSettings = options.logSettings();
     }
 
-    private final Map<String, Integer> pathParamIndex;
-    private SchemaNode requestSchema;
-    private SchemaNode responseSchema;
-
-    public boolean match(RestRequest restRequest) {
-        return restRequest.method().equals(restMethod) && restRequest.requestUri().matches(pattern);
+    public String getSoapAction() {
+        return operation == null ? "" : operation.soapAction();
     }
 
-    public Optional<Integer> getPathParamIndex(String paramName) {
-        return Optional.ofNullable(pathParamIndex.get(paramName));
+    /**
+     * @return the SOAP version of the operation, declared by the binding of the WSDL
+     */
+    public SoapVersion getSoapVersion() {
+        return operation == null ? SoapVersion.SOAP_11 : operation.soapVersion();
     }
 
-    public String getSoapAction() {
-        return wsdlSource
-            .getOperation(operationName)
-            .map(WsdlDocumentSource.SoapOperation::soapAction)
-            .orElse("");
+    /**
+     * @return the SOAP operation, resolved from the WSDL at initialization
+     */
+    public Optional<WsdlDocumentSource.SoapOperation> getOperation() {
+        return Optional.ofNullable(operation);
     }
 
     public Optional<SchemaNode> getRequestSchema() {
@@ -108,9 +199,115 @@ public class SoapRestServiceDefinition {
         return Optional.ofNullable(responseSchema);
     }
 
-    private SchemaNode getSchema(Function<WsdlDocumentSource.SoapOperation, QName> rootElemResolver) {
-        return wsdlSource
-            .getOperation(operationName)
+    /**
+     * @return the JSON to XML translator of the request message, prebuilt from the request schema
+     */
+    public Optional<StreamingJson2Xml> getRequestTranslator() {
+        return Optional.ofNullable(requestTranslator);
+    }
+
+    /**
+     * @return the writer of the SOAP envelope and headers of the requests
+     */
+    public SoapEnvelopeWriter getEnvelopeWriter() {
+        return envelopeWriter;
+    }
+
+    /**
+     * @return the cache of the JSON responses, if the service is cached
+     */
+    public Optional<ResponseCache> getResponseCache() {
+        return Optional.ofNullable(responseCache);
+    }
+
+    /**
+     * @return the coalescer of the concurrent backend calls, if the service is a GET service with coalescing enabled
+     */
+    public Optional<RequestCoalescer> getRequestCoalescer() {
+        return Optional.ofNullable(requestCoalescer);
+    }
+
+    /**
+     * @return the sampling and truncation of the logged messages, if the service has its own
+     */
+    public Optional<PayloadLogger.Settings> getLogSettings() {
+        return Optional.ofNullable(logSettings);
+    }
+
+    /**
+     * @return the XML to JSON translator of the response message, prebuilt from the response schema. It is
+     * schema-less, if the response schema is unknown.
+     */
+    public Xml2Json getResponseTranslator() {
+        return responseTranslator;
+    }
+
+    /**
+     * @return the streaming XML to JSON translator of the response message, prebuilt from the same compiled response
+     * schema as getResponseTranslator()
+     */
+    public StreamingXml2Json getStreamingResponseTranslator() {
+        return streamingResponseTranslator;
+    }
+
+    /**
+     * Run both translators once on an empty message, to load and initialize everything they use before the first
+     * request arrives. The warm-up is best effort: an empty message is not valid for every schema, e.g. for a response
+     * element of a numeric type, and a translator that fails on it is simply left cold.
+     */
+    public void warmUp() {
+        try {
+            if (requestTranslator != null) {
+                requestTranslator.translate(new JsonReader(new StringReader("{}")),
+                    XmlTools.newXMLStreamWriter(Writer.nullWriter()), null);
+            }
+        } catch (Exception e) {
+            logger.debug("Warm-up of the request translator of " + restMethod + " " + restPath + " failed", e);
+        }
+        if (responseSchema != null) {
+            String ns = responseSchema.getNamespace();
+            String emptyResponse = "<" + responseSchema.getElementName()
+                + (ns == null || ns.isEmpty() ? "" : " xmlns=\"" + ns + "\"") + "/>";
+            try {
+                responseTranslator.translate(emptyResponse);
+                streamingResponseTranslator.translate(new StringReader(emptyResponse), Writer.nullWriter());
+            } catch (Exception e) {
+                logger.debug("Warm-up of the response translator of " + restMethod + " " + restPath + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Restore the operation and the schemas from a snapshot, if there is one for the current WSDL content. Otherwise
+     * parse them from the WSDL, and save them as a new snapshot.
+     */
+    private SchemaSnapshot loadSchemas(Path snapshotDir) {
+        String key = snapshotDir == null || wsdlSource.getContentHash() == null
+            ? null
+            : wsdlSource.getContentHash() + "-" + operationName;
+        if (key != null) {
+            Optional<SchemaSnapshot> snapshot = SchemaSnapshot.load(snapshotDir, key);
+            if (snapshot.isPresent()) {
+                return snapshot.get();
+            }
+        }
+        Optional<WsdlDocumentSource.SoapOperation> op = wsdlSource.getOperation(operationName);
+        SchemaSnapshot snapshot = new SchemaSnapshot(op.orElse(null),
+            getSchema(op, WsdlDocumentSource.SoapOperation::requestRootElement),
+            getSchema(op, WsdlDocumentSource.SoapOperation::responseRootElement));
+        if (key != null) {
+            try {
+                snapshot.save(snapshotDir, key);
+            } catch (IOException e) {
+                logger.warn("Unable to save schema snapshot of operation " + operationName, e);
+            }
+        }
+        return snapshot;
+    }
+
+    private SchemaNode getSchema(Optional<WsdlDocumentSource.SoapOperation> op,
+                                 Function<WsdlDocumentSource.SoapOperation, QName> rootElemResolver) {
+        return op
             .map(rootElemResolver)
             .map(requestQname -> {
                 try {
@@ -0,0 +1,157 @@
+package com.mcsuka.xml.http;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.http.QuotedQualityCSV;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response body that does not change until it is replaced, e.g. the OAS document or the favicon. It is gzipped once,
+ * when it is created, and identified by a strong ETag, the hash of its content: a client revalidating it with
+ * If-None-Match gets a 304 response without content. The ETag of the gzipped variant has the suffix of Jetty's
+ * GzipHandler, which strips it from the If-None-Match headers of the requests.
+ */
+public final class StaticContent {
+
+    private static final CompressedContentFormat GZIP = CompressedContentFormat.GZIP;
+
+    private final byte[] content;
+    private final byte[] gzipped;
+    private final String contentType;
+    private final String etag;
+
+    /**
+     * @param minCompressSize content shorter than this is not gzipped; negative to never gzip
+     */
+    public StaticContent(byte[] content, String contentType, int minCompressSize) {
+        this.content = content;
+        this.contentType = contentType;
+        this.etag = etag(content);
+        byte[] compressed = minCompressSize < 0 || content.length < minCompressSize ? null : gzip(content);
+        this.gzipped = compressed != null && compressed.length < content.length ? compressed : null;
+    }
+
+    /**
+     * @param name name of a resource of the system class loader
+     */
+    public static StaticContent ofResource(String name, String contentType, int minCompressSize) throws IOException {
+        try (InputStream stream = ClassLoader.getSystemResource(name).openStream()) {
+            return new StaticContent(stream.readAllBytes(), contentType, minCompressSize);
+        }
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * @return the gzipped content, or null if it is not compressed
+     */
+    public byte[] getGzipped() {
+        return gzipped;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * @return the strong ETag of the uncompressed content
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    private static String etag(byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            return '"' + Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(hash, 18)) + '"';
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(content.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);   // compressed only once
+            }
+        }) {
+            gzip.write(content);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return true if the Accept-Encoding header accepts gzip, explicitly or by *
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        QuotedQualityCSV encodings = new QuotedQualityCSV();
+        encodings.addValue(acceptEncoding);
+        // values are sorted by quality, those with q=0 are left out
+        for (String encoding : encodings.getValues()) {
+            if (encoding.equalsIgnoreCase(GZIP.getEncoding()) || encoding.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the If-None-Match header matches either variant of the content
+     */
+    public boolean isNotModified(String ifNoneMatch) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if (trimmed.equals("*") || CompressedContentFormat.tagEquals(etag, trimmed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Write the content, gzipped if the client accepts it, or a 304 response if the client has it
+     */
+    public void write(HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws IOException {
+        boolean gzip = gzipped != null && acceptsGzip(servletRequest.getHeader(HttpHeader.ACCEPT_ENCODING.asString()));
+        servletResponse.setHeader(HttpHeader.ETAG.asString(), gzip ? GZIP.etag(etag) : etag);
+        if (gzipped != null) {
+            servletResponse.setHeader(HttpHeader.VARY.asString(), HttpHeader.ACCEPT_ENCODING.asString());
+        }
+        if (isNotModified(servletRequest.getHeader(HttpHeader.IF_NONE_MATCH.asString()))) {
+            servletResponse.setStatus(HttpStatus.NOT_MODIFIED_304);
+            return;
+        }
+        byte[] body = gzip ? gzipped : content;
+        servletResponse.setStatus(HttpStatus.OK_200);
+        servletResponse.setContentType(contentType);
+        if (gzip) {
+            servletResponse.setHeader(HttpHeader.CONTENT_ENCODING.asString(), GZIP.getEncoding());
+        }
+        servletResponse.setContentLength(body.length);
+        servletResponse.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,128 @@
+package com.mcsuka.xml.http;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.function.Function;
+
+/**
+ * Replaces the xop:Include elements of an XOP document with text: the reference to the binary part, as returned by
+ * the resolver. The XML to JSON translators see the text in place of the base64 content, the binary part itself is
+ * neither decoded nor encoded.
+ */
+public final class XopIncludeReader extends StreamReaderDelegate {
+
+    public static final String XOP_NS = "http://www.w3.org/2004/08/xop/include";
+
+    private final Function<String, String> resolver;
+    private String includeText;
+
+    /**
+     * @param resolver maps the href of an xop:Include, e.g. cid:image1@example.com, to the text that replaces it
+     */
+    public XopIncludeReader(XMLStreamReader reader, Function<String, String> resolver) {
+        super(reader);
+        this.resolver = resolver;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        includeText = null;
+        int event = super.next();
+        if (event == XMLStreamConstants.START_ELEMENT && "Include".equals(super.getLocalName())
+                && XOP_NS.equals(super.getNamespaceURI())) {
+            String href = super.getAttributeValue(null, "href");
+            if (href == null) {
+                throw new XMLStreamException("xop:Include without href", super.getLocation());
+            }
+            int depth = 1;
+            while (depth > 0) {     // xop:Include may only contain extension elements, they are dropped
+                int e = super.next();
+                if (e == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (e == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            includeText = resolver.apply(href);
+            return XMLStreamConstants.CHARACTERS;
+        }
+        return event;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while (event == XMLStreamConstants.CHARACTERS && isWhiteSpace()
+                || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.COMMENT
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected a start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    @Override
+    public int getEventType() {
+        return includeText != null ? XMLStreamConstants.CHARACTERS : super.getEventType();
+    }
+
+    @Override
+    public String getText() {
+        return includeText != null ? includeText : super.getText();
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return includeText != null ? includeText.toCharArray() : super.getTextCharacters();
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length)
+            throws XMLStreamException {
+        if (includeText == null) {
+            return super.getTextCharacters(sourceStart, target, targetStart, length);
+        }
+        int n = Math.max(0, Math.min(length, includeText.length() - sourceStart));
+        includeText.getChars(sourceStart, sourceStart + n, target, targetStart);
+        return n;
+    }
+
+    @Override
+    public int getTextStart() {
+        return includeText != null ? 0 : super.getTextStart();
+    }
+
+    @Override
+    public int getTextLength() {
+        return includeText != null ? includeText.length() : super.getTextLength();
+    }
+
+    @Override
+    public boolean hasText() {
+        return includeText != null || super.hasText();
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return includeText != null || super.isCharacters();
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return includeText == null && super.isStartElement();
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return includeText == null && super.isEndElement();
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return includeText == null ? super.isWhiteSpace() : includeText.isBlank();
+    }
+}
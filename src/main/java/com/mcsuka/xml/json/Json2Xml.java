@@ -28,11 +28,10 @@ import org.w3c.dom.Element;
  */
 public class Json2Xml {
 
-    private final SchemaNode grammar;
-    private final HashMap<String, String> nsPfxMap;
+    private final TranslationPlan.Node grammar;
     private static final Pattern GOOD_PATTERN = Pattern.compile("[a-zA-Z_][\\x2D\\x2E0-9a-zA-Z_]*");
 
-    private static String normalizeKey(String key) {
+    static String normalizeKey(String key) {
         if (GOOD_PATTERN.matcher(key).matches()) {
             return key;
         }
@@ -63,9 +62,16 @@ public class Json2Xml {
      * @param grammar the XML Schema model
      */
     public Json2Xml(SchemaNode grammar) {
-        this.grammar = grammar;
-        nsPfxMap = new HashMap<>();
-        getPfxMap(grammar, 0);
+        this(TranslationPlan.compile(grammar));
+    }
+
+    /**
+     * Instantiate a JSON to XML translator with a compiled XSD model.
+     *
+     * @param plan the compiled XML Schema model
+     */
+    public Json2Xml(TranslationPlan plan) {
+        this.grammar = plan.getRoot();
     }
 
     /**
@@ -73,17 +79,28 @@ public class Json2Xml {
      */
     public Json2Xml() {
         this.grammar = null;
-        nsPfxMap = null;
     }
 
-    private void getPfxMap(SchemaNode node, int idx) {
-        if (!nsPfxMap.containsKey(node.getNamespace())) {
-            nsPfxMap.put(node.getNamespace(), "ns" + idx + ":");
+    /**
+     * Assign a name space prefix (in the format "ns0:") to each name space of the XML Schema model
+     *
+     * @param grammar the XML Schema model
+     * @return name space -> prefix map
+     */
+    static HashMap<String, String> getPfxMap(SchemaNode grammar) {
+        HashMap<String, String> pfxMap = new HashMap<>();
+        getPfxMap(pfxMap, grammar, 0);
+        return pfxMap;
+    }
+
+    private static void getPfxMap(HashMap<String, String> pfxMap, SchemaNode node, int idx) {
+        if (!pfxMap.containsKey(node.getNamespace())) {
+            pfxMap.put(node.getNamespace(), "ns" + idx + ":");
             idx++;
         }
         if (!node.isRecursive()) {
             for (SchemaNode child : node.getChildren()) {
-                getPfxMap(child, idx);
+                getPfxMap(pfxMap, child, idx);
             }
         }
     }
@@ -93,13 +110,13 @@ public class Json2Xml {
         return doc.createElement(key);
     }
 
-    private Element createElementNS(SchemaNode xsdNode, String key, Document doc) {
+    private Element createElementNS(TranslationPlan.Node xsdNode, String key, Document doc) {
         return xsdNode != null && xsdNode.isQualified()
-                ? doc.createElementNS(xsdNode.getNamespace(), nsPfxMap.get(xsdNode.getNamespace()) + key)
+                ? doc.createElementNS(xsdNode.getNamespace(), xsdNode.getQualifiedName())
                         : createElement(key, doc);
     }
 
-    private int walkArray(String key, JsonArray jsonArray, Element xmlNode, Document doc, SchemaNode xsdNode,
+    private int walkArray(String key, JsonArray jsonArray, Element xmlNode, Document doc, TranslationPlan.Node xsdNode,
             int currLen) {
         int length = jsonArray.size();
         int maxLen = (xsdNode == null ? Integer.MAX_VALUE : xsdNode.getMaxOccurs());
@@ -133,10 +150,10 @@ public class Json2Xml {
         return currLen;
     }
 
-    private void appendChildrenBySchema(JsonObject jsonNode, Element xmlNode, Document doc, SchemaNode childXsdNode, boolean optional) {
+    private void appendChildrenBySchema(JsonObject jsonNode, Element xmlNode, Document doc, TranslationPlan.Node childXsdNode, boolean optional) {
         if (childXsdNode.isIndicator()) {
             boolean optionalChild = optional || childXsdNode.getMinOccurs() == 0 || childXsdNode.getIndicator() == SchemaNode.IndicatorType.choice;
-            for (SchemaNode descendantXsdNode: childXsdNode.getChildren()) {
+            for (TranslationPlan.Node descendantXsdNode: childXsdNode.getChildren()) {
                 appendChildrenBySchema(jsonNode, xmlNode, doc, descendantXsdNode, optionalChild);
                 if (xmlNode.hasChildNodes()) {
                     if (childXsdNode.getIndicator() == SchemaNode.IndicatorType.choice) {
@@ -242,11 +259,11 @@ public class Json2Xml {
         }
     }
 
-    private void appendChildren(JsonObject jsonNode, Element xmlNode, Document doc, SchemaNode xsdNode) {
+    private void appendChildren(JsonObject jsonNode, Element xmlNode, Document doc, TranslationPlan.Node xsdNode) {
         if (xsdNode == null || xsdNode.isAny()) {
             appendChildrenByValue(jsonNode, xmlNode, doc);
         } else {
-            for (SchemaNode childXsdNode : xsdNode.getChildren()) {
+            for (TranslationPlan.Node childXsdNode : xsdNode.getChildren()) {
                 appendChildrenBySchema(jsonNode, xmlNode, doc, childXsdNode, false);
             }
         }
@@ -273,7 +290,7 @@ public class Json2Xml {
         } else if (jsonRoot instanceof JsonArray jsonArray) {
             if (!jsonArray.isEmpty()) {
                 if (grammar.getChildren().size() == 1 && grammar.getChildren().getFirst().isIndicator()) {
-                    SchemaNode rootIndicator = grammar.getChildren().getFirst();
+                    TranslationPlan.Node rootIndicator = grammar.getChildren().getFirst();
                     if (rootIndicator.getMaxOccurs() > 1) {
                         walkArray(null, jsonArray, xmlRoot, doc, rootIndicator, 0);
                     } else if (rootIndicator.getChildren().size() == 1 && rootIndicator.getChildren().getFirst().getMaxOccurs() > 1) {
@@ -0,0 +1,634 @@
+package com.mcsuka.xml.json;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+
+/**
+ * Streaming JSON to XML translator, optionally with XML Schema support. It reads the JSON via a Gson JsonReader and
+ * writes the XML via a StAX XMLStreamWriter, without building a JSON tree or a DOM. The output is the same as the
+ * output of {@link Json2Xml}.
+ * <br/>
+ * JSON members are written as soon as they are read, if they arrive in the order of the XML Schema sequence. Members
+ * arriving earlier than their position in the sequence are collected in memory until their turn comes. Elements with
+ * an xsd:any child, or with repeated element names in their content model, are collected in memory, because their
+ * translation needs every member of the JSON object.
+ * <br/>
+ * The translation is thread safe, side-effect free, it may be reused in concurrent threads.
+ */
+public class StreamingJson2Xml {
+
+    private final TranslationPlan.Node grammar;
+
+    /**
+     * Instantiate a streaming JSON to XML translator with XSD model support.
+     *
+     * @param grammar the XML Schema model
+     */
+    public StreamingJson2Xml(SchemaNode grammar) {
+        this(TranslationPlan.compile(grammar));
+    }
+
+    /**
+     * Instantiate a streaming JSON to XML translator with a compiled XSD model.
+     *
+     * @param plan the compiled XML Schema model
+     */
+    public StreamingJson2Xml(TranslationPlan plan) {
+        this.grammar = plan.getRoot();
+    }
+
+    /**
+     * Instantiate a streaming JSON to XML translator without XSD model support.
+     */
+    public StreamingJson2Xml() {
+        this.grammar = null;
+    }
+
+    /**
+     * A JSON value: either already parsed, or the next value of a JsonReader
+     */
+    private record Value(JsonElement element, JsonReader reader) {
+
+        boolean isArray() throws IOException {
+            return element != null ? element.isJsonArray() : reader.peek() == JsonToken.BEGIN_ARRAY;
+        }
+
+        boolean isObject() throws IOException {
+            return element != null ? element.isJsonObject() : reader.peek() == JsonToken.BEGIN_OBJECT;
+        }
+
+        JsonElement toTree() {
+            return element != null ? element : JsonParser.parseReader(reader);
+        }
+    }
+
+    /**
+     * The members of a JSON object. Members are either taken from a parsed JsonObject, or read on demand from a
+     * JsonReader. Members read ahead of the requested one are collected in memory.
+     */
+    private static final class Members {
+
+        private static final Members EMPTY = new Members(new JsonObject());
+
+        private final JsonReader reader;
+        private final JsonObject buffered;
+        private final JsonObject overrides;
+        private final Set<String> consumed = new HashSet<>();
+        private boolean finished;
+
+        private Members(JsonObject jsonObject) {
+            this.reader = null;
+            this.buffered = jsonObject;
+            this.overrides = null;
+            this.finished = true;
+        }
+
+        private Members(JsonReader reader, JsonObject overrides) throws IOException {
+            this.reader = reader;
+            this.buffered = new JsonObject();
+            this.overrides = overrides;
+            this.finished = false;
+            reader.beginObject();
+        }
+
+        static Members of(Value value, boolean streamable, JsonObject overrides) throws IOException {
+            if (value.element() == null && streamable) {
+                return new Members(value.reader(), overrides);
+            }
+            JsonObject jsonObject = value.toTree().getAsJsonObject();
+            if (overrides != null) {
+                overrides.entrySet().forEach(e -> jsonObject.add(e.getKey(), e.getValue()));
+            }
+            return new Members(jsonObject);
+        }
+
+        /**
+         * Get a member. If the member is read from the stream, it must be consumed before the next call.
+         * A member consumed from the stream earlier is returned as an empty array: it is only requested again
+         * by a choice, if it did not produce any XML content.
+         */
+        Value get(String key) throws IOException {
+            if (overrides != null && overrides.has(key)) {
+                return new Value(overrides.get(key), null);
+            }
+            JsonElement element = buffered.get(key);
+            if (element != null) {
+                return new Value(element, null);
+            }
+            if (consumed.contains(key)) {
+                return new Value(new JsonArray(), null);
+            }
+            while (!finished) {
+                if (!reader.hasNext()) {
+                    reader.endObject();
+                    finished = true;
+                } else {
+                    String name = reader.nextName();
+                    if (overrides != null && overrides.has(name)) {
+                        reader.skipValue();
+                    } else if (name.equals(key)) {
+                        consumed.add(key);
+                        return new Value(null, reader);
+                    } else {
+                        buffered.add(name, JsonParser.parseReader(reader));
+                    }
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Get a member as a parsed JSON element, it remains available for subsequent calls.
+         */
+        JsonElement getTree(String key) throws IOException {
+            Value value = get(key);
+            if (value == null) {
+                return null;
+            } else if (value.element() == null) {
+                JsonElement element = value.toTree();
+                buffered.add(key, element);
+                return element;
+            }
+            return value.element();
+        }
+
+        /**
+         * Read all remaining members from the stream.
+         *
+         * @return all members not consumed from the stream yet, the overrides included
+         */
+        JsonObject readAll() throws IOException {
+            while (!finished) {
+                if (!reader.hasNext()) {
+                    reader.endObject();
+                    finished = true;
+                } else {
+                    String name = reader.nextName();
+                    if (overrides != null && overrides.has(name)) {
+                        reader.skipValue();
+                    } else {
+                        buffered.add(name, JsonParser.parseReader(reader));
+                    }
+                }
+            }
+            if (overrides != null) {
+                overrides.entrySet().forEach(e -> buffered.add(e.getKey(), e.getValue()));
+            }
+            return buffered;
+        }
+
+        /**
+         * Skip the members not consumed, leave the reader positioned after the end of the JSON object.
+         */
+        void finish() throws IOException {
+            while (!finished) {
+                if (!reader.hasNext()) {
+                    reader.endObject();
+                    finished = true;
+                } else {
+                    reader.nextName();
+                    reader.skipValue();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tracks whether any child node (element or text) has been written to an XML element
+     */
+    private static final class ElementState {
+        boolean hasChildNodes;
+    }
+
+    /**
+     * Wraps the XMLStreamWriter, declares the name space prefixes when they are not in scope yet
+     */
+    private static final class XmlOutput {
+
+        private final XMLStreamWriter writer;
+        private final ArrayDeque<Integer> scopes = new ArrayDeque<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private final List<String> namespaces = new ArrayList<>();
+
+        XmlOutput(XMLStreamWriter writer) {
+            this.writer = writer;
+        }
+
+        private boolean isDeclared(String prefix, String namespace) {
+            for (int i = prefixes.size() - 1; i >= 0; i--) {
+                if (prefixes.get(i).equals(prefix)) {
+                    return namespaces.get(i).equals(namespace);
+                }
+            }
+            return false;
+        }
+
+        private void declare(String prefix, String namespace) throws XMLStreamException {
+            if (!isDeclared(prefix, namespace)) {
+                writer.writeNamespace(prefix, namespace);
+                prefixes.add(prefix);
+                namespaces.add(namespace);
+            }
+        }
+
+        void startElement(String localName) throws XMLStreamException {
+            writer.writeStartElement(localName);
+            scopes.push(prefixes.size());
+        }
+
+        void startElement(String prefix, String localName, String namespace) throws XMLStreamException {
+            writer.writeStartElement(prefix, localName, namespace);
+            scopes.push(prefixes.size());
+            declare(prefix, namespace);
+        }
+
+        void attribute(String localName, String value) throws XMLStreamException {
+            writer.writeAttribute(localName, value);
+        }
+
+        void attribute(String prefix, String localName, String namespace, String value) throws XMLStreamException {
+            declare(prefix, namespace);
+            writer.writeAttribute(prefix, namespace, localName, value);
+        }
+
+        void text(String text) throws XMLStreamException {
+            writer.writeCharacters(text);
+        }
+
+        void endElement() throws XMLStreamException {
+            writer.writeEndElement();
+            int size = scopes.pop();
+            while (prefixes.size() > size) {
+                prefixes.removeLast();
+                namespaces.removeLast();
+            }
+        }
+    }
+
+    /**
+     * A JSON object can be translated while it is read, if its members are requested only once and the translation
+     * does not need the complete list of its members.
+     */
+    private static boolean isStreamable(TranslationPlan.Node xsdNode) {
+        return xsdNode == null || xsdNode.isAny() || xsdNode.hasUniqueElementNames();
+    }
+
+    private void startElement(XmlOutput out, TranslationPlan.Node xsdNode, String key) throws XMLStreamException {
+        if (xsdNode != null && xsdNode.isQualified()) {
+            out.startElement(xsdNode.getPrefix(), key, xsdNode.getNamespace());
+        } else {
+            out.startElement(Json2Xml.normalizeKey(key));
+        }
+    }
+
+    private void writeAttribute(XmlOutput out, TranslationPlan.Node xsdNode, String key, String value) throws XMLStreamException {
+        if (xsdNode.isQualified()) {
+            out.attribute(xsdNode.getPrefix(), key, xsdNode.getNamespace(), value);
+        } else {
+            out.attribute(key, value);
+        }
+    }
+
+    private static void writeText(XmlOutput out, String text, ElementState state) throws XMLStreamException {
+        if (text != null && !text.isEmpty()) {
+            out.text(text);
+            state.hasChildNodes = true;
+        }
+    }
+
+    private int walkArray(XmlOutput out, String key, Value arrayValue, TranslationPlan.Node xsdNode, int currLen,
+            ElementState state) throws IOException, XMLStreamException {
+        int maxLen = (xsdNode == null ? Integer.MAX_VALUE : xsdNode.getMaxOccurs());
+        JsonArray jsonArray = arrayValue.element() == null ? null : arrayValue.element().getAsJsonArray();
+        JsonReader reader = arrayValue.reader();
+        if (reader != null) {
+            reader.beginArray();
+        }
+        int i = 0;
+        while (currLen < maxLen && (jsonArray != null ? i < jsonArray.size() : reader.hasNext())) {
+            Value item = jsonArray != null ? new Value(jsonArray.get(i), null) : new Value(null, reader);
+            i++;
+            if (item.isArray()) {
+                currLen = walkArray(out, key, item, xsdNode, currLen, state);
+            } else if (key != null) {
+                startElement(out, xsdNode, key);
+                ElementState childState = new ElementState();
+                if (item.isObject()) {
+                    Members members = Members.of(item, isStreamable(xsdNode), null);
+                    appendChildren(out, members, xsdNode, null, childState);
+                    members.finish();
+                } else {
+                    JsonElement primitive = item.toTree();
+                    String text = xsdNode == null || xsdNode.isSimpleType() || xsdNode.isAny() ? primitive.getAsString() : null;
+                    if (xsdNode != null && !xsdNode.isLeaf()) { // create missing XML elements
+                        appendChildren(out, Members.EMPTY, xsdNode, text, childState);
+                    } else {
+                        writeText(out, text, childState);
+                    }
+                }
+                out.endElement();
+                state.hasChildNodes = true;
+                currLen++;
+            } else if (item.isObject()) {
+                Members members = Members.of(item, isStreamable(xsdNode), null);
+                appendChildren(out, members, xsdNode, null, state);
+                members.finish();
+            } else {
+                item.toTree();
+            }
+        }
+        if (reader != null) {
+            while (reader.hasNext()) {
+                reader.skipValue();
+            }
+            reader.endArray();
+        }
+        return currLen;
+    }
+
+    private void appendAttribute(XmlOutput out, Members members, TranslationPlan.Node attrXsdNode) throws IOException, XMLStreamException {
+        if (attrXsdNode.isAny()) {
+            for (Map.Entry<String, JsonElement> entry : members.readAll().entrySet()) {
+                if (!Xml2Json.XML_ELEMENT_CONTENT.equals(entry.getKey())) {
+                    writeAttribute(out, attrXsdNode, entry.getKey(), entry.getValue().getAsString());
+                }
+            }
+        } else {
+            String key = attrXsdNode.getElementName();
+            JsonElement value = members.getTree(key);
+            if (value != null) {
+                writeAttribute(out, attrXsdNode, key,
+                    attrXsdNode.getFixedValue() != null ? attrXsdNode.getFixedValue() : value.getAsString());
+            } else if (attrXsdNode.getMinOccurs() > 0 || attrXsdNode.getDefaultValue() != null) {
+                writeAttribute(out, attrXsdNode, key, attrXsdNode.getOptionalValue());
+            }
+        }
+    }
+
+    private void appendChildrenBySchema(XmlOutput out, Members members, TranslationPlan.Node childXsdNode, boolean optional,
+            ElementState state) throws IOException, XMLStreamException {
+        if (childXsdNode.isIndicator()) {
+            boolean optionalChild = optional || childXsdNode.getMinOccurs() == 0 || childXsdNode.getIndicator() == SchemaNode.IndicatorType.choice;
+            for (TranslationPlan.Node descendantXsdNode: childXsdNode.getChildren()) {
+                appendChildrenBySchema(out, members, descendantXsdNode, optionalChild, state);
+                if (state.hasChildNodes) {
+                    if (childXsdNode.getIndicator() == SchemaNode.IndicatorType.choice) {
+                        break;
+                    } else {
+                        optionalChild = false;
+                    }
+                }
+            }
+            if (!state.hasChildNodes && childXsdNode.getIndicator() == SchemaNode.IndicatorType.choice && !childXsdNode.getChildren().isEmpty()) {
+                appendChildrenBySchema(out, members, childXsdNode.getChildren().getFirst(), false, state);
+            }
+        } else if (childXsdNode.isAttribute()) {
+            // attributes are written before the element content, see appendChildren
+        } else if (childXsdNode.isAny()) {
+            appendChildrenByValue(out, members, state);
+        } else {
+            String key = childXsdNode.getElementName();
+            Value value = members.get(key);
+            if (value != null) {
+                if (value.isArray()) {
+                    walkArray(out, key, value, childXsdNode, 0, state);
+                } else {
+                    startElement(out, childXsdNode, key);
+                    ElementState childState = new ElementState();
+                    if (value.isObject()) {
+                        if (childXsdNode.isSimpleType()) {
+                            JsonObject jo = value.toTree().getAsJsonObject();
+                            String text = null;
+                            if (childXsdNode.getFixedValue() != null) {
+                                text = childXsdNode.getFixedValue();
+                            } else if (jo.has(Xml2Json.XML_ELEMENT_CONTENT)) {
+                                text = jo.get(Xml2Json.XML_ELEMENT_CONTENT).getAsString();
+                            } else if (childXsdNode.getDefaultValue() != null) {
+                                text = childXsdNode.getDefaultValue();
+                            }
+                            appendChildren(out, new Members(jo), childXsdNode, text, childState);
+                        } else {
+                            Members childMembers = Members.of(value, isStreamable(childXsdNode), null);
+                            appendChildren(out, childMembers, childXsdNode, null, childState);
+                            childMembers.finish();
+                        }
+                    } else {
+                        JsonElement primitive = value.toTree();
+                        String text = null;
+                        if (childXsdNode.isSimpleType()) {
+                            text = childXsdNode.getFixedValue() != null ? childXsdNode.getFixedValue() : primitive.getAsString();
+                        }
+                        if (!childXsdNode.isLeaf()) {
+                            appendChildren(out, Members.EMPTY, childXsdNode, text, childState);
+                        } else {
+                            writeText(out, text, childState);
+                        }
+                    }
+                    out.endElement();
+                    state.hasChildNodes = true;
+                }
+            } else if (!optional) {
+                for (int i = 0; i < childXsdNode.getMinOccurs(); i++) {
+                    startElement(out, childXsdNode, key);
+                    ElementState childState = new ElementState();
+                    if (!childXsdNode.isLeaf()) {
+                        appendChildren(out, Members.EMPTY, childXsdNode, childXsdNode.getOptionalValue(), childState);
+                    } else {
+                        writeText(out, childXsdNode.getOptionalValue(), childState);
+                    }
+                    out.endElement();
+                    state.hasChildNodes = true;
+                }
+            }
+        }
+    }
+
+    private void appendChildrenByValue(XmlOutput out, Members members, ElementState state) throws IOException, XMLStreamException {
+        if (members.reader == null || members.finished) {
+            for (Map.Entry<String, JsonElement> entry : members.readAll().entrySet()) {
+                appendMemberByValue(out, entry.getKey(), new Value(entry.getValue(), null), state);
+            }
+        } else {
+            for (Map.Entry<String, JsonElement> entry : members.buffered.entrySet()) {
+                appendMemberByValue(out, entry.getKey(), new Value(entry.getValue(), null), state);
+            }
+            while (members.reader.hasNext()) {
+                appendMemberByValue(out, members.reader.nextName(), new Value(null, members.reader), state);
+            }
+        }
+    }
+
+    private void appendMemberByValue(XmlOutput out, String key, Value value, ElementState state) throws IOException, XMLStreamException {
+        if (value.isArray()) {
+            walkArray(out, key, value, null, 0, state);
+        } else {
+            out.startElement(Json2Xml.normalizeKey(key));
+            if (value.isObject()) {
+                Members childMembers = Members.of(value, true, null);
+                appendChildrenByValue(out, childMembers, new ElementState());
+                childMembers.finish();
+            } else {
+                JsonElement primitive = value.toTree();
+                if (primitive != null) {
+                    writeText(out, primitive.getAsString(), new ElementState());
+                }
+            }
+            out.endElement();
+            state.hasChildNodes = true;
+        }
+    }
+
+    /**
+     * Write the content of an XML element: attributes first, then the text, then the child elements.
+     */
+    private void appendChildren(XmlOutput out, Members members, TranslationPlan.Node xsdNode, String text, ElementState state)
+            throws IOException, XMLStreamException {
+        if (xsdNode == null || xsdNode.isAny()) {
+            writeText(out, text, state);
+            appendChildrenByValue(out, members, state);
+        } else {
+            for (TranslationPlan.Node attrXsdNode : xsdNode.getAttributes()) {
+                appendAttribute(out, members, attrXsdNode);
+            }
+            writeText(out, text, state);
+            for (TranslationPlan.Node childXsdNode : xsdNode.getChildren()) {
+                appendChildrenBySchema(out, members, childXsdNode, false, state);
+            }
+        }
+    }
+
+    /**
+     * Translate JSON to XML with XSD support. Only the root element is written, the caller is responsible for
+     * starting and ending the XML document.
+     *
+     * @param reader JSON input, positioned at the JSON root value. The root value is consumed, the reader is not closed.
+     * @param writer XML output
+     * @param overrides members to add to the JSON root object, replacing the members of the same name. May be null.
+     * @throws IOException reading the JSON input failed
+     * @throws XMLStreamException writing the XML output failed
+     */
+    public void translate(JsonReader reader, XMLStreamWriter writer, JsonObject overrides) throws IOException, XMLStreamException {
+        if (grammar == null) {
+            throw new UnsupportedOperationException("Cannot execute schema-based translation, XML Schema is not initialized.");
+        }
+        XmlOutput out = new XmlOutput(writer);
+        ElementState state = new ElementState();
+        startElement(out, grammar, grammar.getElementName());
+        Value root = new Value(null, reader);
+        if (root.isObject()) {
+            Members members = Members.of(root, isStreamable(grammar), overrides);
+            appendChildren(out, members, grammar, null, state);
+            members.finish();
+        } else if (grammar.isSimpleType()) {    // must be a JsonPrimitive or JsonNull
+            writeText(out, root.toTree().getAsString(), state);
+        } else if (root.isArray()) {
+            JsonArray jsonArray = root.toTree().getAsJsonArray();
+            if (!jsonArray.isEmpty()) {
+                if (grammar.getChildren().size() == 1 && grammar.getChildren().getFirst().isIndicator()) {
+                    TranslationPlan.Node rootIndicator = grammar.getChildren().getFirst();
+                    if (rootIndicator.getMaxOccurs() > 1) {
+                        walkArray(out, null, new Value(jsonArray, null), rootIndicator, 0, state);
+                    } else if (rootIndicator.getChildren().size() == 1 && rootIndicator.getChildren().getFirst().getMaxOccurs() > 1) {
+                        walkArray(out, rootIndicator.getChildren().getFirst().getElementName(), new Value(jsonArray, null),
+                                rootIndicator.getChildren().getFirst(), 0, state);
+                    } else if (jsonArray.get(0) instanceof JsonObject jo) {
+                        appendChildren(out, new Members(jo), grammar, null, state);
+                    }
+                }
+            }
+        } else {
+            root.toTree();
+            appendChildren(out, Members.EMPTY, grammar, null, state);    // build empty XML
+        }
+        out.endElement();
+    }
+
+    /**
+     * Translate JSON to XML with XSD support
+     *
+     * @param json JSON text
+     * @param xml XML document output, it is flushed but not closed
+     * @throws IOException reading the JSON input failed
+     * @throws XMLStreamException writing the XML output failed
+     */
+    public void translate(Reader json, Writer xml) throws IOException, XMLStreamException {
+        XMLStreamWriter writer = XmlTools.newXMLStreamWriter(xml);
+        writer.writeStartDocument("UTF-8", "1.0");
+        translate(new JsonReader(json), writer, null);
+        writer.writeEndDocument();
+        writer.flush();
+    }
+
+    /**
+     * Translate JSON to XML without XSD. Only the root element is written, the caller is responsible for
+     * starting and ending the XML document.
+     *
+     * @param reader JSON input, positioned at the JSON root value. The root value is consumed, the reader is not closed.
+     * @param writer XML output
+     * @param rootElemName XML root element name
+     * @param nameSpaceUri XML root element name space. If null, root element has
+     *          no name space.
+     * @throws IOException reading the JSON input failed
+     * @throws XMLStreamException writing the XML output failed
+     */
+    public void translate(JsonReader reader, XMLStreamWriter writer, String rootElemName, String nameSpaceUri)
+            throws IOException, XMLStreamException {
+        XmlOutput out = new XmlOutput(writer);
+        ElementState state = new ElementState();
+        if (nameSpaceUri == null || nameSpaceUri.isEmpty()) {
+            out.startElement(rootElemName);
+        } else {
+            out.startElement("pfx", rootElemName, nameSpaceUri);
+        }
+        Value root = new Value(null, reader);
+        if (root.isObject()) {
+            Members members = Members.of(root, true, null);
+            appendChildrenByValue(out, members, state);
+            members.finish();
+        } else if (root.isArray()) {
+            walkArray(out, "item", root, null, 0, state);
+        } else {    // must be a JsonPrimitive or JsonNull
+            writeText(out, root.toTree().getAsString(), state);
+        }
+        out.endElement();
+    }
+
+    /**
+     * Translate JSON to XML without XSD
+     *
+     * @param json JSON text
+     * @param xml XML document output, it is flushed but not closed
+     * @param rootElemName XML root element name
+     * @param nameSpaceUri XML root element name space. If null, root element has
+     *          no name space.
+     * @throws IOException reading the JSON input failed
+     * @throws XMLStreamException writing the XML output failed
+     */
+    public void translate(Reader json, Writer xml, String rootElemName, String nameSpaceUri) throws IOException, XMLStreamException {
+        XMLStreamWriter writer = XmlTools.newXMLStreamWriter(xml);
+        writer.writeStartDocument("UTF-8", "1.0");
+        translate(new JsonReader(json), writer, rootElemName, nameSpaceUri);
+        writer.writeEndDocument();
+        writer.flush();
+    }
+
+}
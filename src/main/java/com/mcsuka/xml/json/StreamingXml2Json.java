@@ -0,0 +1,378 @@
+package com.mcsuka.xml.json;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonWriter;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+
+/**
+ * Streaming XML to JSON translator, optionally with XML Schema support. It reads the XML via a StAX XMLStreamReader
+ * and writes the JSON via a Gson JsonWriter, without building a DOM. The output is the same as the output of
+ * {@link Xml2Json}, for XML documents that are valid to the XML Schema.
+ * <br/>
+ * Elements are written as soon as they are read, if the XML Schema defines their content model and none of their
+ * indicators is repeatable. Repeatable elements (maxOccurs &gt; 1, or the _jsonarray="true" attribute) are written
+ * as JSON arrays, item by item. Other elements (no XML Schema, unknown elements, xsd:any or repeatable indicators)
+ * are collected in memory, one element subtree at a time, because a repeated child element may appear anywhere
+ * among their children. Hence, without an XML Schema the whole document is collected in memory as a JSON tree.
+ * <br/>
+ * The translation is thread safe, side-effect free, it may be reused in concurrent threads.
+ */
+public class StreamingXml2Json {
+
+    private static final TypeAdapter<JsonElement> JSON_ELEMENT_ADAPTER = new Gson().getAdapter(JsonElement.class);
+
+    private final TranslationPlan.Node grammar;
+    private final boolean ignoreAttributes;
+
+    /**
+     * Instantiate a streaming XML to JSON translator with XSD model support.
+     *
+     * @param ignoreAttributes true = skip XML attributes, false = add XML
+     *          attributes to JSON, except xmlns and xsi attributes
+     * @param grammar the XML Schema model
+     */
+    public StreamingXml2Json(boolean ignoreAttributes, SchemaNode grammar) {
+        this(ignoreAttributes, grammar == null ? null : TranslationPlan.compile(grammar));
+    }
+
+    /**
+     * Instantiate a streaming XML to JSON translator with a compiled XSD model.
+     *
+     * @param ignoreAttributes true = skip XML attributes, false = add XML
+     *          attributes to JSON, except xmlns and xsi attributes
+     * @param plan the compiled XML Schema model
+     */
+    public StreamingXml2Json(boolean ignoreAttributes, TranslationPlan plan) {
+        this.grammar = plan == null ? null : plan.getRoot();
+        this.ignoreAttributes = ignoreAttributes;
+    }
+
+    /**
+     * Instantiate a streaming XML to JSON translator without XSD model support.
+     *
+     * @param ignoreAttributes true = skip XML attributes, false = add XML
+     *          attributes to JSON, except xmlns and xsi attributes
+     */
+    public StreamingXml2Json(boolean ignoreAttributes) {
+        this(ignoreAttributes, (TranslationPlan) null);
+    }
+
+    private static boolean hasRepeatingIndicator(TranslationPlan.Node xsdNode) {
+        for (TranslationPlan.Node child : xsdNode.getChildren()) {
+            if (child.isIndicator() && (child.getMaxOccurs() > 1 || hasRepeatingIndicator(child))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isStreamable(TranslationPlan.Node xsdNode) {
+        return xsdNode != null && !xsdNode.isAny() && !hasRepeatingIndicator(xsdNode);
+    }
+
+    private Map<String, String> readAttributes(XMLStreamReader reader) {
+        Map<String, String> attributes = new HashMap<>();
+        if (!ignoreAttributes) {
+            for (int i = 0; i < reader.getAttributeCount(); i++) {
+                String prefix = reader.getAttributePrefix(i);
+                String name = prefix == null || prefix.isEmpty()
+                        ? reader.getAttributeLocalName(i)
+                        : prefix + ":" + reader.getAttributeLocalName(i);
+                if (Xml2Json.isJsonAttribute(name)) {
+                    attributes.put(name, reader.getAttributeValue(i));
+                }
+            }
+        }
+        return attributes;
+    }
+
+    /**
+     * Read the text of the current element, until its first child element or its end tag.
+     */
+    private static String readLeadingText(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = null;
+        int event = reader.next();
+        while (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                if (sb == null) {
+                    sb = new StringBuilder();
+                }
+                sb.append(reader.getText());
+            }
+            event = reader.next();
+        }
+        return sb == null ? "" : sb.toString();
+    }
+
+    /**
+     * Read the text content of the current element and all its descendants, as DOM getTextContent() would.
+     */
+    private static String readTextContent(XMLStreamReader reader) throws XMLStreamException {
+        StringBuilder sb = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                sb.append(reader.getText());
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Move to the next child element of the current element
+     *
+     * @return true if the reader is positioned at the start of a child element, false if it reached the end tag of
+     *          the current element
+     */
+    private static boolean nextChildElement(XMLStreamReader reader) throws XMLStreamException {
+        int event = reader.getEventType();
+        while (event != XMLStreamConstants.START_ELEMENT) {
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+            event = reader.next();
+        }
+        return true;
+    }
+
+    private static void skipToNextEvent(XMLStreamReader reader) throws XMLStreamException {
+        if (reader.hasNext()) {
+            reader.next();
+        }
+    }
+
+    /**
+     * Build the JSON tree of the current element in memory, the same way as Xml2Json walks the DOM.
+     * On return the reader is positioned after the end tag of the element.
+     */
+    private JsonElement build(XMLStreamReader reader, TranslationPlan.Node xsdNode) throws XMLStreamException {
+        JsonObject jsonNode = new JsonObject();
+        readAttributes(reader).forEach(jsonNode::addProperty);
+        String text = readLeadingText(reader);
+        if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            while (nextChildElement(reader)) {
+                String childName = reader.getLocalName();
+                boolean forceArray = "true".equals(reader.getAttributeValue(null, Xml2Json.FORCE_ARRAY_ATTRIBUTE));
+                TranslationPlan.Node childXsdNode = Xml2Json.getDescendant(xsdNode, childName);
+                JsonElement value = build(reader, childXsdNode);
+                JsonElement existingElem = jsonNode.get(childName);
+                if (existingElem != null) {
+                    if (existingElem instanceof JsonArray) {
+                        ((JsonArray) existingElem).add(value);
+                    } else {
+                        JsonArray array = new JsonArray();
+                        array.add(jsonNode.remove(childName));
+                        array.add(value);
+                        jsonNode.add(childName, array);
+                    }
+                } else if (forceArray || (childXsdNode != null && childXsdNode.getMaxOccurs() > 1)) {
+                    JsonArray array = new JsonArray();
+                    array.add(value);
+                    jsonNode.add(childName, array);
+                } else {
+                    jsonNode.add(childName, value);
+                }
+            }
+        } else if (xsdNode != null && !xsdNode.isSimpleType()) {
+            skipToNextEvent(reader);
+            return Xml2Json.walkEmpty(jsonNode, xsdNode);
+        } else {
+            JsonElement value = Xml2Json.toJsonValue(text, xsdNode);
+            skipToNextEvent(reader);
+            if (jsonNode.isEmpty()) {
+                return value;
+            } else {
+                jsonNode.add(Xml2Json.XML_ELEMENT_CONTENT, value);
+                return jsonNode;
+            }
+        }
+        skipToNextEvent(reader);
+        return jsonNode;
+    }
+
+    /**
+     * Write the JSON representation of the current element. On return the reader is positioned after the end tag
+     * of the element.
+     */
+    private void write(XMLStreamReader reader, JsonWriter writer, TranslationPlan.Node xsdNode) throws XMLStreamException, IOException {
+        if (!isStreamable(xsdNode)) {
+            JSON_ELEMENT_ADAPTER.write(writer, build(reader, xsdNode));
+            return;
+        }
+        Map<String, String> attributes = readAttributes(reader);
+        String text = readLeadingText(reader);
+        if (reader.getEventType() == XMLStreamConstants.START_ELEMENT) {
+            writer.beginObject();
+            writeAttributes(writer, attributes);
+            String openArray = null;
+            while (nextChildElement(reader)) {
+                String childName = reader.getLocalName();
+                if (!childName.equals(openArray)) {
+                    if (openArray != null) {
+                        writer.endArray();
+                        openArray = null;
+                    }
+                    TranslationPlan.Node childXsdNode = xsdNode.getChild(childName);
+                    writer.name(childName);
+                    if ("true".equals(reader.getAttributeValue(null, Xml2Json.FORCE_ARRAY_ATTRIBUTE))
+                            || (childXsdNode != null && childXsdNode.getMaxOccurs() > 1)) {
+                        writer.beginArray();
+                        openArray = childName;
+                    }
+                    write(reader, writer, childXsdNode);
+                } else {
+                    write(reader, writer, xsdNode.getChild(childName));
+                }
+            }
+            if (openArray != null) {
+                writer.endArray();
+            }
+            writer.endObject();
+        } else if (!xsdNode.isSimpleType()) {
+            JsonObject jsonNode = new JsonObject();
+            attributes.forEach(jsonNode::addProperty);
+            JSON_ELEMENT_ADAPTER.write(writer, Xml2Json.walkEmpty(jsonNode, xsdNode));
+        } else {
+            JsonElement value = Xml2Json.toJsonValue(text, xsdNode);
+            if (attributes.isEmpty()) {
+                JSON_ELEMENT_ADAPTER.write(writer, value);
+            } else {
+                writer.beginObject();
+                writeAttributes(writer, attributes);
+                writer.name(Xml2Json.XML_ELEMENT_CONTENT);
+                JSON_ELEMENT_ADAPTER.write(writer, value);
+                writer.endObject();
+            }
+        }
+        skipToNextEvent(reader);
+    }
+
+    private static void writeAttributes(JsonWriter writer, Map<String, String> attributes) throws IOException {
+        for (Map.Entry<String, String> entry : attributes.entrySet()) {
+            writer.name(entry.getKey()).value(entry.getValue());
+        }
+    }
+
+    private void writeRootArray(XMLStreamReader reader, JsonWriter writer, TranslationPlan.Node xsdNode) throws XMLStreamException, IOException {
+        boolean scalar = "true".equals(reader.getAttributeValue(null, Xml2Json.FORCE_SCALAR_ATTRIBUTE));
+        reader.next();
+        writer.beginArray();
+        Set<String> currentKeys = new HashSet<>();
+        while (nextChildElement(reader)) {
+            if (scalar) {
+                writer.value(readTextContent(reader));
+                skipToNextEvent(reader);
+            } else {
+                String childName = reader.getLocalName();
+                if (currentKeys.contains(childName)) {
+                    writer.endObject();
+                    currentKeys.clear();
+                }
+                if (currentKeys.isEmpty()) {
+                    writer.beginObject();
+                }
+                currentKeys.add(childName);
+                writer.name(childName);
+                write(reader, writer, Xml2Json.getDescendant(xsdNode, childName));
+            }
+        }
+        if (!currentKeys.isEmpty()) {
+            writer.endObject();
+        }
+        writer.endArray();
+        skipToNextEvent(reader);
+    }
+
+    /**
+     * Translate XML to JSON with or without XSD support. The XML root element is only a wrapper, it is omitted from
+     * the JSON output.
+     *
+     * @param reader StAX reader, positioned at or before the XML root element. The root element is consumed, the
+     *          reader is positioned after its end tag on return. The reader is not closed.
+     * @param writer the JSON output: a JSON object, a JSON array or a JSON primitive (only text nodes in the XML
+     *          root element). The writer is not flushed or closed.
+     * @throws XMLStreamException parsing or translation failed
+     * @throws IOException writing the JSON output failed
+     */
+    public void translate(XMLStreamReader reader, JsonWriter writer) throws XMLStreamException, IOException {
+        while (reader.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            reader.next();
+        }
+        if (grammar != null && grammar.getChildren().size() == 1
+                && grammar.getChildren().getFirst().isIndicator()
+                && grammar.getChildren().getFirst().getMaxOccurs() > 1) {   // array, forced by XSD
+            writeRootArray(reader, writer, grammar);
+        } else if ("true".equals(reader.getAttributeValue(null, Xml2Json.FORCE_ARRAY_ATTRIBUTE))) {   // array, forced by special attribute
+            writeRootArray(reader, writer, grammar);
+        } else { // object
+            write(reader, writer, grammar);
+        }
+    }
+
+    /**
+     * Translate XML to JSON with or without XSD support
+     *
+     * @param xml XML text
+     * @param json JSON output, it is flushed but not closed
+     * @throws XMLStreamException parsing or translation failed
+     * @throws IOException IO operation failed
+     */
+    public void translate(Reader xml, Writer json) throws XMLStreamException, IOException {
+        XMLStreamReader reader = XmlTools.newXMLStreamReader(xml);
+        try {
+            JsonWriter writer = new JsonWriter(json);
+            translate(reader, writer);
+            writer.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Translate XML to JSON with or without XSD support
+     *
+     * @param xml XML document, the character encoding is detected from the XML declaration
+     * @param json UTF-8 encoded JSON output, it is flushed but not closed
+     * @throws XMLStreamException parsing or translation failed
+     * @throws IOException IO operation failed
+     */
+    public void translate(InputStream xml, OutputStream json) throws XMLStreamException, IOException {
+        XMLStreamReader reader = XmlTools.newXMLStreamReader(xml);
+        try {
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(json, StandardCharsets.UTF_8));
+            translate(reader, writer);
+            writer.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+}
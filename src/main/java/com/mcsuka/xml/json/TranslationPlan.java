@@ -0,0 +1,301 @@
+package com.mcsuka.xml.json;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonPrimitive;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.model.SchemaNode.DataType;
+import com.mcsuka.xml.xsd.model.SchemaNode.IndicatorType;
+
+/**
+ * A SchemaNode tree compiled for the JSON / XML translators. Each SchemaNode is represented by one immutable
+ * {@link Node}, holding everything the translators look up while walking a document: the child nodes with recursive
+ * definitions resolved, a name index of the child elements and attributes (indicators flattened), the name space
+ * prefix and the converter of the text content to a JSON value.
+ * <br/>
+ * A plan is compiled once per XML Schema root element, it is immutable and may be shared by concurrent threads.
+ */
+public final class TranslationPlan {
+
+    private final Node root;
+    private final Map<String, String> nsPfxMap;
+
+    private TranslationPlan(Node root, Map<String, String> nsPfxMap) {
+        this.root = root;
+        this.nsPfxMap = nsPfxMap;
+    }
+
+    /**
+     * Compile the SchemaNode tree under the given root element
+     *
+     * @param grammar the XML Schema model
+     */
+    public static TranslationPlan compile(SchemaNode grammar) {
+        Map<String, String> nsPfxMap = Collections.unmodifiableMap(Json2Xml.getPfxMap(grammar));
+        Map<SchemaNode, Node> nodes = new IdentityHashMap<>();
+        Node root = compile(grammar, nodes, nsPfxMap);
+        index(root, new HashSet<>());
+        return new TranslationPlan(root, nsPfxMap);
+    }
+
+    private static Node compile(SchemaNode xsdNode, Map<SchemaNode, Node> nodes, Map<String, String> nsPfxMap) {
+        Node node = nodes.get(xsdNode);
+        if (node == null) {
+            node = new Node(xsdNode, nsPfxMap.get(xsdNode.getNamespace()));
+            nodes.put(xsdNode, node);  // registered before the children, recursive definitions will find it
+            List<Node> children = new ArrayList<>();
+            for (SchemaNode child : xsdNode.getChildren()) {
+                children.add(compile(child, nodes, nsPfxMap));
+            }
+            node.children = List.copyOf(children);
+            node.attributes = children.stream().filter(Node::isAttribute).toList();
+        }
+        return node;
+    }
+
+    /**
+     * Build the name indexes. Separate from the compilation of the children, because the children of a recursive
+     * definition may still be incomplete while the recursive node is compiled.
+     */
+    private static void index(Node node, Set<Node> indexed) {
+        if (indexed.add(node)) {
+            for (Node child : node.children) {
+                index(child, indexed);
+            }
+            Map<String, Node> childMap = new HashMap<>();
+            collectChildren(node, childMap);
+            node.childMap = Map.copyOf(childMap);
+            node.uniqueElementNames = collectElementNames(node, new HashSet<>());
+        }
+    }
+
+    // same lookup order as SchemaNode.getChild: own children first, then the children of the indicators in order
+    private static void collectChildren(Node node, Map<String, Node> childMap) {
+        for (Node child : node.children) {
+            if (!child.isIndicator()) {
+                childMap.put(child.getElementName(), child);
+            }
+        }
+        for (Node child : node.children) {
+            if (child.isIndicator()) {
+                Map<String, Node> descendants = new HashMap<>();
+                collectChildren(child, descendants);
+                descendants.forEach(childMap::putIfAbsent);
+            }
+        }
+    }
+
+    private static boolean collectElementNames(Node node, Set<String> names) {
+        for (Node child : node.children) {
+            if (child.isIndicator()) {
+                if (!collectElementNames(child, names)) {
+                    return false;
+                }
+            } else if (!child.isAttribute() && (child.isAny() || !names.add(child.getElementName()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * @return name space -> prefix map, prefixes in the format "ns0:"
+     */
+    public Map<String, String> getNsPfxMap() {
+        return nsPfxMap;
+    }
+
+    /**
+     * Compiled view of a SchemaNode
+     */
+    public static final class Node {
+
+        private final String elementName;
+        private final IndicatorType indicator;
+        private final String namespace;
+        private final String prefix;
+        private final String qualifiedName;
+        private final boolean qualified;
+        private final boolean attribute;
+        private final boolean any;
+        private final boolean leaf;
+        private final boolean simpleType;
+        private final DataType w3cType;
+        private final int minOccurs;
+        private final int maxOccurs;
+        private final String fixedValue;
+        private final String defaultValue;
+        private final String optionalValue;
+        private final Function<String, JsonElement> converter;
+
+        // set once, while compiling the plan
+        private List<Node> children;
+        private List<Node> attributes;
+        private Map<String, Node> childMap;
+        private boolean uniqueElementNames;
+
+        private Node(SchemaNode xsdNode, String nsPfx) {
+            this.elementName = xsdNode.getElementName();
+            this.indicator = xsdNode.getIndicator();
+            this.namespace = xsdNode.getNamespace();
+            this.prefix = nsPfx == null ? null : nsPfx.substring(0, nsPfx.length() - 1);
+            this.qualifiedName = nsPfx == null ? elementName : nsPfx + elementName;
+            this.qualified = xsdNode.isQualified();
+            this.attribute = xsdNode.isAttribute();
+            this.any = xsdNode.isAny();
+            this.leaf = xsdNode.isLeaf();
+            this.simpleType = xsdNode.isSimpleType();
+            this.w3cType = xsdNode.getW3CType();
+            this.minOccurs = xsdNode.getMinOccurs();
+            this.maxOccurs = xsdNode.getMaxOccurs();
+            this.fixedValue = xsdNode.getFixedValue();
+            this.defaultValue = xsdNode.getDefaultValue();
+            this.optionalValue = xsdNode.getOptionalValue();
+            this.converter = converter(w3cType);
+        }
+
+        private static Function<String, JsonElement> converter(DataType type) {
+            return switch (type) {
+                case INTEGER -> s -> new JsonPrimitive(Integer.parseInt(s));
+                case LONG -> s -> new JsonPrimitive(Long.parseLong(s));
+                case DOUBLE -> s -> new JsonPrimitive(Double.parseDouble(s));
+                case BOOLEAN -> s -> new JsonPrimitive(Boolean.parseBoolean(s));
+                case COMPLEX, MIXED, ANY -> s -> JsonNull.INSTANCE;
+                default -> JsonPrimitive::new;
+            };
+        }
+
+        public String getElementName() {
+            return elementName;
+        }
+
+        public IndicatorType getIndicator() {
+            return indicator;
+        }
+
+        public boolean isIndicator() {
+            return indicator != null;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        /**
+         * @return name space prefix, e.g. "ns0"
+         */
+        public String getPrefix() {
+            return prefix;
+        }
+
+        /**
+         * @return prefixed element name, e.g. "ns0:name"
+         */
+        public String getQualifiedName() {
+            return qualifiedName;
+        }
+
+        public boolean isQualified() {
+            return qualified;
+        }
+
+        public boolean isAttribute() {
+            return attribute;
+        }
+
+        public boolean isAny() {
+            return any;
+        }
+
+        /**
+         * @return true, if the SchemaNode has no children of its own. Recursive definitions are leaves.
+         */
+        public boolean isLeaf() {
+            return leaf;
+        }
+
+        public boolean isSimpleType() {
+            return simpleType;
+        }
+
+        public DataType getW3CType() {
+            return w3cType;
+        }
+
+        public int getMinOccurs() {
+            return minOccurs;
+        }
+
+        public int getMaxOccurs() {
+            return maxOccurs;
+        }
+
+        public String getFixedValue() {
+            return fixedValue;
+        }
+
+        public String getDefaultValue() {
+            return defaultValue;
+        }
+
+        public String getOptionalValue() {
+            return optionalValue;
+        }
+
+        /**
+         * @return the child nodes, recursive definitions resolved
+         */
+        public List<Node> getChildren() {
+            return children;
+        }
+
+        /**
+         * @return the attribute child nodes
+         */
+        public List<Node> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Find a child element or attribute by local name, looking through the indicators
+         *
+         * @return the child node or null
+         */
+        public Node getChild(String localName) {
+            return childMap.get(localName);
+        }
+
+        /**
+         * @return true, if the child elements (indicators flattened) have distinct names and none of them is xsd:any
+         */
+        public boolean hasUniqueElementNames() {
+            return uniqueElementNames;
+        }
+
+        /**
+         * Convert the text content of the XML element to a JSON value, according to the type defined in the XSD.
+         */
+        public JsonElement toJsonValue(String text) {
+            return converter.apply(text);
+        }
+
+        public String toString() {
+            return "TranslationPlan.Node {" + (isIndicator() ? indicator : qualifiedName) + ", " + w3cType + ", "
+                    + minOccurs + ".." + maxOccurs + "}";
+        }
+    }
+}
@@ -14,11 +14,9 @@ import org.xml.sax.InputSource;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 import com.mcsuka.xml.xsd.model.SchemaNode;
-import com.mcsuka.xml.xsd.model.SchemaNode.DataType;
 import com.mcsuka.xml.xsd.tools.XmlTools;
 import org.xml.sax.SAXException;
 
@@ -38,7 +36,7 @@ public class Xml2Json {
     public static final String FORCE_SCALAR_ATTRIBUTE = "_jsonprimitive";
     public static final String XML_ELEMENT_CONTENT = "_content";
     
-    private final SchemaNode grammar;
+    private final TranslationPlan.Node grammar;
     private final boolean ignoreAttributes;
 
     /**
@@ -49,7 +47,18 @@ public class Xml2Json {
      * @param grammar the XML Schema model
      */
     public Xml2Json(boolean ignoreAttributes, SchemaNode grammar) {
-        this.grammar = grammar;
+        this(ignoreAttributes, grammar == null ? null : TranslationPlan.compile(grammar));
+    }
+
+    /**
+     * Instantiate a XML to JSON translator with a compiled XSD model.
+     *
+     * @param ignoreAttributes true = skip XML attributes, false = add XML
+     *          attributes to JSON, except xmlns and xsi attributes
+     * @param plan the compiled XML Schema model
+     */
+    public Xml2Json(boolean ignoreAttributes, TranslationPlan plan) {
+        this.grammar = plan == null ? null : plan.getRoot();
         this.ignoreAttributes = ignoreAttributes;
     }
 
@@ -60,26 +69,14 @@ public class Xml2Json {
      *          attributes to JSON, except xmlns and xsi attributes
      */
     public Xml2Json(boolean ignoreAttributes) {
-        this(ignoreAttributes, null);
+        this(ignoreAttributes, (TranslationPlan) null);
     }
 
-    private static SchemaNode getDescendant(SchemaNode xsdNode, String localName) {
-        if (xsdNode != null) {
-            if (xsdNode.isIndicator()) {
-                for (SchemaNode child: xsdNode.getChildren()) {
-                    SchemaNode result = getDescendant(child, localName);
-                    if (result != null) {
-                        return result;
-                    }
-                }
-            } else {
-                return xsdNode.getChild(localName);
-            }
-        }
-        return null;
+    static TranslationPlan.Node getDescendant(TranslationPlan.Node xsdNode, String localName) {
+        return xsdNode == null ? null : xsdNode.getChild(localName);
     }
 
-    private JsonArray walkRootArray(JsonArray jsonArray, Element xmlNode, SchemaNode xsdNode) {
+    private JsonArray walkRootArray(JsonArray jsonArray, Element xmlNode, TranslationPlan.Node xsdNode) {
         List<Element> nodes = XmlTools.getChildElements(xmlNode);
         if ("true".equals(XmlTools.getAttribute(xmlNode, FORCE_SCALAR_ATTRIBUTE))) {
             for (Element child : nodes) {
@@ -110,12 +107,10 @@ public class Xml2Json {
         return jsonArray;
     }
 
-    private JsonElement walk(JsonObject jsonNode, Element xmlNode, SchemaNode xsdNode) {
+    private JsonElement walk(JsonObject jsonNode, Element xmlNode, TranslationPlan.Node xsdNode) {
         if (!ignoreAttributes) {
             for (Map.Entry<String, String> entry : XmlTools.getAttributes(xmlNode).entrySet()) {
-                if (!entry.getKey().startsWith("xsi:") && !entry.getKey().startsWith("xmlns:")
-                        && !entry.getKey().equals("xmlns") && !entry.getKey().equals(FORCE_ARRAY_ATTRIBUTE)
-                        && !entry.getKey().equals(FORCE_SCALAR_ATTRIBUTE)) {
+                if (isJsonAttribute(entry.getKey())) {
                     jsonNode.addProperty(entry.getKey(), entry.getValue());
                 }
             }
@@ -125,7 +120,7 @@ public class Xml2Json {
             for (Element child : nodes) {
                 String childName = child.getLocalName();
 
-                SchemaNode childXsdNode = getDescendant(xsdNode, childName);
+                TranslationPlan.Node childXsdNode = getDescendant(xsdNode, childName);
                 JsonElement value = walk(new JsonObject(), child, childXsdNode);
                 JsonElement existingElem = jsonNode.get(childName);
                 if (existingElem != null) {
@@ -151,16 +146,7 @@ public class Xml2Json {
         } else if (xsdNode != null && !xsdNode.isSimpleType()) {
             return walkEmpty(jsonNode, xsdNode);
         } else {
-            String stringValue = xmlNode.getTextContent();
-            DataType type = (xsdNode != null ? xsdNode.getW3CType() : DataType.STRING);
-            JsonElement value = switch (type) {
-                case INTEGER -> new JsonPrimitive(Integer.parseInt(stringValue));
-                case LONG -> new JsonPrimitive(Long.parseLong(stringValue));
-                case DOUBLE -> new JsonPrimitive(Double.parseDouble(stringValue));
-                case BOOLEAN -> new JsonPrimitive(Boolean.parseBoolean(stringValue));
-                case COMPLEX, MIXED, ANY -> JsonNull.INSTANCE;
-                default -> new JsonPrimitive(stringValue);
-            };
+            JsonElement value = toJsonValue(xmlNode.getTextContent(), xsdNode);
             if (jsonNode.isEmpty()) {
                 return value;
             } else {
@@ -170,8 +156,30 @@ public class Xml2Json {
         return jsonNode;
     }
 
-    private JsonElement walkEmpty(JsonObject jsonNode, SchemaNode xsdNode) {
-        for (SchemaNode child: xsdNode.getChildren()) {
+    /**
+     * Decide whether an XML attribute should be copied to the JSON output. Name space declarations, xsi attributes
+     * and the translator's own control attributes are skipped.
+     *
+     * @param attrName qualified name of the attribute, e.g. xsi:type
+     */
+    static boolean isJsonAttribute(String attrName) {
+        return !attrName.startsWith("xsi:") && !attrName.startsWith("xmlns:")
+                && !attrName.equals("xmlns") && !attrName.equals(FORCE_ARRAY_ATTRIBUTE)
+                && !attrName.equals(FORCE_SCALAR_ATTRIBUTE);
+    }
+
+    /**
+     * Convert the text content of a simple XML element to a JSON value, according to the type defined in the XSD.
+     *
+     * @param stringValue text content of the XML element
+     * @param xsdNode the XML Schema model of the element, null if unknown
+     */
+    static JsonElement toJsonValue(String stringValue, TranslationPlan.Node xsdNode) {
+        return xsdNode != null ? xsdNode.toJsonValue(stringValue) : new JsonPrimitive(stringValue);
+    }
+
+    static JsonElement walkEmpty(JsonObject jsonNode, TranslationPlan.Node xsdNode) {
+        for (TranslationPlan.Node child: xsdNode.getChildren()) {
             if (child.isIndicator()) {
                 return walkEmpty(jsonNode, child);
             } else if (child.getMaxOccurs() > 1) {
@@ -0,0 +1,164 @@
+package com.mcsuka.xml.proxy;
+
+import org.eclipse.jetty.client.AbstractConnectionPool;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.HttpClientTransport;
+import org.eclipse.jetty.client.HttpDestination;
+import org.eclipse.jetty.client.MultiplexConnectionPool;
+import org.eclipse.jetty.client.Origin;
+import org.eclipse.jetty.client.dynamic.HttpClientTransportDynamic;
+import org.eclipse.jetty.client.http.HttpClientConnectionFactory;
+import org.eclipse.jetty.io.ClientConnectionFactory;
+import org.eclipse.jetty.io.ClientConnector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Connection pools of the SOAP backends. The HTTP client keeps a pool per destination, i.e. per scheme, host and port
+ * of the targetUrls. The size of each pool may be set per destination, and destinations that support it may be called
+ * over HTTP/2 without TLS (h2c, with prior knowledge), multiplexing the requests over a few connections.
+ */
+public final class BackendPools {
+
+    private static final Logger logger = LoggerFactory.getLogger(BackendPools.class);
+
+    private static final String HTTP2_CLIENT = "org.eclipse.jetty.http2.client.HTTP2Client";
+    private static final String HTTP2_FACTORY_INFO = "org.eclipse.jetty.http2.client.http.ClientConnectionFactoryOverHTTP2$HTTP2";
+
+    /**
+     * Settings of a destination, collected from the services calling it
+     *
+     * @param maxConnections the maximum number of connections to the destination
+     * @param http2 true to call the destination over h2c
+     */
+    public record DestinationSettings(int maxConnections, boolean http2) {
+
+        /**
+         * @return the settings of a destination called by two services: the larger pool, and h2c if either asks for it
+         */
+        public DestinationSettings merge(DestinationSettings other) {
+            return new DestinationSettings(Math.max(maxConnections, other.maxConnections), http2 || other.http2);
+        }
+    }
+
+    /**
+     * Snapshot of a connection pool
+     *
+     * @param destination scheme, host and port of the destination
+     * @param queuedRequests requests waiting for a connection
+     */
+    public record PoolStats(String destination, int maxConnections, int connections, int activeConnections,
+                            int idleConnections, int pendingConnections, int queuedRequests) {
+    }
+
+    private BackendPools() {
+    }
+
+    /**
+     * @return the destination of a URL, e.g. http://localhost:9090
+     */
+    public static String destinationOf(String url) {
+        URI uri = URI.create(url);
+        String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+        int port = uri.getPort() > 0 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+        return destinationOf(scheme, uri.getHost(), port);
+    }
+
+    private static String destinationOf(String scheme, String host, int port) {
+        return scheme.toLowerCase(Locale.ROOT) + "://" + host.toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    private static String destinationOf(Origin origin) {
+        return destinationOf(origin.getScheme(), origin.getAddress().getHost(), origin.getAddress().getPort());
+    }
+
+    /**
+     * @return true if the HTTP/2 client is on the classpath
+     */
+    public static boolean isHttp2Available() {
+        try {
+            Class.forName(HTTP2_FACTORY_INFO);
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the destinations to be called over h2c. Empty, with a warning, if the HTTP/2 client is not available.
+     */
+    public static Set<String> http2Destinations(ProxySettings settings) {
+        Set<String> destinations = settings.destinations().entrySet().stream()
+            .filter(e -> e.getValue().http2())
+            .map(Map.Entry::getKey)
+            .collect(Collectors.toUnmodifiableSet());
+        if (!destinations.isEmpty() && !isHttp2Available()) {
+            logger.warn("HTTP/2 is configured for " + destinations + ", but org.eclipse.jetty.http2:"
+                + "http2-http-client-transport is not on the classpath, HTTP/1.1 is used instead");
+            return Set.of();
+        }
+        return destinations;
+    }
+
+    /**
+     * @return a transport speaking HTTP/1.1, and h2c if any destination needs it, with connection pools sized per
+     * destination
+     */
+    public static HttpClientTransport newTransport(ProxySettings settings) {
+        ClientConnector connector = new ClientConnector();
+        List<ClientConnectionFactory.Info> protocols = new ArrayList<>();
+        protocols.add(HttpClientConnectionFactory.HTTP11);
+        if (isHttp2Available() && settings.destinations().values().stream().anyMatch(DestinationSettings::http2)) {
+            protocols.add(newHttp2(connector));
+        }
+        HttpClientTransport transport = new HttpClientTransportDynamic(connector,
+            protocols.toArray(ClientConnectionFactory.Info[]::new));
+        transport.setConnectionPoolFactory(destination -> new MultiplexConnectionPool(destination,
+            maxConnections(settings, destination), destination, 1));
+        return transport;
+    }
+
+    private static int maxConnections(ProxySettings settings, HttpDestination destination) {
+        DestinationSettings destinationSettings = settings.destinations().get(destinationOf(destination.getOrigin()));
+        return destinationSettings == null ? settings.maxConnectionsPerDestination()
+            : destinationSettings.maxConnections();
+    }
+
+    /**
+     * The HTTP/2 client is an optional dependency, it is loaded by reflection
+     */
+    private static ClientConnectionFactory.Info newHttp2(ClientConnector connector) {
+        try {
+            Class<?> http2ClientClass = Class.forName(HTTP2_CLIENT);
+            Object http2Client = http2ClientClass.getConstructor(ClientConnector.class).newInstance(connector);
+            return (ClientConnectionFactory.Info) Class.forName(HTTP2_FACTORY_INFO)
+                .getConstructor(http2ClientClass).newInstance(http2Client);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to create the HTTP/2 client", e);
+        }
+    }
+
+    /**
+     * @return a snapshot of the connection pools of the destinations the client has called
+     */
+    public static List<PoolStats> getStats(HttpClient client) {
+        List<PoolStats> stats = new ArrayList<>();
+        client.getDestinations().forEach(d -> {
+            HttpDestination destination = (HttpDestination) d;
+            if (destination.getConnectionPool() instanceof AbstractConnectionPool pool) {
+                stats.add(new PoolStats(destinationOf(destination.getOrigin()), pool.getMaxConnectionCount(),
+                    pool.getConnectionCount(), pool.getActiveConnectionCount(), pool.getIdleConnectionCount(),
+                    pool.getPendingConnectionCount(), destination.getQueuedRequestCount()));
+            }
+        });
+        return stats;
+    }
+}
@@ -4,35 +4,79 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonObject;
 import com.mcsuka.xml.http.*;
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.eclipse.jetty.client.HttpClient;
-import org.eclipse.jetty.client.HttpContentResponse;
 import org.eclipse.jetty.client.HttpRequest;
-import org.eclipse.jetty.client.util.StringRequestContent;
+import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.InputStreamResponseListener;
+import org.eclipse.jetty.client.util.BytesRequestContent;
 import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.HttpStatus;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.HandlerWrapper;
 import org.eclipse.jetty.webapp.WebAppContext;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntConsumer;
 
 public class ClientHandler extends HandlerWrapper {
 
     private static final Logger logger = LoggerFactory.getLogger(ClientHandler.class);
     private final HttpClient client;
     private final WebAppContext swaggerUI;
-    private final Rest2SoapTransformer transformer;
-    private final String oasDoc;
+    private final String threading;
+    private final Executor executor;
+    private final Executor responseExecutor;
+    private final AttachmentStore attachments;
+    private final Set<String> http2Destinations;
+    private final ProxyMetrics metrics;
+    private final PayloadLogger payloadLogger;
+    private final int minCompressSize;
+    private final int requestTimeoutMs;
+    private final int coalesceMaxBytes;
+    private final StaticContent favicon;
+    private volatile ServiceTable serviceTable;
+
+    /**
+     * The services exposed by the proxy. Replaced as a whole on reload, a request uses the same table from start to end.
+     */
+    private record ServiceTable(List<SoapRestServiceDefinition> services, Rest2SoapTransformer transformer,
+                                StaticContent oasDoc) {
+    }
+
+    /**
+     * A translated request, and its trace ID in the payload log
+     */
+    private record Routed(SoapRequest soapRequest, long traceId) {
+    }
 
     private static final Gson GSONPretty = new GsonBuilder()
         .setPrettyPrinting()
@@ -40,18 +84,88 @@ public class ClientHandler extends HandlerWrapper {
 
 
     public ClientHandler(ProxySettings settings, HttpClient httpClient, WebAppContext swaggerUI) {
-        List<SoapRestServiceDefinition> services = settings.services();
+        this(settings, httpClient, swaggerUI, null);
+    }
+
+    /**
+     * @param executor executor of the REST request translations in async mode, of the whole request processing in
+     *                 virtual mode. If null, requests are processed synchronously, on the server thread.
+     */
+    public ClientHandler(ProxySettings settings, HttpClient httpClient, WebAppContext swaggerUI, Executor executor) {
+        this(settings, httpClient, swaggerUI, executor, new ProxyMetrics());
+    }
+
+    /**
+     * @param metrics metrics of the requests, served at /metrics
+     */
+    public ClientHandler(ProxySettings settings, HttpClient httpClient, WebAppContext swaggerUI, Executor executor,
+                         ProxyMetrics metrics) {
         this.client = httpClient;
         this.swaggerUI = swaggerUI;
-        this.transformer = new Rest2SoapTransformer(services);
+        this.threading = executor == null ? ProxySettings.THREADING_PLATFORM : settings.threading();
+        this.executor = executor;
+        this.responseExecutor = ProxySettings.THREADING_ASYNC.equals(threading)
+            ? newResponseExecutor(settings, metrics) : null;
+        this.attachments = new AttachmentStore(settings.attachmentDir(), settings.attachmentTtlMs(),
+            settings.attachmentMaxBytes());
+        this.http2Destinations = BackendPools.http2Destinations(settings);
+        this.metrics = metrics;
+        this.payloadLogger = new PayloadLogger(settings.payloadLog(), settings.payloadLogBufferSize());
+        this.minCompressSize = settings.compression() ? settings.compressionMinSize() : -1;
+        this.requestTimeoutMs = settings.requestTimeoutMs();
+        this.coalesceMaxBytes = settings.coalesceMaxBytes();
+        try {
+            this.favicon = StaticContent.ofResource("favicon.ico", "image/x-icon", minCompressSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.serviceTable = newServiceTable(settings.services(), minCompressSize);
+    }
+
+    /**
+     * Executor of the response writes in async mode. They block on the content of the SOAP response and on the client,
+     * so they run on virtual threads rather than on the translator pool, up to server.maxConcurrentRequests at the
+     * same time.
+     */
+    private static VirtualThreadExecutor newResponseExecutor(ProxySettings settings, ProxyMetrics metrics) {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("response", settings.maxConcurrentRequests());
+        metrics.addPool("response-virtual", executor::getRunningCount, executor::getMaxConcurrency,
+            executor::getWaitingCount);
+        return executor;
+    }
 
+    @Override
+    protected void doStart() throws Exception {
+        payloadLogger.start();
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        super.doStop();
+        payloadLogger.stop();
+        logger.info("Payload log: " + payloadLogger.getStats());
+    }
+
+    /**
+     * Replace the services exposed by the proxy. The routes and the OAS document are swapped together; requests in
+     * flight complete with the services they started with.
+     */
+    public void setServices(List<SoapRestServiceDefinition> services) {
+        serviceTable = newServiceTable(services, minCompressSize);
+    }
+
+    private static ServiceTable newServiceTable(List<SoapRestServiceDefinition> services, int minCompressSize) {
         JsonObject oas = OasGenerator.generateOas(services, "Proxy Service", "Genarated OAS Document", "0.1");
-        this.oasDoc = GSONPretty.toJson(oas);
+        return new ServiceTable(List.copyOf(services), new Rest2SoapTransformer(services),
+            new StaticContent(GSONPretty.toJson(oas).getBytes(StandardCharsets.UTF_8), "application/json;charset=utf-8",
+                minCompressSize));
     }
 
     public void stopClient() throws Exception {
         client.stop();
         stop();
+        attachments.clear();
     }
 
     public void startClient() throws Exception {
@@ -63,51 +177,606 @@ public class ClientHandler extends HandlerWrapper {
     public void handle(String uri, final Request request, HttpServletRequest servletRequest,
                        HttpServletResponse servletResponse) throws IOException, ServletException {
 
+        ServiceTable services = serviceTable;
         servletResponse.setContentType("application/json");
         servletResponse.setCharacterEncoding(StandardCharsets.UTF_8.name());
         if (uri.equals("/oas.json") && "get".equalsIgnoreCase(servletRequest.getMethod())) {
-            servletResponse.getWriter().write(oasDoc);
+            services.oasDoc().write(servletRequest, servletResponse);
+        } else if (uri.equals("/pools.json") && "get".equalsIgnoreCase(servletRequest.getMethod())) {
+            servletResponse.getWriter().write(GSONPretty.toJson(BackendPools.getStats(client)));
             servletResponse.setStatus(200);
+        } else if (uri.equals("/metrics") && "get".equalsIgnoreCase(servletRequest.getMethod())) {
+            servletResponse.setContentType("text/plain; version=0.0.4");
+            metrics.write(servletResponse.getWriter(), services.services(), BackendPools.getStats(client));
+            servletResponse.setStatus(200);
+        } else if (uri.startsWith(AttachmentStore.PATH) && "get".equalsIgnoreCase(servletRequest.getMethod())) {
+            writeAttachment(uri, servletResponse);
         } else if (uri.startsWith("/swagger")) {
             swaggerUI.handle(uri, request, servletRequest, servletResponse);
         } else if (uri.startsWith("/favicon.ico")) {
-            try(InputStream iconStream = ClassLoader.getSystemResource("favicon.ico").openStream()) {
-                servletResponse.setContentType("image/x-icon");
-                servletResponse.getOutputStream().write(iconStream.readAllBytes());
-                servletResponse.setStatus(200);
-            }
+            favicon.write(servletRequest, servletResponse);
+        } else if (ProxySettings.THREADING_ASYNC.equals(threading)) {
+            handleAsync(services.transformer(), servletRequest, servletResponse);
+            request.setHandled(true);
+            return;
+        } else if (ProxySettings.THREADING_VIRTUAL.equals(threading)) {
+            handleOnVirtualThread(services.transformer(), servletRequest, servletResponse);
+            request.setHandled(true);
+            return;
         } else {
+            process(services.transformer(), metrics.startRequest(), servletRequest, servletResponse);
+        }
+        request.setHandled(true);
+        servletResponse.flushBuffer();
+    }
+
+    /**
+     * Process the request with blocking calls on the current thread
+     */
+    private void process(Rest2SoapTransformer transformer, ProxyMetrics.RequestTimer timer,
+                         HttpServletRequest servletRequest, HttpServletResponse servletResponse) throws IOException {
+        try {
+            RestRequest restRequest = readRequest(servletRequest);
+            timer.mark(ProxyMetrics.Phase.READ);
+            SoapRequest soapRequest = null;
+            long traceId;
+            try {
+                soapRequest = transformer.transformRequest(restRequest);
+            } finally {
+                traceId = payloadLogger.logRestRequest(restRequest,
+                    soapRequest == null ? null : soapRequest.serviceDef());
+                restRequest.release();
+            }
+            timer.mark(ProxyMetrics.Phase.TRANSLATE_REQUEST);
+            timer.setOperation(soapRequest.serviceDef().getOperationName());
+            String key = sharedKey(soapRequest);
+            if (writeCachedResponse(soapRequest, traceId, key, servletResponse)) {
+                return;
+            }
+            RequestCoalescer.Call call = beginCall(soapRequest, key);
+            if (call != null && !call.isLeader()) {
+                Optional<RequestCoalescer.Result> result = awaitSharedResponse(call);
+                if (result.isPresent()) {
+                    timer.mark(ProxyMetrics.Phase.BACKEND);
+                    writeSharedResponse(soapRequest, result.get(), traceId, servletResponse);
+                    return;
+                }
+                call = null;    // the shared call is late or abandoned, make one of our own
+            }
+            Throwable failure = null;
             try {
-                RestRequest restRequest = RestRequest.fromHttpRequest(servletRequest);
-                logger.info("Received REST Request: {}", restRequest);
-                SoapRequest soapRequest = transformer.transformRequest(restRequest);
-                logger.info("Sending SOAP Request: {}", soapRequest);
-                HttpRequest clientRequest = (HttpRequest) client.newRequest(soapRequest.serviceDef().getTargetUrl());
-                clientRequest.method(HttpMethod.POST);
-                clientRequest.version(HttpVersion.HTTP_1_1);
-                clientRequest.addHeader(new HttpField("SOAPAction", "\"" + soapRequest.serviceDef().getSoapAction() + "\""));
-                clientRequest.body(new StringRequestContent(soapRequest.contents()));
-                HttpContentResponse clientResponse = (HttpContentResponse)clientRequest.send();
-                SoapResponse soapResponse = new SoapResponse(clientResponse.getStatus(), new String(clientResponse.getContent()));
-                logger.info("Received SOAP Response: {}", soapResponse);
-                RestResponse restResponse = transformer.transformResponse(soapRequest.serviceDef(), soapResponse);
-                logger.info("Sending REST Response: {}", restResponse);
-                servletResponse.getWriter().write(restResponse.body());
-                servletResponse.setStatus(restResponse.status());
+                payloadLogger.logSoapRequest(traceId, soapRequest);
+                StreamingResponseListener listener = send(soapRequest);
+                Response clientResponse;
+                try {
+                    clientResponse = listener.headers.get();
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception cause ? cause : e;
+                }
+                timer.mark(ProxyMetrics.Phase.BACKEND);
+                writeResponse(transformer, soapRequest, traceId, key, call, clientResponse, listener,
+                    servletRequest, servletResponse);
+                timer.mark(ProxyMetrics.Phase.TRANSLATE_RESPONSE);
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
+            } finally {
+                endCall(call, failure);
+            }
+        } catch (Exception e) {
+            writeError(servletRequest, servletResponse, e);
+        } finally {
+            timer.complete(servletResponse.getStatus());
+        }
+    }
 
+    /**
+     * Hand the request over to a virtual thread, which processes it with blocking calls. The server thread is
+     * released at once, the number of requests processed at the same time is limited by the executor.
+     */
+    private void handleOnVirtualThread(Rest2SoapTransformer transformer, HttpServletRequest servletRequest,
+                                       HttpServletResponse servletResponse) {
+        AsyncContext asyncContext = servletRequest.startAsync();
+        asyncContext.setTimeout(0);     // the client request has its own timeouts
+        ProxyMetrics.RequestTimer timer = metrics.startRequest();
+        executor.execute(() -> {
+            try {
+                process(transformer, timer, servletRequest, servletResponse);
             } catch (Exception e) {
-                logger.warn("Error processing REST request", e);
-                JsonObject error = new JsonObject();
-                error.addProperty("errorCode", "InternalError");
-                // Error details sent for testing purposes
-                // In a production environment internal error details should be suppressed
-                error.addProperty("errorDescription", e.toString());
-                servletResponse.getWriter().write(GSONPretty.toJson(error));
-                servletResponse.setStatus(HttpStatus.INTERNAL_SERVER_ERROR_500);
+                logger.warn("Error writing REST response", e);
+            } finally {
+                asyncContext.complete();
             }
+        });
+    }
+
+    /**
+     * Process the request without blocking the server thread: the request is translated on the translator pool, the
+     * SOAP call is sent with a response listener, and the servlet response is completed asynchronously. Once its
+     * headers arrive, the response is translated while its content is streamed in and the JSON is written out, on a
+     * virtual thread of the response executor: a slow backend or client does not hold a translator thread. The
+     * request body is still read on the server thread.
+     * <br/>
+     * Whatever fails once the request is async, including reading its body, ends in an error response and completes
+     * the AsyncContext.
+     */
+    private void handleAsync(Rest2SoapTransformer transformer, HttpServletRequest servletRequest,
+                             HttpServletResponse servletResponse) {
+        AsyncContext asyncContext = servletRequest.startAsync();
+        asyncContext.setTimeout(0);     // the client request has its own timeouts
+        ProxyMetrics.RequestTimer timer = metrics.startRequest();
+        CompletableFuture<Void> processed;
+        try {
+            RestRequest restRequest = readRequest(servletRequest);
+            timer.mark(ProxyMetrics.Phase.READ);
+            processed = processAsync(transformer, timer, restRequest, servletRequest, servletResponse);
+        } catch (Exception e) {
+            processed = CompletableFuture.failedFuture(e);
         }
-        request.setHandled(true);
-        servletResponse.flushBuffer();
+        processed.whenComplete((ignored, t) -> {
+            try {
+                if (t != null) {
+                    writeError(servletRequest, servletResponse, unwrap(t));
+                }
+            } catch (Exception e) {
+                logger.warn("Error writing REST response", e);
+            } finally {
+                timer.complete(servletResponse.getStatus());
+                asyncContext.complete();
+            }
+        });
+    }
+
+    /**
+     * The translations and the SOAP call of handleAsync, chained on the read REST request
+     */
+    private CompletableFuture<Void> processAsync(Rest2SoapTransformer transformer, ProxyMetrics.RequestTimer timer,
+                                                 RestRequest restRequest, HttpServletRequest servletRequest,
+                                                 HttpServletResponse servletResponse) {
+        return CompletableFuture
+            .supplyAsync(() -> {
+                SoapRequest soapRequest = null;
+                long traceId;
+                try {
+                    soapRequest = transformer.transformRequest(restRequest);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                } finally {
+                    traceId = payloadLogger.logRestRequest(restRequest,
+                        soapRequest == null ? null : soapRequest.serviceDef());
+                    restRequest.release();
+                }
+                timer.mark(ProxyMetrics.Phase.TRANSLATE_REQUEST);
+                timer.setOperation(soapRequest.serviceDef().getOperationName());
+                return new Routed(soapRequest, traceId);
+            }, executor)
+            .thenComposeAsync(routed -> {
+                SoapRequest soapRequest = routed.soapRequest();
+                long traceId = routed.traceId();
+                String key = sharedKey(soapRequest);
+                try {
+                    if (writeCachedResponse(soapRequest, traceId, key, servletResponse)) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                } catch (IOException e) {
+                    throw new CompletionException(e);
+                }
+                RequestCoalescer.Call call = beginCall(soapRequest, key);
+                if (call != null && !call.isLeader()) {
+                    // on a copy, the timeout of this request must not complete the shared result
+                    return call.result().copy()
+                        .completeOnTimeout(null, requestTimeoutMs, TimeUnit.MILLISECONDS)
+                        .thenComposeAsync(result -> {
+                            if (result == null) {
+                                // the shared call is late or abandoned, make one of our own
+                                logger.debug("The coalesced call was abandoned or did not end in "
+                                    + requestTimeoutMs + " ms, calling the backend");
+                                return callBackendAsync(transformer, timer, soapRequest, traceId, key, null,
+                                    servletRequest, servletResponse);
+                            }
+                            try {
+                                timer.mark(ProxyMetrics.Phase.BACKEND);
+                                writeSharedResponse(soapRequest, result, traceId, servletResponse);
+                            } catch (IOException e) {
+                                throw new CompletionException(e);
+                            }
+                            return CompletableFuture.completedFuture(null);
+                        }, responseExecutor);
+                }
+                return callBackendAsync(transformer, timer, soapRequest, traceId, key, call, servletRequest,
+                    servletResponse);
+            }, responseExecutor);
+    }
+
+    /**
+     * Send the SOAP request, and translate the response on the response executor once its headers arrive. The
+     * coalesced call led by the request, if any, is ended however the response ends, including errors thrown before
+     * the request is sent.
+     */
+    private CompletableFuture<Void> callBackendAsync(Rest2SoapTransformer transformer, ProxyMetrics.RequestTimer timer,
+                                                     SoapRequest soapRequest, long traceId, String key,
+                                                     RequestCoalescer.Call call, HttpServletRequest servletRequest,
+                                                     HttpServletResponse servletResponse) {
+        CompletableFuture<Void> written;
+        try {
+            payloadLogger.logSoapRequest(traceId, soapRequest);
+            StreamingResponseListener listener = send(soapRequest);
+            written = listener.headers.thenAcceptAsync(clientResponse -> {
+                try {
+                    timer.mark(ProxyMetrics.Phase.BACKEND);
+                    writeResponse(transformer, soapRequest, traceId, key, call, clientResponse, listener,
+                        servletRequest, servletResponse);
+                    timer.mark(ProxyMetrics.Phase.TRANSLATE_RESPONSE);
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, responseExecutor);
+        } catch (Throwable t) {
+            written = CompletableFuture.failedFuture(t);
+        }
+        return call == null ? written : written.whenComplete((ignored, t) -> endCall(call, unwrap(t)));
+    }
+
+    /**
+     * @return the cause of a CompletionException, any other throwable as it is
+     */
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    /**
+     * Read the REST request, with its body in buffers of the connector's pool
+     */
+    private static RestRequest readRequest(HttpServletRequest servletRequest) throws IOException {
+        return RestRequest.fromHttpRequest(servletRequest,
+            Request.getBaseRequest(servletRequest).getHttpChannel().getByteBufferPool());
+    }
+
+    /**
+     * Translate the SOAP response to JSON while its content arrives, and write the JSON to the servlet response as
+     * it is produced. The content is read to its end, so that the client connection can be reused.
+     * <br/>
+     * In an MTOM / XOP response the root part is translated, with links in place of the xop:Include elements; the
+     * binary parts that follow it are streamed to the attachment store.
+     * <br/>
+     * If the service caches its responses, the JSON is recorded while it is written, then stored in the cache. If the
+     * request leads a coalesced call, the JSON is translated into memory, shared with the requests collapsed into the
+     * call, and only then written to the client: the other requests do not depend on this request's client. A JSON
+     * larger than rest2soap.coalesce.maxBytes is not shared, the call is abandoned and the JSON streamed to the
+     * client.
+     * <br/>
+     * If the request is logged, the start of the SOAP response and of the JSON is kept while they stream through,
+     * and logged once the response is written.
+     *
+     * @param traceId the trace ID of the request in the payload log
+     * @param key the payload key of the request, if the service caches or coalesces its responses, otherwise null
+     * @param call the coalesced call led by this request, or null
+     */
+    private void writeResponse(Rest2SoapTransformer transformer, SoapRequest soapRequest, long traceId, String key,
+                               RequestCoalescer.Call call, Response clientResponse,
+                               InputStreamResponseListener listener, HttpServletRequest servletRequest,
+                               HttpServletResponse servletResponse) throws IOException, XMLStreamException {
+        String contentType = clientResponse.getHeaders().get(HttpHeader.CONTENT_TYPE);
+        int[] sentStatus = {0};
+        IntConsumer restStatus = status -> {
+            servletResponse.setStatus(status);
+            sentStatus[0] = status;
+        };
+        Optional<ResponseCache> cache = soapRequest.serviceDef().getResponseCache();
+        int logBytes = traceId == 0 ? 0 : payloadLogger.maxBodyBytes(soapRequest.serviceDef());
+        SharedResponseBuffer shared = call == null ? null
+            : new SharedResponseBuffer(call, coalesceMaxBytes, servletResponse);
+        OutputStream out = shared == null ? servletResponse.getOutputStream() : shared;
+        // the JSON of a coalesced call is cached from its shared buffer
+        ResponseRecorder recorder = key == null && traceId == 0 ? null : new ResponseRecorder(out,
+            key == null || shared != null ? 0 : cache.map(c -> c.getSettings().maxWeight()).orElse(0L), logBytes);
+        OutputStream json = recorder == null ? out : recorder;
+        boolean multipart = MultipartReader.isMultipart(contentType);
+        HeadInputStream soapResponse = new HeadInputStream(listener.getInputStream(), logBytes);
+        try (soapResponse) {
+            if (multipart) {
+                MultipartReader multipartReader = new MultipartReader(soapResponse,
+                    MultipartReader.getParameter(contentType, "boundary")
+                        .orElseThrow(() -> new IOException("Multipart SOAP response without boundary")));
+                MultipartReader.Part root = multipartReader.nextPart()
+                    .orElseThrow(() -> new IOException("Multipart SOAP response without parts"));
+                String responseId = attachments.newResponseId();
+                transformer.transformResponse(soapRequest.serviceDef(), clientResponse.getStatus(), root.body(),
+                    json, restStatus, href -> attachments.link(responseId, href));
+                Optional<MultipartReader.Part> part;
+                while ((part = multipartReader.nextPart()).isPresent()) {
+                    attachments.store(responseId, part.get());
+                }
+            } else {
+                transformer.transformResponse(soapRequest.serviceDef(), clientResponse.getStatus(), soapResponse,
+                    json, restStatus);
+            }
+            soapResponse.transferTo(OutputStream.nullOutputStream());
+        }
+        payloadLogger.logSoapResponse(traceId, clientResponse.getStatus(), contentType, soapResponse.head,
+            soapResponse.headLength(), soapResponse.count);
+        if (recorder != null) {
+            payloadLogger.logRestResponse(traceId, sentStatus[0], null, recorder.getHead(), recorder.getHeadLength(),
+                recorder.getCount());
+        }
+        if (key != null) {
+            Optional<byte[]> bytes = shared == null ? recorder.getBytes() : shared.getBytes();
+            // attachment links expire, responses with attachments are not cached
+            if (sentStatus[0] == 200 && !multipart && bytes.isPresent()) {
+                cache.ifPresent(c -> c.put(key, bytes.get()));
+            }
+            if (shared != null) {
+                shared.share(sentStatus[0]);
+            }
+        }
+    }
+
+    /**
+     * @return the payload key of the request if its service caches or coalesces the responses, otherwise null
+     */
+    private static String sharedKey(SoapRequest soapRequest) {
+        SoapRestServiceDefinition serviceDef = soapRequest.serviceDef();
+        return serviceDef.getResponseCache().isPresent() || serviceDef.getRequestCoalescer().isPresent()
+            ? soapRequest.payloadKey() : null;
+    }
+
+    /**
+     * @return the request's part in the coalesced call of its key, or null if the service does not coalesce
+     */
+    private static RequestCoalescer.Call beginCall(SoapRequest soapRequest, String key) {
+        return key == null ? null
+            : soapRequest.serviceDef().getRequestCoalescer().map(coalescer -> coalescer.begin(key)).orElse(null);
+    }
+
+    /**
+     * Wait for the response of the coalesced call the request was collapsed into, at most as long as a SOAP call may
+     * take. If the call failed, the request fails with the same error.
+     *
+     * @return the shared response, or empty if the call was abandoned or did not end in time
+     */
+    private Optional<RequestCoalescer.Result> awaitSharedResponse(RequestCoalescer.Call call) throws Exception {
+        try {
+            return Optional.ofNullable(call.result().get(requestTimeoutMs, TimeUnit.MILLISECONDS));
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        } catch (TimeoutException e) {
+            logger.debug("The coalesced call did not end in " + requestTimeoutMs + " ms, calling the backend");
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Fail the coalesced call led by the request, unless it was completed, so that the requests collapsed into it do
+     * not wait for it. Called when the leader is done, on every path.
+     *
+     * @param call the coalesced call, or null
+     * @param failure the error of the leader, or null
+     */
+    private static void endCall(RequestCoalescer.Call call, Throwable failure) {
+        if (call != null) {
+            call.fail(failure != null ? failure : new IOException("The coalesced call ended without a response"));
+        }
+    }
+
+    /**
+     * Write the response from the cache of the service, if it is cached
+     *
+     * @return true if the response was written
+     */
+    private boolean writeCachedResponse(SoapRequest soapRequest, long traceId, String key,
+                                        HttpServletResponse servletResponse) throws IOException {
+        Optional<ResponseCache> cache = soapRequest.serviceDef().getResponseCache();
+        Optional<byte[]> json = cache.isEmpty() ? Optional.empty() : cache.get().get(key);
+        if (json.isEmpty()) {
+            return false;
+        }
+        payloadLogger.logRestResponse(traceId, 200, "cache", json.get(),
+            Math.min(json.get().length, payloadLogger.maxBodyBytes(soapRequest.serviceDef())), json.get().length);
+        servletResponse.setStatus(200);
+        servletResponse.setContentLength(json.get().length);
+        servletResponse.getOutputStream().write(json.get());
+        return true;
+    }
+
+    /**
+     * Write the response of the coalesced call the request was collapsed into
+     */
+    private void writeSharedResponse(SoapRequest soapRequest, RequestCoalescer.Result result, long traceId,
+                                     HttpServletResponse servletResponse) throws IOException {
+        payloadLogger.logRestResponse(traceId, result.status(), "a coalesced call", result.json(),
+            Math.min(result.json().length, payloadLogger.maxBodyBytes(soapRequest.serviceDef())), result.json().length);
+        servletResponse.setStatus(result.status());
+        servletResponse.setContentLength(result.json().length);
+        servletResponse.getOutputStream().write(result.json());
+    }
+
+    private void writeAttachment(String uri, HttpServletResponse servletResponse) throws IOException {
+        Optional<AttachmentStore.Attachment> attachment = attachments.get(uri);
+        if (attachment.isEmpty()) {
+            writeError(servletResponse, HttpStatus.NOT_FOUND_404, "NotFound", "Attachment not found or expired");
+            return;
+        }
+        servletResponse.setStatus(200);
+        servletResponse.setContentType(attachment.get().contentType());
+        servletResponse.setContentLengthLong(attachment.get().size());
+        Files.copy(attachment.get().file(), servletResponse.getOutputStream());
+    }
+
+    /**
+     * Send the SOAP request. The listener completes its headers future when the response headers arrive, the content
+     * is then read from its InputStream.
+     */
+    private StreamingResponseListener send(SoapRequest soapRequest) {
+        StreamingResponseListener listener = new StreamingResponseListener();
+        newClientRequest(soapRequest).send(listener);
+        return listener;
+    }
+
+    /**
+     * Keeps the start of a stream while it is read, e.g. to be logged
+     */
+    private static final class HeadInputStream extends FilterInputStream {
+
+        private final byte[] head;
+        private long count;
+
+        private HeadInputStream(InputStream in, int headLength) {
+            super(in);
+            this.head = new byte[headLength];
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                if (count < head.length) {
+                    head[(int) count] = (byte) b;
+                }
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                if (count < head.length) {
+                    System.arraycopy(b, off, head, (int) count, (int) Math.min(n, head.length - count));
+                }
+                count += n;
+            }
+            return n;
+        }
+
+        private int headLength() {
+            return (int) Math.min(count, head.length);
+        }
+    }
+
+    /**
+     * The JSON of a coalesced call's leader, kept in memory up to a limit to be shared before it is written to the
+     * leader's client. Past the limit the call is abandoned, and the JSON is streamed to the client.
+     */
+    private static final class SharedResponseBuffer extends OutputStream {
+
+        private final RequestCoalescer.Call call;
+        private final int limit;
+        private final HttpServletResponse servletResponse;
+        private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        private OutputStream out;
+
+        private SharedResponseBuffer(RequestCoalescer.Call call, int limit, HttpServletResponse servletResponse) {
+            this.call = call;
+            this.limit = limit;
+            this.servletResponse = servletResponse;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte @NotNull [] b, int off, int len) throws IOException {
+            if (out == null && buffer.size() + len > limit) {
+                call.abandon();
+                out = servletResponse.getOutputStream();
+                buffer.writeTo(out);
+                buffer = null;
+            }
+            if (out != null) {
+                out.write(b, off, len);
+            } else {
+                buffer.write(b, off, len);
+            }
+        }
+
+        /**
+         * @return the whole JSON, or empty if it exceeded the limit
+         */
+        private Optional<byte[]> getBytes() {
+            return buffer == null ? Optional.empty() : Optional.of(buffer.toByteArray());
+        }
+
+        /**
+         * Share the JSON with the requests collapsed into the call, then write it to the leader's client
+         */
+        private void share(int status) throws IOException {
+            if (buffer != null) {
+                byte[] json = buffer.toByteArray();
+                call.complete(new RequestCoalescer.Result(status, json));
+                servletResponse.setContentLength(json.length);
+                servletResponse.getOutputStream().write(json);
+            }
+        }
+    }
+
+    private static final class StreamingResponseListener extends InputStreamResponseListener {
+
+        private final CompletableFuture<Response> headers = new CompletableFuture<>();
+
+        @Override
+        public void onHeaders(Response response) {
+            super.onHeaders(response);
+            headers.complete(response);
+        }
+
+        @Override
+        public void onComplete(Result result) {
+            super.onComplete(result);
+            if (result.isFailed()) {
+                headers.completeExceptionally(result.getFailure());
+            }
+        }
+    }
+
+    /**
+     * SOAP 1.1 requests carry the action in the SOAPAction header, SOAP 1.2 requests in the action parameter of the
+     * Content-Type. Destinations configured for HTTP/2 are called over h2c.
+     */
+    private HttpRequest newClientRequest(SoapRequest soapRequest) {
+        SoapRestServiceDefinition serviceDef = soapRequest.serviceDef();
+        HttpRequest clientRequest = (HttpRequest) client.newRequest(serviceDef.getTargetUrl());
+        clientRequest.method(HttpMethod.POST);
+        clientRequest.version(http2Destinations.isEmpty()
+            || !http2Destinations.contains(BackendPools.destinationOf(serviceDef.getTargetUrl()))
+            ? HttpVersion.HTTP_1_1 : HttpVersion.HTTP_2);
+        String contentType = serviceDef.getSoapVersion().getContentType() + ";charset=UTF-8";
+        if (serviceDef.getSoapVersion() == SoapVersion.SOAP_11) {
+            clientRequest.addHeader(new HttpField("SOAPAction", "\"" + serviceDef.getSoapAction() + "\""));
+        } else if (!serviceDef.getSoapAction().isEmpty()) {
+            contentType += ";action=\"" + serviceDef.getSoapAction() + "\"";
+        }
+        clientRequest.body(new BytesRequestContent(contentType, soapRequest.body()));
+        clientRequest.timeout(requestTimeoutMs, TimeUnit.MILLISECONDS);
+        return clientRequest;
+    }
+
+    /**
+     * Write an error response. If a part of the response was already sent, the connection is aborted instead, so that
+     * the client does not take a truncated response for a complete one.
+     */
+    private static void writeError(HttpServletRequest servletRequest, HttpServletResponse servletResponse, Throwable e)
+            throws IOException {
+        logger.warn("Error processing REST request", e);
+        if (servletResponse.isCommitted()) {
+            Request.getBaseRequest(servletRequest).getHttpChannel().abort(e);
+            return;
+        }
+        servletResponse.resetBuffer();
+        // Error details sent for testing purposes
+        // In a production environment internal error details should be suppressed
+        writeError(servletResponse, HttpStatus.INTERNAL_SERVER_ERROR_500, "InternalError", e.toString());
+    }
+
+    private static void writeError(HttpServletResponse servletResponse, int status, String errorCode,
+                                   String errorDescription) throws IOException {
+        JsonObject error = new JsonObject();
+        error.addProperty("errorCode", errorCode);
+        error.addProperty("errorDescription", errorDescription);
+        servletResponse.setStatus(status);
+        servletResponse.getOutputStream().write(GSONPretty.toJson(error).getBytes(StandardCharsets.UTF_8));
     }
 
 }
@@ -0,0 +1,290 @@
+package com.mcsuka.xml.proxy;
+
+import com.mcsuka.xml.http.RequestCoalescer;
+import com.mcsuka.xml.http.ResponseCache;
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Latency metrics of the proxy, in the Prometheus text format. Each REST request is timed by phase, and recorded in
+ * histograms labelled by the SOAP operation, the REST status and the phase. The histograms have fixed, log-linear
+ * buckets from 100 µs to 60 s, counted by LongAdders, so that recording never blocks. Gauges of the thread pools, the
+ * backend connection pools, the response caches and the coalescers are read when the metrics are written.
+ */
+public final class ProxyMetrics {
+
+    /**
+     * Phases of a REST request
+     */
+    public enum Phase {
+        /**
+         * reading the REST request
+         */
+        READ,
+        /**
+         * translating the JSON request to the SOAP envelope
+         */
+        TRANSLATE_REQUEST,
+        /**
+         * waiting for the headers of the SOAP response, or for the response of a coalesced call
+         */
+        BACKEND,
+        /**
+         * receiving the SOAP response, translating it and writing the JSON response
+         */
+        TRANSLATE_RESPONSE,
+        /**
+         * the whole request
+         */
+        TOTAL;
+
+        private final String label = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final double[] BUCKETS_SECONDS = {0.0001, 0.00025, 0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+        0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+    private static final long[] BUCKETS_NANOS = Arrays.stream(BUCKETS_SECONDS).mapToLong(s -> (long) (s * 1e9)).toArray();
+
+    private record HistogramKey(String operation, int status, Phase phase) {
+    }
+
+    private static final class Histogram {
+        private final LongAdder[] counts = new LongAdder[BUCKETS_NANOS.length + 1];
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram() {
+            Arrays.setAll(counts, i -> new LongAdder());
+        }
+
+        private void record(long nanos) {
+            int i = Arrays.binarySearch(BUCKETS_NANOS, nanos);
+            counts[i >= 0 ? i : -i - 1].increment();
+            sumNanos.add(nanos);
+        }
+    }
+
+    private record Pool(String name, IntSupplier active, IntSupplier max, IntSupplier queued) {
+    }
+
+    private final Map<HistogramKey, Histogram> histograms = new ConcurrentHashMap<>();
+    private final List<Pool> pools = new CopyOnWriteArrayList<>();
+
+    /**
+     * Time of a REST request, by phase. A phase lasts from the end of the previous phase, or from the start of the
+     * request, so the waits between the phases are included in the following phase. Phases may be skipped, e.g. a
+     * cached response has no backend phase.
+     */
+    public final class RequestTimer {
+
+        private final long start = System.nanoTime();
+        private final long[] nanos = new long[Phase.values().length];
+        private long last = start;
+        private String operation = "unknown";
+
+        private RequestTimer() {
+            Arrays.fill(nanos, -1);
+        }
+
+        /**
+         * End a phase
+         */
+        public void mark(Phase phase) {
+            long now = System.nanoTime();
+            nanos[phase.ordinal()] = Math.max(0, nanos[phase.ordinal()]) + now - last;
+            last = now;
+        }
+
+        /**
+         * @param operation the SOAP operation of the request, once it is routed
+         */
+        public void setOperation(String operation) {
+            this.operation = operation;
+        }
+
+        /**
+         * Record the phases of the request
+         *
+         * @param status the REST status of the response
+         */
+        public void complete(int status) {
+            nanos[Phase.TOTAL.ordinal()] = System.nanoTime() - start;
+            for (Phase phase : Phase.values()) {
+                if (nanos[phase.ordinal()] >= 0) {
+                    record(operation, status, phase, nanos[phase.ordinal()]);
+                }
+            }
+        }
+    }
+
+    public RequestTimer startRequest() {
+        return new RequestTimer();
+    }
+
+    void record(String operation, int status, Phase phase, long nanos) {
+        histograms.computeIfAbsent(new HistogramKey(operation, status, phase), k -> new Histogram()).record(nanos);
+    }
+
+    /**
+     * Add the saturation gauges of a thread pool
+     *
+     * @param active number of threads running tasks
+     * @param max maximum number of threads, or of concurrent tasks
+     * @param queued number of tasks waiting for a thread
+     */
+    public void addPool(String name, IntSupplier active, IntSupplier max, IntSupplier queued) {
+        pools.add(new Pool(name, active, max, queued));
+    }
+
+    /**
+     * Write the metrics in the Prometheus text format, version 0.0.4
+     *
+     * @param services the services exposed by the proxy, for the cache and coalescer metrics
+     * @param backendPools the connection pools of the HTTP client
+     */
+    public void write(Writer out, List<SoapRestServiceDefinition> services, List<BackendPools.PoolStats> backendPools)
+            throws IOException {
+        writePhases(out);
+
+        header(out, "rest2soap_pool_active_threads", "gauge", "Threads of the pool running tasks");
+        for (Pool pool : pools) {
+            sample(out, "rest2soap_pool_active_threads", labels("pool", pool.name()), pool.active().getAsInt());
+        }
+        header(out, "rest2soap_pool_max_threads", "gauge", "Maximum threads, or concurrent tasks, of the pool");
+        for (Pool pool : pools) {
+            sample(out, "rest2soap_pool_max_threads", labels("pool", pool.name()), pool.max().getAsInt());
+        }
+        header(out, "rest2soap_pool_queued_tasks", "gauge", "Tasks waiting for a thread of the pool");
+        for (Pool pool : pools) {
+            sample(out, "rest2soap_pool_queued_tasks", labels("pool", pool.name()), pool.queued().getAsInt());
+        }
+
+        header(out, "rest2soap_backend_connections", "gauge", "Connections to the SOAP backend, by state");
+        for (BackendPools.PoolStats pool : backendPools) {
+            String destination = pool.destination();
+            sample(out, "rest2soap_backend_connections", labels("destination", destination, "state", "active"),
+                pool.activeConnections());
+            sample(out, "rest2soap_backend_connections", labels("destination", destination, "state", "idle"),
+                pool.idleConnections());
+            sample(out, "rest2soap_backend_connections", labels("destination", destination, "state", "pending"),
+                pool.pendingConnections());
+        }
+        header(out, "rest2soap_backend_max_connections", "gauge", "Maximum connections to the SOAP backend");
+        for (BackendPools.PoolStats pool : backendPools) {
+            sample(out, "rest2soap_backend_max_connections", labels("destination", pool.destination()),
+                pool.maxConnections());
+        }
+        header(out, "rest2soap_backend_queued_requests", "gauge", "Requests waiting for a backend connection");
+        for (BackendPools.PoolStats pool : backendPools) {
+            sample(out, "rest2soap_backend_queued_requests", labels("destination", pool.destination()),
+                pool.queuedRequests());
+        }
+
+        writeServices(out, services);
+    }
+
+    private void writePhases(Writer out) throws IOException {
+        header(out, "rest2soap_phase_seconds", "histogram", "Time spent in each phase of the REST requests");
+        List<Map.Entry<HistogramKey, Histogram>> entries = new ArrayList<>(histograms.entrySet());
+        entries.sort(Comparator.comparing((Map.Entry<HistogramKey, Histogram> e) -> e.getKey().operation())
+            .thenComparing(e -> e.getKey().status())
+            .thenComparing(e -> e.getKey().phase()));
+        for (Map.Entry<HistogramKey, Histogram> entry : entries) {
+            HistogramKey key = entry.getKey();
+            Histogram histogram = entry.getValue();
+            String labels = "operation=\"" + escape(key.operation()) + "\",status=\"" + key.status() + "\",phase=\""
+                + key.phase().label + "\"";
+            long cumulative = 0;
+            for (int i = 0; i < histogram.counts.length; i++) {
+                cumulative += histogram.counts[i].sum();
+                String le = i < BUCKETS_SECONDS.length
+                    ? BigDecimal.valueOf(BUCKETS_SECONDS[i]).stripTrailingZeros().toPlainString() : "+Inf";
+                out.write("rest2soap_phase_seconds_bucket{" + labels + ",le=\"" + le + "\"} " + cumulative + "\n");
+            }
+            out.write("rest2soap_phase_seconds_sum{" + labels + "} " + histogram.sumNanos.sum() / 1e9 + "\n");
+            out.write("rest2soap_phase_seconds_count{" + labels + "} " + cumulative + "\n");
+        }
+    }
+
+    private static void writeServices(Writer out, List<SoapRestServiceDefinition> services) throws IOException {
+        List<SoapRestServiceDefinition> cached = services.stream()
+            .filter(s -> s.getResponseCache().isPresent()).toList();
+        header(out, "rest2soap_cache_hits_total", "counter", "Responses served from the response cache");
+        for (SoapRestServiceDefinition service : cached) {
+            sample(out, "rest2soap_cache_hits_total", serviceLabels(service), cacheStats(service).hitCount());
+        }
+        header(out, "rest2soap_cache_misses_total", "counter", "Response cache lookups without a valid entry");
+        for (SoapRestServiceDefinition service : cached) {
+            sample(out, "rest2soap_cache_misses_total", serviceLabels(service), cacheStats(service).missCount());
+        }
+        header(out, "rest2soap_cache_evictions_total", "counter", "Entries evicted from the response cache");
+        for (SoapRestServiceDefinition service : cached) {
+            sample(out, "rest2soap_cache_evictions_total", serviceLabels(service), cacheStats(service).evictionCount());
+        }
+        header(out, "rest2soap_cache_bytes", "gauge", "Weight of the response cache entries");
+        for (SoapRestServiceDefinition service : cached) {
+            sample(out, "rest2soap_cache_bytes", serviceLabels(service), cacheStats(service).weight());
+        }
+
+        List<SoapRestServiceDefinition> coalesced = services.stream()
+            .filter(s -> s.getRequestCoalescer().isPresent()).toList();
+        header(out, "rest2soap_coalesced_calls_total", "counter", "Backend calls made by coalescing services");
+        for (SoapRestServiceDefinition service : coalesced) {
+            sample(out, "rest2soap_coalesced_calls_total", serviceLabels(service),
+                coalescerStats(service).leaderCount());
+        }
+        header(out, "rest2soap_collapsed_requests_total", "counter",
+            "Requests served by the backend call of another request");
+        for (SoapRestServiceDefinition service : coalesced) {
+            sample(out, "rest2soap_collapsed_requests_total", serviceLabels(service),
+                coalescerStats(service).collapsedCount());
+        }
+    }
+
+    private static ResponseCache.CacheStats cacheStats(SoapRestServiceDefinition service) {
+        return service.getResponseCache().map(ResponseCache::getStats).orElseThrow();
+    }
+
+    private static RequestCoalescer.CoalescerStats coalescerStats(SoapRestServiceDefinition service) {
+        return service.getRequestCoalescer().map(RequestCoalescer::getStats).orElseThrow();
+    }
+
+    private static String serviceLabels(SoapRestServiceDefinition service) {
+        return labels("operation", Optional.ofNullable(service.getOperationName()).orElse(""),
+            "path", service.getRestPath());
+    }
+
+    private static String labels(String... namesAndValues) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            sb.append(i == 0 ? "" : ",").append(namesAndValues[i]).append("=\"").append(escape(namesAndValues[i + 1]))
+                .append('"');
+        }
+        return sb.toString();
+    }
+
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n# TYPE " + name + " " + type + "\n");
+    }
+
+    private static void sample(Writer out, String name, String labels, long value) throws IOException {
+        out.write(name + "{" + labels + "} " + value + "\n");
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -1,9 +1,15 @@
 package com.mcsuka.xml.proxy;
 
+import com.mcsuka.xml.http.PayloadLogger;
 import com.mcsuka.xml.http.RequestParameter;
+import com.mcsuka.xml.http.ResponseCache;
+import com.mcsuka.xml.http.SoapEnvelopeWriter;
 import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
 import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
 
+import javax.xml.namespace.QName;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -15,18 +21,41 @@ public record ProxySettings(
     Integer serverKeepAliveTimeMs,
     Integer clientKeepAliveTimeMs,
     Integer connectTimeoutMs,
+    Integer requestTimeoutMs,
+    Integer maxConnectionsPerDestination,
+    Integer maxRequestsQueuedPerDestination,
+    Map<String, BackendPools.DestinationSettings> destinations,
+    String threading,
+    Integer translatorPoolSize,
+    Integer maxConcurrentRequests,
+    Boolean compression,
+    Integer compressionMinSize,
+    Boolean hotReload,
+    Path attachmentDir,
+    Long attachmentTtlMs,
+    Long attachmentMaxBytes,
+    Integer coalesceMaxBytes,
+    PayloadLogger.Settings payloadLog,
+    Integer payloadLogBufferSize,
     List<SoapRestServiceDefinition> services
 ){
+    public static final String THREADING_PLATFORM = "platform";
+    public static final String THREADING_ASYNC = "async";
+    public static final String THREADING_VIRTUAL = "virtual";
+
     static ProxySettings propsToSettings(Properties props) throws Exception {
         List<SoapRestServiceDefinition> services = new ArrayList<>();
+        // the limits must be in place before the service definitions load their schemas
+        SchemaParserFactory.setCacheLimits(
+            Integer.parseInt(props.getProperty("rest2soap.schemaCache.maxEntries", String.valueOf(Integer.MAX_VALUE))),
+            Long.parseLong(props.getProperty("rest2soap.schemaCache.maxWeight", String.valueOf(Long.MAX_VALUE))));
 
-        for(String key: props.stringPropertyNames()) {
-            if (key.matches("^rest2soap.service\\.[A-Za-z0-9_]+\\.restPath$")) {
-                String prefix = key.substring(0, key.indexOf(".restPath"));
-                services.add(propsToServiceDef(props, prefix));
-            }
+        for (String prefix : servicePrefixes(props)) {
+            services.add(propsToServiceDef(props, prefix, snapshotDir(props)));
         }
 
+        int maxConnectionsPerDestination =
+            Math.max(1, Integer.parseInt(props.getProperty("client.maxConnectionsPerDestination", "64")));
         return new ProxySettings(
             props.getProperty("server.host", "0.0.0.0"),
             Integer.parseInt(props.getProperty("server.port", "8080")),
@@ -35,12 +64,90 @@ public record ProxySettings(
             Integer.parseInt(props.getProperty("server.keepAliveTimeMs", "1000")),
             Integer.parseInt(props.getProperty("client.keepAliveTimeMs", "1000")),
             Integer.parseInt(props.getProperty("client.connectTimeoutMs", "5000")),
+            Math.max(1, Integer.parseInt(props.getProperty("client.requestTimeoutMs", "60000"))),
+            maxConnectionsPerDestination,
+            Math.max(1, Integer.parseInt(props.getProperty("client.maxRequestsQueuedPerDestination", "1024"))),
+            destinations(props, maxConnectionsPerDestination),
+            parseThreading(props.getProperty("server.threading", THREADING_PLATFORM)),
+            Math.max(1, Integer.parseInt(props.getProperty("server.translatorPoolSize",
+                String.valueOf(Runtime.getRuntime().availableProcessors())))),
+            Math.max(1, Integer.parseInt(props.getProperty("server.maxConcurrentRequests", "1000"))),
+            Boolean.parseBoolean(props.getProperty("server.compression", "true")),
+            Math.max(0, Integer.parseInt(props.getProperty("server.compression.minSize", "1024"))),
+            Boolean.parseBoolean(props.getProperty("rest2soap.hotReload", "false")),
+            Path.of(props.getProperty("rest2soap.attachments.dir",
+                Path.of(System.getProperty("java.io.tmpdir"), "rest2soap-attachments").toString())),
+            Long.parseLong(props.getProperty("rest2soap.attachments.ttlMs", "300000")),
+            Math.max(0, Long.parseLong(props.getProperty("rest2soap.attachments.maxBytes", "1073741824"))),
+            Math.max(0, Integer.parseInt(props.getProperty("rest2soap.coalesce.maxBytes", "1048576"))),
+            defaultLogSettings(props),
+            Math.max(1, Integer.parseInt(props.getProperty("rest2soap.log.bufferSize", "1024"))),
             services
         );
     }
 
 
-    static SoapRestServiceDefinition propsToServiceDef(Properties props, String prefix) throws Exception {
+    /**
+     * @return property name prefixes of the service definitions, e.g. rest2soap.service.getCustomer, in the order the
+     * services are listed in the settings
+     */
+    static List<String> servicePrefixes(Properties props) {
+        List<String> prefixes = new ArrayList<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.matches("^rest2soap.service\\.[A-Za-z0-9_]+\\.restPath$")) {
+                prefixes.add(key.substring(0, key.indexOf(".restPath")));
+            }
+        }
+        return prefixes;
+    }
+
+    /**
+     * @return the properties a service definition is built from: its own and those of its parameters
+     */
+    static Map<String, String> serviceProps(Properties props, String prefix) {
+        Set<String> paramPrefixes = Arrays.stream(props.getProperty(prefix + ".paramList", "").split("[|]"))
+            .filter(s -> !s.isBlank())
+            .map(param -> "rest.params." + param + ".")
+            .collect(Collectors.toSet());
+        Map<String, String> serviceProps = new HashMap<>();
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith(prefix + ".") || paramPrefixes.stream().anyMatch(key::startsWith)) {
+                serviceProps.put(key, props.getProperty(key));
+            }
+        }
+        return serviceProps;
+    }
+
+    /**
+     * @return the settings of the SOAP backends by destination, e.g. http://localhost:9090. Services may set the
+     * maxConnections and http2 of their destination; if they disagree, the larger pool and h2c win. Destinations without
+     * maxConnections get the default pool size.
+     */
+    static Map<String, BackendPools.DestinationSettings> destinations(Properties props, int defaultMaxConnections) {
+        Map<String, BackendPools.DestinationSettings> destinations = new HashMap<>();
+        for (String prefix : servicePrefixes(props)) {
+            String targetUrl = props.getProperty(prefix + ".targetUrl");
+            if (targetUrl == null) {
+                continue;
+            }
+            // 0: not set by this service
+            BackendPools.DestinationSettings destination = new BackendPools.DestinationSettings(
+                Math.max(0, Integer.parseInt(props.getProperty(prefix + ".maxConnections", "0"))),
+                Boolean.parseBoolean(props.getProperty(prefix + ".http2", "false")));
+            destinations.merge(BackendPools.destinationOf(targetUrl), destination,
+                BackendPools.DestinationSettings::merge);
+        }
+        destinations.replaceAll((destination, settings) -> settings.maxConnections() > 0 ? settings
+            : new BackendPools.DestinationSettings(defaultMaxConnections, settings.http2()));
+        return Map.copyOf(destinations);
+    }
+
+    static Path snapshotDir(Properties props) {
+        String snapshotDir = props.getProperty("rest2soap.snapshotDir");
+        return snapshotDir == null ? null : Path.of(snapshotDir);
+    }
+
+    static SoapRestServiceDefinition propsToServiceDef(Properties props, String prefix, Path snapshotDir) throws Exception {
 
         String[] params = props.getProperty(prefix + ".paramList").split("[|]");
         List<RequestParameter> requestParams = Arrays.stream(params)
@@ -64,7 +171,62 @@ public record ProxySettings(
             requestParams,
             new WsdlDocumentSource(props.getProperty(prefix + ".wsdlUrl")),
             props.getProperty(prefix + ".operationName"),
-            props.getProperty(prefix + ".description"));
+            props.getProperty(prefix + ".description"),
+            SoapRestServiceDefinition.Options.DEFAULT
+                .withSnapshotDir(snapshotDir)
+                .withHeaderSettings(new SoapEnvelopeWriter.HeaderSettings(
+                    Boolean.parseBoolean(props.getProperty(prefix + ".wsAddressing", "false")),
+                    props.getProperty(prefix + ".trackingHeader"),
+                    Optional.ofNullable(props.getProperty(prefix + ".trackingElement")).map(QName::valueOf)
+                        .orElse(null)))
+                .withCacheSettings(cacheSettings(props, prefix))
+                .withCoalesce(Boolean.parseBoolean(props.getProperty(prefix + ".coalesce", "false")))
+                .withLogSettings(logSettings(props, prefix)));
+    }
+
+    static PayloadLogger.Settings defaultLogSettings(Properties props) {
+        return new PayloadLogger.Settings(
+            Double.parseDouble(props.getProperty("rest2soap.log.sampleRate", "1")),
+            Integer.parseInt(props.getProperty("rest2soap.log.maxBodyBytes", "2048")));
+    }
+
+    /**
+     * @return the payload log settings of a service, or null if neither log.sampleRate nor log.maxBodyBytes is set.
+     * An unset value is taken from the defaults.
+     */
+    static PayloadLogger.Settings logSettings(Properties props, String prefix) {
+        String sampleRate = props.getProperty(prefix + ".log.sampleRate");
+        String maxBodyBytes = props.getProperty(prefix + ".log.maxBodyBytes");
+        if (sampleRate == null && maxBodyBytes == null) {
+            return null;
+        }
+        PayloadLogger.Settings defaults = defaultLogSettings(props);
+        return new PayloadLogger.Settings(
+            sampleRate == null ? defaults.sampleRate() : Double.parseDouble(sampleRate),
+            maxBodyBytes == null ? defaults.maxBodyBytes() : Integer.parseInt(maxBodyBytes));
+    }
+
+    /**
+     * @return the response cache settings of a service, or null if cache.ttlMs is not set
+     */
+    static ResponseCache.Settings cacheSettings(Properties props, String prefix) {
+        String ttlMs = props.getProperty(prefix + ".cache.ttlMs");
+        if (ttlMs == null) {
+            return null;
+        }
+        return new ResponseCache.Settings(
+            Long.parseLong(ttlMs),
+            Integer.parseInt(props.getProperty(prefix + ".cache.maxEntries", "10000")),
+            Long.parseLong(props.getProperty(prefix + ".cache.maxWeight", "10000000")));
+    }
+
+    static String parseThreading(String propValue) {
+        String regex = "^(" + THREADING_PLATFORM + "|" + THREADING_ASYNC + "|" + THREADING_VIRTUAL + ")$";
+        if (!propValue.matches(regex)) {
+            throw new IllegalArgumentException("server.threading value " + propValue + " is invalid, it must match '"
+                + regex + "'");
+        }
+        return propValue;
     }
 
     static Map<String,String> parseOasTypeDef(String propValue) {
@@ -1,14 +1,20 @@
 package com.mcsuka.xml.proxy;
 
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
 import org.eclipse.jetty.client.HttpClient;
 import org.eclipse.jetty.server.*;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.thread.ExecutorThreadPool;
 import org.eclipse.jetty.webapp.WebAppContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.FileReader;
+import java.nio.file.Path;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -19,9 +25,14 @@ public class RestToSoapProxyApp extends Thread {
     private static final Logger logger = LoggerFactory.getLogger(RestToSoapProxyApp.class);
     private static final Semaphore waitTillShutdown = new Semaphore(1);
 
+    private final Properties props;
+    private final Path propsFile;
     private final ProxySettings settings;
+    private final ProxyMetrics metrics = new ProxyMetrics();
+    private ServiceReloader serviceReloader;
     private ClientHandler clientHandler;
     private HttpClient httpClient;
+    private ThreadPoolExecutor translatorPool;
     private Server server;
     private WebAppContext swaggerUI;
 
@@ -35,7 +46,7 @@ public class RestToSoapProxyApp extends Thread {
             Properties props = new Properties();
             props.load(new FileReader(args[0]));
 
-            RestToSoapProxyApp app = new RestToSoapProxyApp(props);
+            RestToSoapProxyApp app = new RestToSoapProxyApp(props, Path.of(args[0]));
             app.initialize();
             app.addShutdownHook();
             app.start();
@@ -47,6 +58,15 @@ public class RestToSoapProxyApp extends Thread {
     }
 
     public RestToSoapProxyApp(Properties props) throws Exception {
+        this(props, null);
+    }
+
+    /**
+     * @param propsFile the file props were loaded from. Watched for changes if rest2soap.hotReload is set.
+     */
+    public RestToSoapProxyApp(Properties props, Path propsFile) throws Exception {
+        this.props = props;
+        this.propsFile = propsFile;
         settings = ProxySettings.propsToSettings(props);
     }
 
@@ -69,6 +89,9 @@ public class RestToSoapProxyApp extends Thread {
             clientHandler.start();
             swaggerUI.start();
             server.start();
+            if (serviceReloader != null) {
+                serviceReloader.start();
+            }
 
         } catch (Exception e) {
             logger.error("Unexcepted exception at startup", e);
@@ -91,54 +114,127 @@ public class RestToSoapProxyApp extends Thread {
     }
 
     void initialize() throws Exception {
+        settings.services().forEach(SoapRestServiceDefinition::warmUp);
+        logger.info("Schema cache: " + SchemaParserFactory.getCacheStats());
         swaggerUI = createWebApp();
-        httpClient = createHttpClient(settings);
-        clientHandler = new ClientHandler(settings, httpClient, swaggerUI);
-        server = createServer(settings, clientHandler);
+        httpClient = createHttpClient(settings, metrics);
+        Executor executor = null;
+        if (ProxySettings.THREADING_ASYNC.equals(settings.threading())) {
+            translatorPool = createTranslatorPool(settings);
+            addPool(metrics, "translator-threads", translatorPool);
+            executor = translatorPool;
+        } else if (ProxySettings.THREADING_VIRTUAL.equals(settings.threading())) {
+            executor = createVirtualExecutor(settings, "request", metrics);
+        }
+        clientHandler = new ClientHandler(settings, httpClient, swaggerUI, executor, metrics);
+        server = createServer(settings, clientHandler, metrics);
         swaggerUI.setServer(server);
+        if (settings.hotReload() && propsFile != null) {
+            serviceReloader = new ServiceReloader(propsFile, props, settings.services(), clientHandler::setServices);
+        }
     }
 
     void terminate() throws Exception {
         logger.info("ProxyApp is stopping");
+        if (serviceReloader != null) {
+            serviceReloader.close();
+        }
 
+        logger.info("Backend connection pools: " + BackendPools.getStats(httpClient));
         httpClient.stop();
         clientHandler.stop();
         server.stop();
+        if (translatorPool != null) {
+            translatorPool.shutdown();
+        }
 
         waitTillShutdown.release();
     }
 
-    private static HttpClient createHttpClient(ProxySettings settings) {
-        HttpClient client = new HttpClient();
-        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
-            2,
-            settings.maxServerPoolSize(),
-            settings.clientKeepAliveTimeMs(),
-            TimeUnit.MILLISECONDS,
-            new SynchronousQueue<>(),
-            new SimpleThreadFactory("client-threads", Thread.NORM_PRIORITY, true));
-        threadPoolExecutor.prestartAllCoreThreads();
-        client.setExecutor(new ExecutorThreadPool(threadPoolExecutor));
+    private static HttpClient createHttpClient(ProxySettings settings, ProxyMetrics metrics) {
+        HttpClient client = new HttpClient(BackendPools.newTransport(settings));
+        ExecutorThreadPool clientThreadPool = createPlatformPool(settings, "client-threads",
+            settings.maxClientPoolSize(), settings.clientKeepAliveTimeMs(), metrics);
+        if (ProxySettings.THREADING_VIRTUAL.equals(settings.threading())) {
+            // response callbacks run on virtual threads, the platform threads only run the selectors.
+            // Without reserved threads, Jetty does not run blocking tasks on the selector's platform thread.
+            clientThreadPool.setReservedThreads(0);
+            clientThreadPool.setVirtualThreadsExecutor(createVirtualExecutor(settings, "client", metrics));
+        }
+        client.setExecutor(clientThreadPool);
         client.setIdleTimeout(settings.clientKeepAliveTimeMs());
         client.setConnectTimeout(settings.connectTimeoutMs());
+        client.setMaxConnectionsPerDestination(settings.maxConnectionsPerDestination());
+        client.setMaxRequestsQueuedPerDestination(settings.maxRequestsQueuedPerDestination());
 
         return client;
     }
 
-    private static Server createServer(ProxySettings settings, Handler handler) {
+    /**
+     * Platform thread pool of the server or the client. In platform threading mode the threads block until the SOAP
+     * service responds, the pool grows on demand up to its maximum size. In the async and virtual modes the platform
+     * threads do not block, bursts of short tasks are queued instead of rejected.
+     */
+    private static ExecutorThreadPool createPlatformPool(ProxySettings settings, String name, int maxPoolSize,
+                                                         int keepAliveTimeMs, ProxyMetrics metrics) {
+        ThreadPoolExecutor threadPoolExecutor;
+        if (ProxySettings.THREADING_PLATFORM.equals(settings.threading())) {
+            threadPoolExecutor = new ThreadPoolExecutor(
+                2,
+                maxPoolSize,
+                keepAliveTimeMs,
+                TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(),
+                new SimpleThreadFactory(name, Thread.NORM_PRIORITY, true));
+        } else {
+            threadPoolExecutor = new ThreadPoolExecutor(
+                maxPoolSize,
+                maxPoolSize,
+                keepAliveTimeMs,
+                TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new SimpleThreadFactory(name, Thread.NORM_PRIORITY, true));
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+        }
+        threadPoolExecutor.prestartAllCoreThreads();
+        addPool(metrics, name, threadPoolExecutor);
+        return new ExecutorThreadPool(threadPoolExecutor);
+    }
+
+    private static void addPool(ProxyMetrics metrics, String name, ThreadPoolExecutor pool) {
+        metrics.addPool(name, pool::getActiveCount, pool::getMaximumPoolSize, () -> pool.getQueue().size());
+    }
+
+    private static VirtualThreadExecutor createVirtualExecutor(ProxySettings settings, String name,
+                                                               ProxyMetrics metrics) {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor(name, settings.maxConcurrentRequests());
+        metrics.addPool(name + "-virtual", executor::getRunningCount, executor::getMaxConcurrency,
+            executor::getWaitingCount);
+        return executor;
+    }
 
+    /**
+     * CPU-bound pool of the REST request translations in async mode. Its size does not limit the number of requests in
+     * flight: they wait for the SOAP responses without holding a thread, and the responses, which block on the backend
+     * and the client while they stream through, are translated on virtual threads of the ClientHandler.
+     */
+    private static ThreadPoolExecutor createTranslatorPool(ProxySettings settings) {
         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
-            2,
-            settings.maxServerPoolSize(),
+            settings.translatorPoolSize(),
+            settings.translatorPoolSize(),
             settings.serverKeepAliveTimeMs(),
             TimeUnit.MILLISECONDS,
-            new SynchronousQueue<>(),
-            new SimpleThreadFactory("server-threads", Thread.NORM_PRIORITY, true));
-
+            new LinkedBlockingQueue<>(),
+            new SimpleThreadFactory("translator-threads", Thread.NORM_PRIORITY, true));
         threadPoolExecutor.prestartAllCoreThreads();
-        ExecutorThreadPool serverThreadPool = new ExecutorThreadPool(threadPoolExecutor);
+        return threadPoolExecutor;
+    }
+
+    private static Server createServer(ProxySettings settings, Handler handler, ProxyMetrics metrics) {
+        ExecutorThreadPool serverThreadPool = createPlatformPool(settings, "server-threads",
+            settings.maxServerPoolSize(), settings.serverKeepAliveTimeMs(), metrics);
         Server server = new Server(serverThreadPool);
-        server.setHandler(handler);
+        server.setHandler(settings.compression() ? createGzipHandler(settings, handler) : handler);
 
         ConnectionFactory[] factories = new ConnectionFactory[]{
             new ProxyConnectionFactory(),
@@ -153,10 +249,23 @@ public class RestToSoapProxyApp extends Thread {
         return server;
     }
 
+    /**
+     * Gzip the responses of all methods, if the client accepts it and they are not smaller than
+     * server.compression.minSize. Responses already encoded, e.g. the precompressed StaticContent, are left alone.
+     */
+    private static GzipHandler createGzipHandler(ProxySettings settings, Handler handler) {
+        GzipHandler gzipHandler = new GzipHandler();
+        gzipHandler.setMinGzipSize(settings.compressionMinSize());
+        gzipHandler.setIncludedMethods("GET", "POST", "PUT", "PATCH", "DELETE");
+        gzipHandler.setHandler(handler);
+        return gzipHandler;
+    }
+
     private WebAppContext createWebApp() {
         WebAppContext context = new WebAppContext();
         context.setContextPath("/swagger");
         context.setResourceBase(ClassLoader.getSystemResource("swagger").toExternalForm());
+        context.setInitParameter("org.eclipse.jetty.servlet.Default.etags", "true");
 //        context.setInitParameter("org.eclipse.jetty.servlet.Default.dirAllowed", "false");
         return context;
     }
@@ -0,0 +1,243 @@
+package com.mcsuka.xml.proxy;
+
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Watches the properties file and the WSDL files of the services, and rebuilds the service definitions affected by a
+ * change in the background: the ones whose properties or WSDL file changed, and the ones added to the properties file.
+ * The complete list of service definitions is then passed to the listener, which swaps it in at once.
+ * <br/>
+ * The schemas of the WSDL inline their XSDs, so watching the WSDL files covers the XSDs too. WSDLs loaded over HTTP
+ * are not watched. If a service definition can not be rebuilt, e.g. because its WSDL is invalid, the previous one is
+ * kept, and it is rebuilt again at the next change. Settings other than the services (ports, pools, threading) are
+ * not reloaded.
+ * <br/>
+ * A file replaced through a symbolic link in its directory, e.g. the ..data link of a Kubernetes ConfigMap, is
+ * detected by comparing the real paths of the watched files when another entry of their directory changes. Links
+ * swapped in a directory that is not watched are not detected.
+ */
+public final class ServiceReloader extends Thread {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServiceReloader.class);
+
+    // editors and deployment tools often write a file in several steps, wait for them to finish
+    private static final long SETTLE_TIME_MS = 200;
+
+    private record LoadedService(String prefix, Map<String, String> props, SoapRestServiceDefinition serviceDef) {
+    }
+
+    private final Path propsFile;
+    private final Consumer<List<SoapRestServiceDefinition>> listener;
+    private final WatchService watchService;
+    private final Set<Path> watchedDirs = new HashSet<>();
+    private final Map<Path, Path> realPaths = new HashMap<>();
+    private Properties props;
+    private List<LoadedService> services = new ArrayList<>();
+
+    /**
+     * @param serviceDefs the service definitions built from props, in the order of ProxySettings.servicePrefixes()
+     * @param listener receives the complete list of service definitions after a reload
+     */
+    public ServiceReloader(Path propsFile, Properties props, List<SoapRestServiceDefinition> serviceDefs,
+                           Consumer<List<SoapRestServiceDefinition>> listener) throws IOException {
+        super("service-reloader");
+        setDaemon(true);
+        this.propsFile = propsFile.toAbsolutePath().normalize();
+        this.props = props;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+
+        List<String> prefixes = ProxySettings.servicePrefixes(props);
+        for (int i = 0; i < prefixes.size(); i++) {
+            services.add(new LoadedService(prefixes.get(i), ProxySettings.serviceProps(props, prefixes.get(i)),
+                serviceDefs.get(i)));
+        }
+        watchFiles();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!isInterrupted()) {
+                WatchKey key = watchService.take();
+                Thread.sleep(SETTLE_TIME_MS);
+                Set<Path> changed = new HashSet<>();
+                while (key != null) {
+                    collectChanges(key, changed);
+                    key = watchService.poll();
+                }
+                if (!changed.isEmpty()) {
+                    reload(changed);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("Service reloader stopped");
+        }
+    }
+
+    public void close() throws IOException {
+        interrupt();
+        watchService.close();
+    }
+
+    private void collectChanges(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                changed.add(propsFile);
+                services.forEach(service -> getWsdlFile(service).ifPresent(changed::add));
+            } else {
+                Path file = dir.resolve((Path) event.context()).toAbsolutePath().normalize();
+                if (file.equals(propsFile) || services.stream().anyMatch(s -> isWsdlFile(s, file))) {
+                    changed.add(file);
+                } else {
+                    addRelinkedFiles(dir, changed);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    // a link in the directory was swapped, the file itself is not modified
+    private void addRelinkedFiles(Path dir, Set<Path> changed) {
+        for (Path file : watchedFiles()) {
+            if (file.getParent().equals(dir)) {
+                Path realPath = realPath(file);
+                if (!realPath.equals(realPaths.put(file, realPath))) {
+                    changed.add(file);
+                }
+            }
+        }
+    }
+
+    private Set<Path> watchedFiles() {
+        Set<Path> files = new HashSet<>();
+        files.add(propsFile);
+        services.forEach(service -> getWsdlFile(service).ifPresent(files::add));
+        return files;
+    }
+
+    private static Path realPath(Path file) {
+        try {
+            return file.toRealPath();
+        } catch (IOException e) {
+            return file;
+        }
+    }
+
+    private static Optional<Path> getWsdlFile(LoadedService service) {
+        return service.serviceDef().getWsdlSource().getFile();
+    }
+
+    private static boolean isWsdlFile(LoadedService service, Path file) {
+        return getWsdlFile(service).map(file::equals).orElse(false);
+    }
+
+    private static boolean isWsdlChanged(LoadedService service, Set<Path> changed) {
+        return getWsdlFile(service).map(changed::contains).orElse(false);
+    }
+
+    /**
+     * Rebuild the service definitions affected by the changed files, and pass the new list to the listener
+     */
+    void reload(Set<Path> changed) {
+        Properties newProps = props;
+        if (changed.contains(propsFile)) {
+            newProps = new Properties();
+            try (FileReader reader = new FileReader(propsFile.toFile())) {
+                newProps.load(reader);
+            } catch (IOException e) {
+                logger.error("Unable to read " + propsFile + ", services are not reloaded", e);
+                return;
+            }
+        }
+
+        Map<String, LoadedService> current = new HashMap<>();
+        services.forEach(service -> current.put(service.prefix(), service));
+        List<String> prefixes = ProxySettings.servicePrefixes(newProps);
+        List<LoadedService> reloaded = new ArrayList<>();
+        List<String> rebuilt = new ArrayList<>();
+        for (String prefix : prefixes) {
+            LoadedService old = current.get(prefix);
+            Map<String, String> serviceProps = ProxySettings.serviceProps(newProps, prefix);
+            if (old != null && old.props().equals(serviceProps) && !isWsdlChanged(old, changed)) {
+                reloaded.add(old);
+                continue;
+            }
+            if (old != null) {
+                invalidateSchemas(old);
+            }
+            try {
+                SoapRestServiceDefinition serviceDef = ProxySettings.propsToServiceDef(newProps, prefix,
+                    ProxySettings.snapshotDir(newProps));
+                serviceDef.warmUp();
+                reloaded.add(new LoadedService(prefix, serviceProps, serviceDef));
+                rebuilt.add(prefix);
+            } catch (Exception e) {
+                logger.error("Unable to reload service " + prefix + ", the previous definition is kept", e);
+                if (old != null) {
+                    reloaded.add(old);
+                }
+            }
+        }
+
+        props = newProps;
+        if (reloaded.equals(services)) {
+            return;
+        }
+        services = reloaded;
+        listener.accept(reloaded.stream().map(LoadedService::serviceDef).toList());
+        logger.info("Reloaded services " + rebuilt + ", " + reloaded.size() + " services are active");
+        watchFiles();
+    }
+
+    // the schemas are cached by name space, they must be parsed again from the new WSDL
+    private static void invalidateSchemas(LoadedService service) {
+        try {
+            service.serviceDef().getWsdlSource().getSchemaNamespaces().forEach(SchemaParserFactory::invalidate);
+        } catch (Exception e) {
+            logger.debug("Unable to read the schemas of the previous WSDL of " + service.prefix(), e);
+        }
+    }
+
+    private void watchFiles() {
+        Set<Path> dirs = new HashSet<>();
+        for (Path file : watchedFiles()) {
+            dirs.add(file.getParent());
+            realPaths.put(file, realPath(file));
+        }
+        for (Path dir : dirs) {
+            if (watchedDirs.add(dir)) {
+                try {
+                    dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                } catch (IOException e) {
+                    watchedDirs.remove(dir);
+                    logger.warn("Unable to watch directory " + dir, e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.mcsuka.xml.proxy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs each task on a new virtual thread. The number of tasks running at the same time is limited by a semaphore:
+ * tasks over the limit are started, but their virtual threads wait for a permit, without holding a platform thread.
+ */
+public class VirtualThreadExecutor implements Executor {
+
+    private final ThreadFactory threadFactory;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+
+    public VirtualThreadExecutor(String name, int maxConcurrency) {
+        this.threadFactory = Thread.ofVirtual().name(name + "-virtual-", 1).factory();
+        this.permits = new Semaphore(maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return the number of tasks holding a permit
+     */
+    public int getRunningCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * @return the estimated number of tasks waiting for a permit
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void execute(@NotNull Runnable task) {
+        threadFactory.newThread(() -> {
+            permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                permits.release();
+            }
+        }).start();
+    }
+}
@@ -0,0 +1,160 @@
+package com.mcsuka.xml.xsd.model;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import javax.xml.xpath.XPathExpressionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import com.mcsuka.xml.xsd.tools.DocumentSource;
+import com.mcsuka.xml.xsd.tools.DocumentSourceException;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+
+/**
+ * Loads an XSD together with all the XSDs it imports or includes, directly or indirectly. The import / include graph
+ * is discovered up front: each document is fetched and parsed on a fork-join pool, and the documents it refers to are
+ * forked as soon as it is parsed. Then a SchemaParser is created for each imported XSD in parallel, and registered in
+ * the SchemaParserFactory.
+ * <br/>
+ * Loading the referenced documents is best effort. If one of them fails, the SchemaParser needing it will load it
+ * again, and report the error as before.
+ */
+final class SchemaLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaLoader.class);
+    private static final String XSD_NS = "http://www.w3.org/2001/XMLSchema";
+
+    private static final ForkJoinPool pool = new ForkJoinPool(Math.max(4, Runtime.getRuntime().availableProcessors()));
+
+    private final DocumentSource docSource;
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+    private final Set<String> seen = ConcurrentHashMap.newKeySet();
+    private final Set<String> importLocations = ConcurrentHashMap.newKeySet();
+
+    private SchemaLoader(DocumentSource docSource) {
+        this.docSource = docSource;
+    }
+
+    /**
+     * Create the SchemaParser of an XSD, and register the SchemaParsers of the imported XSDs in the factory
+     *
+     * @param url normalized location of the XSD
+     */
+    static SchemaParser load(String url, DocumentSource docSource) throws DocumentSourceException,
+            XPathExpressionException {
+        SchemaLoader loader = new SchemaLoader(docSource);
+        loader.seen.add(url);
+        pool.invoke(loader.new LoadTask(url));
+        DocumentSource preloaded = loader.new PreloadedDocumentSource();
+
+        List<ForkJoinTask<?>> imports = new ArrayList<>();
+        for (String importLocation : loader.importLocations) {
+            if (!importLocation.equals(url) && !SchemaParserFactory.isCached(importLocation)) {
+                imports.add(pool.submit(() -> {
+                    try {
+                        SchemaParserFactory.register(importLocation, new SchemaParser(importLocation, preloaded));
+                    } catch (Exception e) {
+                        logger.debug("Unable to preload XSD " + importLocation, e);
+                    }
+                }));
+            }
+        }
+        try {
+            return new SchemaParser(url, preloaded);
+        } finally {
+            imports.forEach(ForkJoinTask::join);
+        }
+    }
+
+    private static String getBase(String location) {
+        int pos = location.lastIndexOf("/");
+        return pos < 0 ? "" : location.substring(0, pos + 1);
+    }
+
+    /**
+     * Fetch and parse a document, then fork the loading of the documents it imports or includes
+     */
+    private final class LoadTask extends RecursiveAction {
+
+        @Serial
+        private static final long serialVersionUID = 1L;
+
+        private final String location;
+
+        LoadTask(String location) {
+            this.location = location;
+        }
+
+        @Override
+        protected void compute() {
+            Document doc;
+            try {
+                doc = docSource.parse(location);
+            } catch (Exception e) {
+                logger.debug("Unable to preload XSD " + location, e);
+                return;
+            }
+            documents.put(location, doc);
+
+            List<LoadTask> tasks = new ArrayList<>();
+            String base = getBase(location);
+            for (Element child : XmlTools.getChildElements(doc.getDocumentElement())) {
+                if (XSD_NS.equals(child.getNamespaceURI())) {
+                    String schemaLocation = XmlTools.getAttributes(child).get("schemaLocation");
+                    String target = null;
+                    if ("import".equals(child.getLocalName())) {
+                        String ns = XmlTools.getAttributes(child).get("namespace");
+                        target = schemaLocation == null ? ns : base + schemaLocation;
+                        if (target != null) {
+                            importLocations.add(SchemaParserFactory.normalizeUrl(target));
+                        }
+                    } else if ("include".equals(child.getLocalName()) && schemaLocation != null) {
+                        target = base + schemaLocation;
+                    }
+                    if (target != null) {
+                        String targetUrl = SchemaParserFactory.normalizeUrl(target);
+                        if (seen.add(targetUrl)) {
+                            tasks.add(new LoadTask(targetUrl));
+                        }
+                    }
+                }
+            }
+            invokeAll(tasks);
+        }
+    }
+
+    /**
+     * Serves copies of the preloaded documents, and falls back to the original source for anything else. The
+     * SchemaParsers are created in parallel, and a document included by several XSDs is read by all of them: DOMs
+     * are not safe for concurrent reads, each caller gets its own copy.
+     */
+    private final class PreloadedDocumentSource implements DocumentSource {
+
+        @Override
+        public Document parse(String url) throws DocumentSourceException {
+            Document doc = documents.get(SchemaParserFactory.normalizeUrl(url));
+            if (doc == null) {
+                return docSource.parse(url);
+            }
+            synchronized (doc) {
+                return (Document) doc.cloneNode(true);
+            }
+        }
+
+        @Override
+        public Map<String, String> getPrefixMap() {
+            return docSource.getPrefixMap();
+        }
+    }
+}
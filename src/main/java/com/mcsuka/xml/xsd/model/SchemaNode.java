@@ -449,6 +449,40 @@ public class SchemaNode {
         return minOccurs + (maxOccurs > minOccurs ? ".." + mo : "");
     }
 
+    String getUnknownValue() {
+        return unknownValue;
+    }
+
+    SchemaNode getRecursiveParent() {
+        return recursiveParent;
+    }
+
+    /**
+     * Restore the derived state of a SchemaNode read from a SchemaSnapshot
+     */
+    void restore(String unknownValue, String documentation, Map<String, String> restrictions, String customType,
+            DataType w3cType, String path, SchemaNode recursiveParent) {
+        this.unknownValue = unknownValue;
+        this.documentation = documentation;
+        this.restrictions = restrictions;
+        this.customType = customType;
+        this.w3cType = w3cType;
+        this.path = path;
+        this.recursiveParent = recursiveParent;
+    }
+
+    /**
+     * Attach a child read from a SchemaSnapshot. Unlike addChild, the path, the type and the recursion are not
+     * recalculated, they are restored from the snapshot.
+     */
+    void restoreChild(SchemaNode child) {
+        children.add(child);
+        if (!child.isIndicator()) {
+            childMap.put(child.getElementName(), child);
+        }
+        child.parent = this;
+    }
+
     public SchemaNode clone(int minOccurs, int maxOccurs) {
         SchemaNode clone = new SchemaNode(elementName, indicator, namespace, qualified, attribute, any, defaultValue, fixedValue,
             minOccurs, maxOccurs);
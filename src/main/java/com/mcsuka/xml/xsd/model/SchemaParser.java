@@ -150,6 +150,14 @@ public class SchemaParser {
         }
     }
 
+    /**
+     * Weight of the SchemaParser in the SchemaParserFactory cache: the number of global types, elements and groups it
+     * holds, including the included XSDs
+     */
+    int getWeight() {
+        return typeNodeMap.size() + elemNodeMap.size() + groupNodeMap.size();
+    }
+
     /**
      * Parse an XSD (or a set of related XSDs), starting from the root element.
      * @param rootElemName The localName of the root of the schema tree. Either an explicitly defined element
@@ -3,7 +3,13 @@ package com.mcsuka.xml.xsd.model;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.xml.xpath.XPathExpressionException;
 
@@ -14,35 +20,256 @@ import com.mcsuka.xml.xsd.tools.DocumentSourceException;
 
 /**
  * Initialize a SchemaParser.
+ * <br/>
+ * SchemaParsers are cached by their normalized location. Each location is loaded by a single thread, other threads
+ * asking for the same location wait for that load, while threads asking for other locations are not blocked. The
+ * cache is bounded by the number of entries and by their total weight (see SchemaParser.getWeight()); when either
+ * limit is exceeded, the least recently used SchemaParsers are evicted. The total weight is kept up to date as entries
+ * come and go, the limits are checked without a lock, and the entry to evict is the least recently used of a sample.
+ * Failed loads are not cached.
  */
 public class SchemaParserFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(SchemaParserFactory.class);
-    private static final ConcurrentHashMap<String, SchemaParser> modelCache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, CacheEntry> modelCache = new ConcurrentHashMap<>();
+    private static final AtomicLong clock = new AtomicLong();
+    private static final int EVICTION_SAMPLE_SIZE = 16;
+    // the loaded SchemaParsers in the cache, and their total weight
+    private static final AtomicInteger loadedCount = new AtomicInteger();
+    private static final AtomicLong loadedWeight = new AtomicLong();
+
+    private static final LongAdder hitCount = new LongAdder();
+    private static final LongAdder missCount = new LongAdder();
+    private static final LongAdder loadFailureCount = new LongAdder();
+    private static final LongAdder totalLoadTimeNanos = new LongAdder();
+    private static final LongAdder evictionCount = new LongAdder();
+
+    private static volatile int maxEntries = Integer.MAX_VALUE;
+    private static volatile long maxWeight = Long.MAX_VALUE;
+
+    /**
+     * Statistics of the SchemaParser cache, since the start of the application
+     *
+     * @param hitCount number of requests served from the cache, including the ones waiting for another thread's load
+     * @param missCount number of requests that loaded an XSD
+     * @param loadFailureCount number of loads that failed
+     * @param totalLoadTimeNanos time spent loading XSDs, including the failed loads
+     * @param evictionCount number of SchemaParsers evicted to keep the cache within its limits
+     * @param size number of SchemaParsers in the cache, including the ones being loaded
+     * @param weight total weight of the loaded SchemaParsers in the cache
+     */
+    public record CacheStats(long hitCount, long missCount, long loadFailureCount, long totalLoadTimeNanos,
+                             long evictionCount, int size, long weight) {
+    }
+
+    private static final class CacheEntry {
+        private static final int NEW = 0;
+        private static final int COUNTED = 1;
+        private static final int REMOVED = 2;
+
+        private final CompletableFuture<SchemaParser> future = new CompletableFuture<>();
+        private volatile long lastAccess = clock.incrementAndGet();
+        private volatile int weight;
+        // whether the entry is counted in loadedCount and loadedWeight
+        private final AtomicInteger state = new AtomicInteger(NEW);
+
+        private void complete(SchemaParser model) {
+            weight = model.getWeight();
+            future.complete(model);
+        }
+
+        private boolean isLoaded() {
+            return future.isDone() && !future.isCompletedExceptionally();
+        }
+
+        /**
+         * Count the loaded entry, unless it was removed from the cache already
+         */
+        private void count() {
+            if (state.compareAndSet(NEW, COUNTED)) {
+                loadedCount.incrementAndGet();
+                loadedWeight.addAndGet(weight);
+            }
+        }
+
+        /**
+         * Stop counting the entry, once it is removed from the cache
+         */
+        private void uncount() {
+            if (state.getAndSet(REMOVED) == COUNTED) {
+                loadedCount.decrementAndGet();
+                loadedWeight.addAndGet(-weight);
+            }
+        }
+    }
 
     /**
      * Create a new SchemaParser or take it from the cache, if it was already initialized. SchemaParsers must be uniquely identified by their xsdLocation.
+     * On a cache miss, the imported and included XSDs are loaded in parallel, and the SchemaParsers of the imported
+     * XSDs are cached too.
      */
-    public synchronized static SchemaParser newSchemaParser(String xsdLocation, DocumentSource docSource) throws XPathExpressionException, DocumentSourceException {
+    public static SchemaParser newSchemaParser(String xsdLocation, DocumentSource docSource) throws XPathExpressionException, DocumentSourceException {
         String url = normalizeUrl(xsdLocation);
-        SchemaParser model = modelCache.get(url);
-        if (model == null) {
-            model = new SchemaParser(url, docSource);
-            SchemaParser oldModel = modelCache.putIfAbsent(url, model);
-            if (oldModel != null) {
-                return oldModel;
+        CacheEntry entry = modelCache.get(url);
+        if (entry == null) {
+            CacheEntry newEntry = new CacheEntry();
+            entry = modelCache.putIfAbsent(url, newEntry);
+            if (entry == null) {
+                return load(url, docSource, newEntry);
             }
-        } else {
-            logger.debug("XSD model found in cache: " + url);
         }
-        return model;
+        logger.debug("XSD model found in cache: " + url);
+        hitCount.increment();
+        entry.lastAccess = clock.incrementAndGet();
+        return await(entry.future);
+    }
+
+    private static SchemaParser load(String url, DocumentSource docSource, CacheEntry entry) throws XPathExpressionException, DocumentSourceException {
+        missCount.increment();
+        long start = System.nanoTime();
+        try {
+            SchemaParser model = SchemaLoader.load(url, docSource);
+            entry.complete(model);
+            count(url, entry);
+            return model;
+        } catch (Throwable t) {
+            loadFailureCount.increment();
+            remove(url, entry);
+            entry.future.completeExceptionally(t);
+            throw t;
+        } finally {
+            totalLoadTimeNanos.add(System.nanoTime() - start);
+            evict();
+        }
+    }
+
+    private static SchemaParser await(CompletableFuture<SchemaParser> future) throws XPathExpressionException, DocumentSourceException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof XPathExpressionException xe) {
+                throw xe;
+            } else if (cause instanceof DocumentSourceException de) {
+                throw de;
+            } else if (cause instanceof RuntimeException re) {
+                throw re;
+            } else if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Add a SchemaParser to the cache, unless there is one already
+     *
+     * @param url normalized location of the XSD
+     * @return the SchemaParser in the cache
+     */
+    static SchemaParser register(String url, SchemaParser model) {
+        CacheEntry entry = new CacheEntry();
+        entry.complete(model);
+        CacheEntry oldEntry = modelCache.putIfAbsent(url, entry);
+        if (oldEntry == null) {
+            count(url, entry);
+            evict();
+            return model;
+        }
+        return oldEntry.isLoaded() ? oldEntry.future.join() : model;
+    }
+
+    static boolean isCached(String url) {
+        return modelCache.containsKey(url);
+    }
+
+    /**
+     * Count a loaded entry in the weight of the cache
+     */
+    private static void count(String url, CacheEntry entry) {
+        entry.count();
+        if (modelCache.get(url) != entry) {
+            entry.uncount();    // removed while it was loaded
+        }
+    }
+
+    private static boolean remove(String url, CacheEntry entry) {
+        if (modelCache.remove(url, entry)) {
+            entry.uncount();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Evict SchemaParsers until the cache is within its limits. Within the limits, nothing is scanned. Over them, the
+     * least recently used of the first EVICTION_SAMPLE_SIZE loaded entries is evicted, one at a time: an exact LRU
+     * for small caches, an approximation for large ones. SchemaParsers being loaded are never evicted, and neither is
+     * the last loaded one.
+     */
+    private static void evict() {
+        while ((modelCache.size() > maxEntries || loadedWeight.get() > maxWeight) && loadedCount.get() > 1) {
+            Map.Entry<String, CacheEntry> lru = null;
+            int sampled = 0;
+            for (Map.Entry<String, CacheEntry> e : modelCache.entrySet()) {
+                if (e.getValue().isLoaded()) {
+                    if (lru == null || e.getValue().lastAccess < lru.getValue().lastAccess) {
+                        lru = e;
+                    }
+                    if (++sampled == EVICTION_SAMPLE_SIZE) {
+                        break;
+                    }
+                }
+            }
+            if (lru == null) {
+                return;
+            }
+            if (remove(lru.getKey(), lru.getValue())) {
+                logger.debug("XSD model evicted from cache: " + lru.getKey());
+                evictionCount.increment();
+            }
+        }
+    }
+
+    /**
+     * Set the limits of the SchemaParser cache. Both are unlimited by default.
+     *
+     * @param maxEntries maximum number of SchemaParsers in the cache
+     * @param maxWeight maximum total weight of the SchemaParsers in the cache
+     */
+    public static void setCacheLimits(int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Cache limits must be positive: " + maxEntries + ", " + maxWeight);
+        }
+        SchemaParserFactory.maxEntries = maxEntries;
+        SchemaParserFactory.maxWeight = maxWeight;
+        evict();
+    }
+
+    /**
+     * Remove the SchemaParser of an XSD from the cache. SchemaParsers that were handed out already stay usable, and
+     * the SchemaParsers of the XSDs imported by this one stay cached.
+     *
+     * @return true if the XSD was cached
+     */
+    public static boolean invalidate(String xsdLocation) {
+        CacheEntry entry = modelCache.remove(normalizeUrl(xsdLocation));
+        if (entry != null) {
+            entry.uncount();
+        }
+        return entry != null;
     }
 
     /**
      * Clear the SchemaParser cache
      */
     public static void clearCache() {
-        modelCache.clear();
+        modelCache.forEach(SchemaParserFactory::remove);
+    }
+
+    public static CacheStats getCacheStats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), loadFailureCount.sum(), totalLoadTimeNanos.sum(),
+            evictionCount.sum(), modelCache.size(), loadedWeight.get());
     }
 
     /**
@@ -0,0 +1,356 @@
+package com.mcsuka.xml.xsd.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.xml.namespace.QName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcsuka.xml.xsd.model.SchemaNode.DataType;
+import com.mcsuka.xml.xsd.model.SchemaNode.IndicatorType;
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource.SoapOperation;
+
+/**
+ * Binary snapshot of the parsed request and response schemas of a SOAP operation, together with the resolved
+ * operation. Loading a snapshot restores the SchemaNode trees, including the references of the recursive definitions,
+ * without parsing any XML.
+ * <br/>
+ * Snapshots are stored in a directory, one file per key. The key must identify the content of the source documents
+ * (e.g. a hash of the WSDL) and the operation, a snapshot with a matching key is assumed to be up-to-date.
+ * <br/>
+ * Format: magic number, format version, string table, operation, request tree, response tree. Strings are written
+ * once and referenced by index, SchemaNodes are written in pre-order and recursive definitions reference the index of
+ * their ancestor.
+ */
+public final class SchemaSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaSnapshot.class);
+
+    private static final int MAGIC = 0x58534453;   // "XSDS"
+    private static final int FORMAT_VERSION = 2;
+    private static final String FILE_EXTENSION = ".xsds";
+
+    private static final int QUALIFIED = 1;
+    private static final int ATTRIBUTE = 2;
+    private static final int ANY = 4;
+    private static final int RECURSIVE = 8;
+    private static final int RESTRICTIONS = 16;
+
+    private final SoapOperation operation;
+    private final SchemaNode requestSchema;
+    private final SchemaNode responseSchema;
+
+    /**
+     * @param operation the SOAP operation, null if it was not found
+     * @param requestSchema the schema of the request message, null if unknown
+     * @param responseSchema the schema of the response message, null if unknown
+     */
+    public SchemaSnapshot(SoapOperation operation, SchemaNode requestSchema, SchemaNode responseSchema) {
+        this.operation = operation;
+        this.requestSchema = requestSchema;
+        this.responseSchema = responseSchema;
+    }
+
+    public Optional<SoapOperation> getOperation() {
+        return Optional.ofNullable(operation);
+    }
+
+    public Optional<SchemaNode> getRequestSchema() {
+        return Optional.ofNullable(requestSchema);
+    }
+
+    public Optional<SchemaNode> getResponseSchema() {
+        return Optional.ofNullable(responseSchema);
+    }
+
+    /**
+     * Load the snapshot stored under the given key
+     *
+     * @return the snapshot, or empty if there is no snapshot with this key or it is unreadable
+     */
+    public static Optional<SchemaSnapshot> load(Path directory, String key) {
+        Path file = directory.resolve(key + FILE_EXTENSION);
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            SchemaSnapshot snapshot = read(in);
+            logger.debug("Schema snapshot loaded: " + file);
+            return Optional.of(snapshot);
+        } catch (NoSuchFileException e) {
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Unable to load schema snapshot " + file, e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Store the snapshot under the given key. The file is written to a temporary file first and then moved in place,
+     * concurrent readers never see a partial snapshot.
+     */
+    public void save(Path directory, String key) throws IOException {
+        Files.createDirectories(directory);
+        Path tmpFile = Files.createTempFile(directory, key, ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+                write(out);
+            }
+            Files.move(tmpFile, directory.resolve(key + FILE_EXTENSION), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    /**
+     * Write the snapshot to a stream in binary format
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        if (operation != null) {
+            collectStrings(operation, strings);
+        }
+        collectStrings(requestSchema, strings);
+        collectStrings(responseSchema, strings);
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        writeVarInt(out, strings.size());
+        for (String s : strings.keySet()) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(out, bytes.length);
+            out.write(bytes);
+        }
+        out.writeBoolean(operation != null);
+        if (operation != null) {
+            writeString(out, operation.soapAction(), strings);
+            writeQName(out, operation.requestRootElement(), strings);
+            writeQName(out, operation.responseRootElement(), strings);
+            out.writeByte(operation.soapVersion().ordinal());
+        }
+        writeTree(out, requestSchema, strings);
+        writeTree(out, responseSchema, strings);
+        out.flush();
+    }
+
+    /**
+     * Read a snapshot in binary format
+     *
+     * @throws IOException if the stream is not a snapshot or it was written in a different format version
+     */
+    public static SchemaSnapshot read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a schema snapshot");
+        }
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported schema snapshot version " + version);
+        }
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] bytes = new byte[readVarInt(in)];
+            in.readFully(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        SoapOperation operation = null;
+        if (in.readBoolean()) {
+            operation = new SoapOperation(readString(in, strings), readQName(in, strings), readQName(in, strings),
+                SoapVersion.values()[in.readUnsignedByte()]);
+        }
+        SchemaNode requestSchema = readTree(in, strings);
+        SchemaNode responseSchema = readTree(in, strings);
+        return new SchemaSnapshot(operation, requestSchema, responseSchema);
+    }
+
+    private static void collectStrings(SoapOperation operation, Map<String, Integer> strings) {
+        addString(operation.soapAction(), strings);
+        for (QName qName : List.of(operation.requestRootElement(), operation.responseRootElement())) {
+            addString(qName.getNamespaceURI(), strings);
+            addString(qName.getLocalPart(), strings);
+            addString(qName.getPrefix(), strings);
+        }
+    }
+
+    private static void collectStrings(SchemaNode node, Map<String, Integer> strings) {
+        if (node == null) {
+            return;
+        }
+        addString(node.getElementName(), strings);
+        addString(node.getNamespace(), strings);
+        addString(node.getDefaultValue(), strings);
+        addString(node.getFixedValue(), strings);
+        addString(node.getUnknownValue(), strings);
+        addString(node.getDocumentation(), strings);
+        addString(node.getCustomType(), strings);
+        addString(node.getPath(), strings);
+        node.getRestrictions().forEach((type, value) -> {
+            addString(type, strings);
+            addString(value, strings);
+        });
+        if (!node.isRecursive()) {
+            for (SchemaNode child : node.getChildren()) {
+                collectStrings(child, strings);
+            }
+        }
+    }
+
+    private static void addString(String s, Map<String, Integer> strings) {
+        if (s != null) {
+            strings.putIfAbsent(s, strings.size());
+        }
+    }
+
+    // 0 is null, otherwise the string table index + 1
+    private static void writeString(DataOutputStream out, String s, Map<String, Integer> strings) throws IOException {
+        writeVarInt(out, s == null ? 0 : strings.get(s) + 1);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int idx = readVarInt(in);
+        return idx == 0 ? null : strings[idx - 1];
+    }
+
+    private static void writeQName(DataOutputStream out, QName qName, Map<String, Integer> strings) throws IOException {
+        writeString(out, qName.getNamespaceURI(), strings);
+        writeString(out, qName.getLocalPart(), strings);
+        writeString(out, qName.getPrefix(), strings);
+    }
+
+    private static QName readQName(DataInputStream in, String[] strings) throws IOException {
+        return new QName(readString(in, strings), readString(in, strings), readString(in, strings));
+    }
+
+    private static void writeTree(DataOutputStream out, SchemaNode root, Map<String, Integer> strings)
+            throws IOException {
+        out.writeBoolean(root != null);
+        if (root != null) {
+            writeNode(out, root, strings, new IdentityHashMap<>());
+        }
+    }
+
+    private static void writeNode(DataOutputStream out, SchemaNode node, Map<String, Integer> strings,
+            Map<SchemaNode, Integer> written) throws IOException {
+        written.put(node, written.size());
+        Map<String, String> restrictions = node.getRestrictions();
+        int flags = (node.isQualified() ? QUALIFIED : 0)
+            | (node.isAttribute() ? ATTRIBUTE : 0)
+            | (node.isAny() ? ANY : 0)
+            | (node.isRecursive() ? RECURSIVE : 0)
+            | (restrictions.isEmpty() ? 0 : RESTRICTIONS);
+        out.writeByte(flags);
+        out.writeByte(node.getIndicator() == null ? 0 : node.getIndicator().ordinal() + 1);
+        out.writeByte(node.getW3CType().ordinal());
+        writeVarInt(out, node.getMinOccurs());
+        writeVarInt(out, node.getMaxOccurs());
+        writeString(out, node.getElementName(), strings);
+        writeString(out, node.getNamespace(), strings);
+        writeString(out, node.getDefaultValue(), strings);
+        writeString(out, node.getFixedValue(), strings);
+        writeString(out, node.getUnknownValue(), strings);
+        writeString(out, node.getDocumentation(), strings);
+        writeString(out, node.getCustomType(), strings);
+        writeString(out, node.getPath(), strings);
+        if (!restrictions.isEmpty()) {
+            writeVarInt(out, restrictions.size());
+            for (Map.Entry<String, String> restriction : restrictions.entrySet()) {
+                writeString(out, restriction.getKey(), strings);
+                writeString(out, restriction.getValue(), strings);
+            }
+        }
+        if (node.isRecursive()) {
+            // the recursive parent is an ancestor, it is always written before
+            writeVarInt(out, written.get(node.getRecursiveParent()));
+        } else {
+            List<SchemaNode> children = node.getChildren();
+            writeVarInt(out, children.size());
+            for (SchemaNode child : children) {
+                writeNode(out, child, strings, written);
+            }
+        }
+    }
+
+    private static SchemaNode readTree(DataInputStream in, String[] strings) throws IOException {
+        return in.readBoolean() ? readNode(in, strings, new ArrayList<>()) : null;
+    }
+
+    private static SchemaNode readNode(DataInputStream in, String[] strings, List<SchemaNode> read)
+            throws IOException {
+        int flags = in.readUnsignedByte();
+        int indicator = in.readUnsignedByte();
+        DataType w3cType = DataType.values()[in.readUnsignedByte()];
+        int minOccurs = readVarInt(in);
+        int maxOccurs = readVarInt(in);
+        String elementName = readString(in, strings);
+        String namespace = readString(in, strings);
+        String defaultValue = readString(in, strings);
+        String fixedValue = readString(in, strings);
+        String unknownValue = readString(in, strings);
+        String documentation = readString(in, strings);
+        String customType = readString(in, strings);
+        String path = readString(in, strings);
+        Map<String, String> restrictions = null;
+        if ((flags & RESTRICTIONS) != 0) {
+            int count = readVarInt(in);
+            restrictions = new HashMap<>();
+            for (int i = 0; i < count; i++) {
+                restrictions.put(readString(in, strings), readString(in, strings));
+            }
+        }
+        SchemaNode node = new SchemaNode(elementName,
+            indicator == 0 ? null : IndicatorType.values()[indicator - 1],
+            namespace, (flags & QUALIFIED) != 0, (flags & ATTRIBUTE) != 0, (flags & ANY) != 0,
+            defaultValue, fixedValue, minOccurs, maxOccurs);
+        read.add(node);
+        if ((flags & RECURSIVE) != 0) {
+            SchemaNode recursiveParent = read.get(readVarInt(in));
+            node.restore(unknownValue, documentation, restrictions, customType, w3cType, path, recursiveParent);
+        } else {
+            node.restore(unknownValue, documentation, restrictions, customType, w3cType, path, null);
+            int childCount = readVarInt(in);
+            for (int i = 0; i < childCount; i++) {
+                node.restoreChild(readNode(in, strings, read));
+            }
+        }
+        return node;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed schema snapshot");
+    }
+}
@@ -0,0 +1,227 @@
+package com.mcsuka.xml.xsd.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * Load XSDs from memory-mapped local files, or from a memory-mapped zip / jar bundle of XSDs. The documents are parsed
+ * directly from the mapped bytes, the encoding is detected by the XML parser. Each file is mapped once and the mapping
+ * is shared by all MappedDocumentSources, until the file is modified. Replace the files by moving new ones in place,
+ * rather than rewriting them while they are mapped.
+ * <br/>
+ * In bundle mode, the URLs are the entry names within the bundle. Stored and deflated entries are supported, zip64
+ * bundles are not. HTTP URLs are loaded the same way as by the XsdDocumentSource.
+ */
+public class MappedDocumentSource implements DocumentSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedDocumentSource.class);
+
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR_SIGNATURE = 0x06054b50;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+
+    private record Mapping(long size, FileTime lastModified, MappedByteBuffer buffer) {
+    }
+
+    private record BundleEntry(int method, int headerOffset, int compressedSize, int size) {
+    }
+
+    private static final Map<Path, Mapping> mappings = new ConcurrentHashMap<>();
+
+    private final Path bundle;
+    private final Map<String, BundleEntry> bundleEntries;
+    private final XsdDocumentSource httpSource = new XsdDocumentSource();
+    private final Map<String, String> pfxMap = new HashMap<>();
+
+    /**
+     * Load XSDs from local files
+     */
+    public MappedDocumentSource() {
+        this.bundle = null;
+        this.bundleEntries = null;
+    }
+
+    /**
+     * Load XSDs from a zip or jar bundle
+     *
+     * @param bundle path of the bundle
+     */
+    public MappedDocumentSource(Path bundle) throws IOException {
+        this.bundle = bundle.toAbsolutePath().normalize();
+        this.bundleEntries = readCentralDirectory(map(this.bundle));
+    }
+
+    @Override
+    public Document parse(String url) throws DocumentSourceException {
+        try {
+            if (url.startsWith("http://") || url.startsWith("https://")) {
+                return httpSource.parse(url);
+            }
+            String fileName = url.startsWith("file://") ? url.substring(7) : url;
+            ByteBuffer content = bundle == null
+                ? map(Path.of(fileName).toAbsolutePath().normalize())
+                : getBundleEntry(fileName.startsWith("/") ? fileName.substring(1) : fileName);
+            try (InputStream stream = new ByteBufferInputStream(content)) {
+                return XmlTools.getDocumentBuilder().parse(new InputSource(stream));
+            }
+        } catch (DocumentSourceException e) {
+            throw e;
+        } catch (Throwable t) {
+            logger.warn("Error reading XSD from URL " + url, t);
+            throw new DocumentSourceException("Unable to parse XSD on url " + url, t);
+        }
+    }
+
+    /**
+     * Dummy implementation
+     */
+    @Override
+    public Map<String, String> getPrefixMap() {
+        return pfxMap;
+    }
+
+    /**
+     * @return a read-only view of the shared mapping of a file, with its own position. The mapping is replaced, if
+     * the file was modified since it was mapped.
+     */
+    static ByteBuffer map(Path file) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        Mapping mapping = mappings.get(file);
+        if (mapping == null || mapping.size() != attrs.size() || !mapping.lastModified().equals(attrs.lastModifiedTime())) {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                mapping = new Mapping(attrs.size(), attrs.lastModifiedTime(),
+                    channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            }
+            mappings.put(file, mapping);
+        }
+        return mapping.buffer().asReadOnlyBuffer();
+    }
+
+    private ByteBuffer getBundleEntry(String name) throws IOException, DataFormatException {
+        BundleEntry entry = bundleEntries.get(name);
+        if (entry == null) {
+            throw new IOException("Entry " + name + " not found in " + bundle);
+        }
+        ByteBuffer buffer = map(bundle).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.getInt(entry.headerOffset()) != LOCAL_HEADER_SIGNATURE) {
+            throw new IOException("Invalid local header of entry " + name + " in " + bundle);
+        }
+        int dataOffset = entry.headerOffset() + 30
+            + Short.toUnsignedInt(buffer.getShort(entry.headerOffset() + 26))
+            + Short.toUnsignedInt(buffer.getShort(entry.headerOffset() + 28));
+        ByteBuffer data = buffer.slice(dataOffset, entry.compressedSize());
+        if (entry.method() == STORED) {
+            return data;
+        }
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data);
+            ByteBuffer result = ByteBuffer.allocate(entry.size());
+            while (result.hasRemaining() && !inflater.finished()) {
+                if (inflater.inflate(result) == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated entry " + name + " in " + bundle);
+                }
+            }
+            return result.flip();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static Map<String, BundleEntry> readCentralDirectory(ByteBuffer buffer) throws IOException {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int eocd = buffer.limit() - 22;
+        int minEocd = Math.max(0, eocd - 0xFFFF);    // the end record is followed by a comment of up to 64k
+        while (eocd >= minEocd && buffer.getInt(eocd) != END_OF_CENTRAL_DIR_SIGNATURE) {
+            eocd--;
+        }
+        if (eocd < minEocd) {
+            throw new IOException("Not a zip file");
+        }
+        int count = Short.toUnsignedInt(buffer.getShort(eocd + 10));
+        long offset = Integer.toUnsignedLong(buffer.getInt(eocd + 16));
+        if (count == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new IOException("Zip64 bundles are not supported");
+        }
+
+        Map<String, BundleEntry> entries = new HashMap<>();
+        int pos = (int) offset;
+        for (int i = 0; i < count; i++) {
+            if (buffer.getInt(pos) != CENTRAL_HEADER_SIGNATURE) {
+                throw new IOException("Invalid central directory entry at " + pos);
+            }
+            int method = Short.toUnsignedInt(buffer.getShort(pos + 10));
+            int compressedSize = buffer.getInt(pos + 20);
+            int size = buffer.getInt(pos + 24);
+            int nameLength = Short.toUnsignedInt(buffer.getShort(pos + 28));
+            int extraLength = Short.toUnsignedInt(buffer.getShort(pos + 30));
+            int commentLength = Short.toUnsignedInt(buffer.getShort(pos + 32));
+            int headerOffset = buffer.getInt(pos + 42);
+            byte[] name = new byte[nameLength];
+            buffer.get(pos + 46, name);
+            if (method == STORED || method == DEFLATED) {
+                entries.put(new String(name, StandardCharsets.UTF_8),
+                    new BundleEntry(method, headerOffset, compressedSize, size));
+            }
+            pos += 46 + nameLength + extraLength + commentLength;
+        }
+        return entries;
+    }
+
+    /**
+     * Reads a ByteBuffer without copying it to the heap first
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
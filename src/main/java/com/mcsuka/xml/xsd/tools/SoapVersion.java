@@ -0,0 +1,49 @@
+package com.mcsuka.xml.xsd.tools;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * SOAP protocol version of an operation, as declared by the SOAP binding of the WSDL
+ */
+public enum SoapVersion {
+
+    SOAP_11(XmlTools.SOAP_ENVELOPE_NS, "http://schemas.xmlsoap.org/wsdl/soap/", "text/xml"),
+    SOAP_12(XmlTools.SOAP12_ENVELOPE_NS, "http://schemas.xmlsoap.org/wsdl/soap12/", "application/soap+xml");
+
+    private final String envelopeNamespace;
+    private final String bindingNamespace;
+    private final String contentType;
+
+    SoapVersion(String envelopeNamespace, String bindingNamespace, String contentType) {
+        this.envelopeNamespace = envelopeNamespace;
+        this.bindingNamespace = bindingNamespace;
+        this.contentType = contentType;
+    }
+
+    public String getEnvelopeNamespace() {
+        return envelopeNamespace;
+    }
+
+    /**
+     * @return name space of the WSDL binding extension elements, e.g. soap12:operation
+     */
+    public String getBindingNamespace() {
+        return bindingNamespace;
+    }
+
+    /**
+     * @return media type of the messages, without parameters
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public static Optional<SoapVersion> ofEnvelopeNamespace(String namespace) {
+        return Arrays.stream(values()).filter(v -> v.envelopeNamespace.equals(namespace)).findFirst();
+    }
+
+    public static Optional<SoapVersion> ofBindingNamespace(String namespace) {
+        return Arrays.stream(values()).filter(v -> v.bindingNamespace.equals(namespace)).findFirst();
+    }
+}
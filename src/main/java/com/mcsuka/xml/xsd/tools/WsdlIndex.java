@@ -0,0 +1,213 @@
+package com.mcsuka.xml.xsd.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource.SoapOperation;
+
+/**
+ * The parts of a WSDL needed by the WsdlDocumentSource, collected in a single pass over the WSDL DOM: the operations
+ * of the bindings, port types and messages, and the schemas by target name space. The index is immutable, so it can
+ * be read concurrently. The schemas are imported to Documents of their own; those are not safe for concurrent reads.
+ */
+final class WsdlIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(WsdlIndex.class);
+
+    static final String WSDL_NS = "http://schemas.xmlsoap.org/wsdl/";
+    static final String XSD_NS = "http://www.w3.org/2001/XMLSchema";
+
+    private record PortTypeOperation(String inputMessage, String outputMessage) {
+    }
+
+    private record BindingOperation(String soapAction, SoapVersion soapVersion) {
+    }
+
+    private final String targetNamespace;
+    private final Map<String, String> prefixMap;
+    private final List<String> soapActions;
+    private final Map<String, SoapOperation> operations;
+    private final Map<String, Document> schemas;
+
+    // collected during the DOM pass, the first definition of a name wins
+    private final Map<String, BindingOperation> bindingOperations = new LinkedHashMap<>();
+    private final Map<String, PortTypeOperation> portTypeOperations = new HashMap<>();
+    private final Map<String, String> messageElements = new HashMap<>();
+    private final List<String> soapActionList = new ArrayList<>();
+    private final Map<String, Document> schemaMap = new HashMap<>();
+
+    WsdlIndex(Document wsdlDoc) {
+        Element definitions = wsdlDoc.getDocumentElement();
+        targetNamespace = definitions.getAttribute("targetNamespace");
+        prefixMap = Map.copyOf(getPrefixMap(definitions));
+        visit(definitions);
+        soapActions = List.copyOf(soapActionList);
+        schemas = Map.copyOf(schemaMap);
+
+        Map<String, SoapOperation> ops = new HashMap<>();
+        bindingOperations.forEach((name, binding) -> resolveOperation(name, binding)
+            .ifPresent(op -> ops.put(name, op)));
+        operations = Map.copyOf(ops);
+    }
+
+    Map<String, String> getPrefixMap() {
+        return prefixMap;
+    }
+
+    List<String> getSoapActions() {
+        return soapActions;
+    }
+
+    Optional<SoapOperation> getOperation(String operationName) {
+        return Optional.ofNullable(operations.get(operationName));
+    }
+
+    Set<String> getSchemaNamespaces() {
+        return schemas.keySet();
+    }
+
+    Optional<Document> getSchema(String targetNamespace) {
+        return Optional.ofNullable(schemas.get(targetNamespace));
+    }
+
+    private static Map<String, String> getPrefixMap(Element definitions) {
+        Map<String, String> pfxMap = new HashMap<>();
+        XmlTools.getAttributes(definitions).forEach((attrName, attrValue) -> {
+            if (attrName != null) {
+                if (attrName.startsWith("xmlns:")) {
+                    pfxMap.put(attrName.substring(6), attrValue);
+                }
+                if (attrName.equals("xmlns")) {
+                    pfxMap.put("", attrValue);
+                }
+            }
+        });
+        return pfxMap;
+    }
+
+    private static boolean is(Node node, String namespace, String localName) {
+        return namespace.equals(node.getNamespaceURI()) && localName.equals(node.getLocalName());
+    }
+
+    private static String attribute(Element element, String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : null;
+    }
+
+    private void visit(Element element) {
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child instanceof Element childElement) {
+                if (is(child, WSDL_NS, "binding")) {
+                    indexBinding(childElement);
+                } else if (is(child, WSDL_NS, "portType")) {
+                    indexPortType(childElement);
+                } else if (is(child, WSDL_NS, "message")) {
+                    indexMessage(childElement);
+                } else if (is(child, XSD_NS, "schema")) {
+                    indexSchema(childElement);
+                } else {
+                    visit(childElement);
+                }
+            }
+        }
+    }
+
+    private void indexBinding(Element binding) {
+        for (Element operation : XmlTools.getChildElements(binding)) {
+            if (is(operation, WSDL_NS, "operation")) {
+                for (Element soapOperation : XmlTools.getChildElements(operation)) {
+                    Optional<SoapVersion> soapVersion = SoapVersion.ofBindingNamespace(soapOperation.getNamespaceURI());
+                    if (soapVersion.isPresent() && "operation".equals(soapOperation.getLocalName())) {
+                        String soapAction = soapOperation.getAttribute("soapAction");
+                        soapActionList.add(soapAction);
+                        bindingOperations.putIfAbsent(operation.getAttribute("name"),
+                            new BindingOperation(soapAction, soapVersion.get()));
+                    }
+                }
+            }
+        }
+    }
+
+    private void indexPortType(Element portType) {
+        for (Element operation : XmlTools.getChildElements(portType)) {
+            if (is(operation, WSDL_NS, "operation")) {
+                String input = null;
+                String output = null;
+                for (Element message : XmlTools.getChildElements(operation)) {
+                    if (input == null && is(message, WSDL_NS, "input")) {
+                        input = attribute(message, "message");
+                    } else if (output == null && is(message, WSDL_NS, "output")) {
+                        output = attribute(message, "message");
+                    }
+                }
+                portTypeOperations.putIfAbsent(operation.getAttribute("name"), new PortTypeOperation(input, output));
+            }
+        }
+    }
+
+    private void indexMessage(Element message) {
+        for (Element part : XmlTools.getChildElements(message)) {
+            if (is(part, WSDL_NS, "part")) {
+                messageElements.putIfAbsent(message.getAttribute("name"), attribute(part, "element"));
+                return;
+            }
+        }
+    }
+
+    private void indexSchema(Element schema) {
+        String ns = schema.getAttribute("targetNamespace");
+        if (!schemaMap.containsKey(ns)) {
+            Document schemaDoc = XmlTools.getDocumentBuilder().newDocument();
+            schemaDoc.appendChild(schemaDoc.importNode(schema, true));
+            schemaMap.put(ns, schemaDoc);
+        }
+    }
+
+    private String removeTnsPfx(String s) {
+        int pos = s.indexOf(':');
+        if (pos >= 0 && targetNamespace.equals(prefixMap.get(s.substring(0, pos)))) {
+            return s.substring(pos + 1);
+        }
+        return s;
+    }
+
+    private Optional<String> getMessageElement(String message) {
+        return Optional.ofNullable(message).map(m -> messageElements.get(removeTnsPfx(m)));
+    }
+
+    private QName toQName(String element) {
+        int pos = element.indexOf(':');
+        if (pos < 0) {
+            return new QName(targetNamespace, element, XMLConstants.DEFAULT_NS_PREFIX);
+        }
+        String pfx = element.substring(0, pos);
+        return new QName(prefixMap.get(pfx), element.substring(pos + 1), pfx);
+    }
+
+    private Optional<SoapOperation> resolveOperation(String operationName, BindingOperation binding) {
+        PortTypeOperation portTypeOperation = portTypeOperations.get(operationName);
+        Optional<String> inputElement = Optional.ofNullable(portTypeOperation)
+            .flatMap(op -> getMessageElement(op.inputMessage()));
+        Optional<String> outputElement = Optional.ofNullable(portTypeOperation)
+            .flatMap(op -> getMessageElement(op.outputMessage()));
+        if (inputElement.isEmpty() || outputElement.isEmpty()) {
+            logger.warn("Unable to resolve the request and response elements of operation " + operationName);
+            return Optional.empty();
+        }
+        return Optional.of(new SoapOperation(binding.soapAction(), toQName(inputElement.get()),
+            toQName(outputElement.get()), binding.soapVersion()));
+    }
+}
@@ -6,6 +6,11 @@ import java.util.Iterator;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.io.StringWriter;
 import java.io.StringReader;
 
@@ -13,6 +18,11 @@ import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.xpath.XPathFactory;
 import javax.xml.xpath.XPath;
 import javax.xml.transform.OutputKeys;
@@ -127,6 +137,21 @@ public class XmlTools {
         }
     };
 
+    private static final ThreadLocal<XMLInputFactory> localXMLInputFactory = new ThreadLocal<>() {
+
+        @Override
+        public XMLInputFactory initialValue() {
+            XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+            inputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+            inputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return inputFactory;
+        }
+    };
+
+    private static final ThreadLocal<XMLOutputFactory> localXMLOutputFactory = ThreadLocal.withInitial(XMLOutputFactory::newFactory);
+
     public static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
         return localDocumentBuilderFactory.get().newDocumentBuilder();
     }
@@ -143,6 +168,34 @@ public class XmlTools {
         return localTransformer.get();
     }
 
+    /**
+     * Create a name space aware, coalescing StAX reader. DTDs and external entities are not supported.
+     */
+    public static XMLStreamReader newXMLStreamReader(Reader reader) throws XMLStreamException {
+        return localXMLInputFactory.get().createXMLStreamReader(reader);
+    }
+
+    /**
+     * Create a name space aware, coalescing StAX reader. The character encoding is detected from the XML declaration.
+     */
+    public static XMLStreamReader newXMLStreamReader(InputStream stream) throws XMLStreamException {
+        return localXMLInputFactory.get().createXMLStreamReader(stream);
+    }
+
+    /**
+     * Create a StAX writer. Name spaces are not repaired, the caller must declare them.
+     */
+    public static XMLStreamWriter newXMLStreamWriter(Writer writer) throws XMLStreamException {
+        return localXMLOutputFactory.get().createXMLStreamWriter(writer);
+    }
+
+    /**
+     * Create a StAX writer with UTF-8 encoding. Name spaces are not repaired, the caller must declare them.
+     */
+    public static XMLStreamWriter newXMLStreamWriter(OutputStream stream) throws XMLStreamException {
+        return localXMLOutputFactory.get().createXMLStreamWriter(stream, StandardCharsets.UTF_8.name());
+    }
+
     public static XPath newXPath() {
         XPath x = getXPathFactory().newXPath();
         x.setNamespaceContext(simpleNamespaceCtx);
@@ -240,6 +293,7 @@ public class XmlTools {
     }
 
     public static final String SOAP_ENVELOPE_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    public static final String SOAP12_ENVELOPE_NS = "http://www.w3.org/2003/05/soap-envelope";
 
     /**
      * Extended namespace context for XPATH queries
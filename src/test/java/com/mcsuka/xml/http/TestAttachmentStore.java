@@ -0,0 +1,92 @@
+package com.mcsuka.xml.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class TestAttachmentStore {
+
+    private static MultipartReader.Part part(String contentId, byte[] content) {
+        Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("Content-ID", "<" + contentId + ">");
+        headers.put("Content-Type", "application/pdf");
+        return new MultipartReader.Part(headers, new ByteArrayInputStream(content));
+    }
+
+    @Test
+    public void testStoreAndLink() throws Exception {
+        Path dir = Files.createTempDirectory("attachments").resolve("sub");
+        AttachmentStore store = new AttachmentStore(dir, 60_000);
+        String responseId = store.newResponseId();
+        store.store(responseId, part("doc 1@example.com", new byte[]{1, 2, 3}));
+
+        String link = store.link(responseId, "cid:doc%201@example.com");
+        Assertions.assertTrue(link.startsWith(AttachmentStore.PATH + responseId + "/"));
+        Assertions.assertTrue(link.matches("[A-Za-z0-9/_-]+"));
+        AttachmentStore.Attachment attachment = store.get(link).orElseThrow();
+        Assertions.assertEquals("application/pdf", attachment.contentType());
+        Assertions.assertEquals(3, attachment.size());
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, Files.readAllBytes(attachment.file()));
+
+        Assertions.assertTrue(store.get(store.link(store.newResponseId(), "cid:doc%201@example.com")).isEmpty());
+        Assertions.assertTrue(store.get("/other" + link).isEmpty());
+
+        store.clear();
+        Assertions.assertTrue(store.get(link).isEmpty());
+        Assertions.assertFalse(Files.exists(attachment.file()));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        Path dir = Files.createTempDirectory("attachments");
+        AttachmentStore store = new AttachmentStore(dir, -1);
+        String responseId = store.newResponseId();
+        store.store(responseId, part("a", new byte[]{1}));
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertTrue(store.get(store.link(responseId, "cid:a")).isEmpty());   // removes it
+        Assertions.assertEquals(0, store.size());
+        Assertions.assertEquals(0, store.totalBytes());
+        try (var files = Files.list(dir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+        store.store(responseId, part("b", new byte[]{2}));
+        Assertions.assertEquals(1, store.size());
+        store.clear();
+        try (var files = Files.list(dir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void testMaxBytes() throws Exception {
+        Path dir = Files.createTempDirectory("attachments");
+        AttachmentStore store = new AttachmentStore(dir, 60_000, 20_000);
+        String responseId = store.newResponseId();
+        store.store(responseId, part("a", new byte[12_000]));
+        Assertions.assertEquals(12_000, store.totalBytes());
+
+        Assertions.assertThrows(IOException.class, () -> store.store(responseId, part("b", new byte[10_000])));
+        Assertions.assertEquals(12_000, store.totalBytes());
+        Assertions.assertEquals(1, store.size());
+        Assertions.assertTrue(store.get(store.link(responseId, "cid:b")).isEmpty());
+        try (var files = Files.list(dir)) {
+            Assertions.assertEquals(1, files.count());
+        }
+
+        store.store(responseId, part("c", new byte[8_000]));
+        Assertions.assertEquals(20_000, store.totalBytes());
+        Assertions.assertEquals(8_000, store.get(store.link(responseId, "cid:c")).orElseThrow().size());
+
+        store.clear();
+        Assertions.assertEquals(0, store.totalBytes());
+        try (var files = Files.list(dir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.mcsuka.xml.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class TestMultipartReader {
+
+    /**
+     * Returns at most 7 bytes per read, so that the delimiters are split between reads
+     */
+    private static InputStream trickle(byte[] bytes) {
+        return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 7));
+            }
+        };
+    }
+
+    private static byte[] message(byte[] binary) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(("preamble\r\n--MIME_boundary\r\n"
+            + "Content-Type: application/xop+xml; charset=UTF-8; type=\"text/xml\"\r\n"
+            + "Content-ID: <root.message@example.com>\r\n\r\n"
+            + "<root/>\r\n--MIME_boundary\r\n"
+            + "content-type: image/png\r\n"
+            + "Content-ID: <image1@example.com>\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.write(binary);
+        out.write("\r\n--MIME_boundary--\r\nepilogue".getBytes(StandardCharsets.ISO_8859_1));
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testParts() throws Exception {
+        byte[] binary = new byte[100_000];
+        new Random(42).nextBytes(binary);
+        binary[5000] = '\r';    // a partial delimiter in the content
+        binary[5001] = '\n';
+        binary[5002] = '-';
+        binary[5003] = '-';
+
+        MultipartReader reader = new MultipartReader(trickle(message(binary)), "MIME_boundary");
+        MultipartReader.Part root = reader.nextPart().orElseThrow();
+        Assertions.assertEquals("root.message@example.com", root.contentId());
+        Assertions.assertEquals("<root/>", new String(root.body().readAllBytes(), StandardCharsets.UTF_8));
+
+        MultipartReader.Part image = reader.nextPart().orElseThrow();
+        Assertions.assertEquals("image1@example.com", image.contentId());
+        Assertions.assertEquals("image/png", image.contentType());
+        Assertions.assertArrayEquals(binary, image.body().readAllBytes());
+        Assertions.assertTrue(reader.nextPart().isEmpty());
+        Assertions.assertTrue(reader.nextPart().isEmpty());
+    }
+
+    @Test
+    public void testSkipUnreadPart() throws Exception {
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(message(new byte[]{1, 2, 3})),
+            "MIME_boundary");
+        reader.nextPart().orElseThrow();
+        Assertions.assertArrayEquals(new byte[]{1, 2, 3}, reader.nextPart().orElseThrow().body().readAllBytes());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        byte[] message = message(new byte[1000]);
+        byte[] truncated = new byte[message.length - 40];
+        System.arraycopy(message, 0, truncated, 0, truncated.length);
+        MultipartReader reader = new MultipartReader(new ByteArrayInputStream(truncated), "MIME_boundary");
+        reader.nextPart().orElseThrow();
+        InputStream image = reader.nextPart().orElseThrow().body();
+        Assertions.assertThrows(IOException.class, image::readAllBytes);
+    }
+
+    @Test
+    public void testContentTypeParameters() {
+        String contentType = "multipart/related; type=\"application/xop+xml\"; boundary=\"uuid:a;b\"; "
+            + "start=\"<root.message@cxf.apache.org>\"";
+        Assertions.assertTrue(MultipartReader.isMultipart(contentType));
+        Assertions.assertFalse(MultipartReader.isMultipart("text/xml; charset=UTF-8"));
+        Assertions.assertEquals("uuid:a;b", MultipartReader.getParameter(contentType, "boundary").orElseThrow());
+        Assertions.assertEquals("application/xop+xml", MultipartReader.getParameter(contentType, "TYPE").orElseThrow());
+        Assertions.assertTrue(MultipartReader.getParameter(contentType, "charset").isEmpty());
+    }
+}
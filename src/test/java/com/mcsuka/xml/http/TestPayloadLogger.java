@@ -0,0 +1,116 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.mcsuka.xml.http.SoapServices.*;
+
+public class TestPayloadLogger {
+
+    private static RestRequest restRequest(String body) {
+        NavigableMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("X-Correlation-ID", "abc");
+        return new RestRequest("post", "/order", null, body, headers);
+    }
+
+    @Test
+    public void testTruncate() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        PayloadLogger payloadLogger = new PayloadLogger(new PayloadLogger.Settings(1, 8), 16, lines::add, () -> true);
+        payloadLogger.start();
+        long traceId = payloadLogger.logRestRequest(restRequest("{\"productId\":123}"), null);
+        Assertions.assertTrue(traceId > 0);
+        byte[] envelope = "<Envelope><Body/></Envelope>".getBytes(StandardCharsets.UTF_8);
+        payloadLogger.logSoapRequest(traceId, new SoapRequest(ECommercePost, envelope));
+        byte[] soapResponse = "<Envelope><Body><OK/></Body></Envelope>".getBytes(StandardCharsets.ISO_8859_1);
+        payloadLogger.logSoapResponse(traceId, 200, "text/xml; charset=ISO-8859-1", soapResponse, 8,
+            soapResponse.length);
+        byte[] json = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+        payloadLogger.logRestResponse(traceId, 200, null, json, 8, json.length);
+        payloadLogger.logRestResponse(traceId, 200, "cache", json, 8, 8);
+        payloadLogger.stop();
+
+        Assertions.assertEquals(5, lines.size());
+        Assertions.assertEquals("[" + traceId + "] Received REST Request: URI: post /order Query: null "
+            + "Headers: {X-Correlation-ID=abc} Body: {\"produc... (17 bytes)", lines.get(0));
+        Assertions.assertTrue(lines.get(1).endsWith(" Contents: <Envelop... (28 bytes)"));
+        Assertions.assertEquals("[" + traceId + "] Received SOAP Response: status 200, Content-Type text/xml; "
+            + "charset=ISO-8859-1 Contents: <Envelop... (39 bytes)", lines.get(2));
+        Assertions.assertEquals("[" + traceId + "] Sending REST Response: status 200 Body: {\"ok\":tr... (11 bytes)",
+            lines.get(3));
+        Assertions.assertEquals("[" + traceId + "] Sending REST Response from cache: status 200 Body: {\"ok\":tr",
+            lines.get(4));
+        Assertions.assertEquals(5, payloadLogger.getStats().loggedCount());
+    }
+
+    @Test
+    public void testSampling() throws Exception {
+        List<String> lines = new CopyOnWriteArrayList<>();
+        PayloadLogger payloadLogger = new PayloadLogger(new PayloadLogger.Settings(0, 100), 16, lines::add, () -> true);
+        SoapRestServiceDefinition logged = new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/order",
+            "post",
+            List.of(),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "PlaceOrder",
+            "PlaceOrder",
+            SoapRestServiceDefinition.Options.DEFAULT.withLogSettings(new PayloadLogger.Settings(1, 100)));
+        payloadLogger.start();
+        Assertions.assertEquals(0, payloadLogger.logRestRequest(restRequest("{}"), ECommercePost));
+        Assertions.assertEquals(0, payloadLogger.logRestRequest(restRequest("{}"), null));
+        payloadLogger.logRestResponse(0, 200, null, new byte[0], 0, 0);
+        Assertions.assertTrue(payloadLogger.logRestRequest(restRequest("{}"), logged) > 0);
+        payloadLogger.stop();
+        Assertions.assertEquals(1, lines.size());
+        Assertions.assertTrue(lines.get(0).endsWith("Body: {}"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new PayloadLogger.Settings(1.5, 100));
+    }
+
+    @Test
+    public void testWakeUp() throws Exception {
+        CountDownLatch logged = new CountDownLatch(3);
+        PayloadLogger payloadLogger = new PayloadLogger(new PayloadLogger.Settings(1, 100), 16,
+            line -> logged.countDown(), () -> true);
+        payloadLogger.start();
+        for (int i = 0; i < 3; i++) {
+            Thread.sleep(20);   // the consumer is parked, waiting for the next event
+            payloadLogger.logRestResponse(1, 200, null, new byte[0], 0, 0);
+        }
+        Assertions.assertTrue(logged.await(5, TimeUnit.SECONDS));
+        payloadLogger.stop();
+        Assertions.assertEquals(3, payloadLogger.getStats().loggedCount());
+    }
+
+    @Test
+    public void testDropWhenFull() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        PayloadLogger payloadLogger = new PayloadLogger(new PayloadLogger.Settings(1, 100), 2, line -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, () -> true);
+        Assertions.assertEquals(2, payloadLogger.getBufferSize());
+        payloadLogger.start();
+        for (int i = 0; i < 10; i++) {
+            payloadLogger.logRestResponse(1, 200, null, new byte[0], 0, 0);    // never blocks, although the sink does
+        }
+        blocked.countDown();
+        payloadLogger.stop();
+        PayloadLogger.LogStats stats = payloadLogger.getStats();
+        Assertions.assertEquals(2, stats.loggedCount());
+        Assertions.assertEquals(8, stats.droppedCount());
+    }
+}
@@ -0,0 +1,113 @@
+package com.mcsuka.xml.http;
+
+import org.eclipse.jetty.io.ArrayByteBufferPool;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TestRequestBody {
+
+    /**
+     * Hands out small buffers, so that a body spans several of them, and counts the buffers in use
+     */
+    private static class CountingPool extends ArrayByteBufferPool {
+        private final List<ByteBuffer> inUse = new ArrayList<>();
+        private int acquiredCount;
+        private int maxSize;
+
+        @Override
+        public ByteBuffer acquire(int size, boolean direct) {
+            ByteBuffer buffer = ByteBuffer.allocate(16).limit(0);
+            inUse.add(buffer);
+            acquiredCount++;
+            maxSize = Math.max(maxSize, size);
+            return buffer;
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            Assertions.assertTrue(inUse.removeIf(b -> b == buffer));
+        }
+    }
+
+    private static String readAll(Reader reader) throws Exception {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = reader.read()) >= 0) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testMultipleBuffers() throws Exception {
+        String json = "{\"CustomerName\": \"Zoë Åström\", \"City\": \"Győr\"}";
+        CountingPool pool = new CountingPool();
+        RequestBody body = RequestBody.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), -1,
+            StandardCharsets.UTF_8, pool);
+
+        Assertions.assertTrue(pool.inUse.size() > 3);
+        Assertions.assertEquals(json.getBytes(StandardCharsets.UTF_8).length, body.length());
+        Assertions.assertEquals('{', body.firstByte());
+        Assertions.assertEquals(json, readAll(body.newReader()));
+        Assertions.assertEquals(json, readAll(body.newReader()));
+        Assertions.assertEquals(json, body.toString());
+
+        body.release();
+        Assertions.assertTrue(pool.inUse.isEmpty());
+        Assertions.assertEquals(json, body.toString());
+        Assertions.assertThrows(IllegalStateException.class, body::newReader);
+    }
+
+    @Test
+    public void testCharset() throws Exception {
+        String json = "{\"name\": \"Árvíztűrő\"}";
+        ByteBufferPool pool = new ArrayByteBufferPool();
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_16LE);
+        RequestBody body = RequestBody.read(new ByteArrayInputStream(bytes), bytes.length, StandardCharsets.UTF_16LE, pool);
+        Assertions.assertEquals(json, readAll(body.newReader()));
+        body.release();
+        Assertions.assertEquals("<released>", body.toString());
+    }
+
+    @Test
+    public void testEmptyBody() throws Exception {
+        CountingPool pool = new CountingPool();
+        RequestBody body = RequestBody.read(new ByteArrayInputStream(new byte[0]), 0, StandardCharsets.UTF_8, pool);
+        Assertions.assertEquals(0, body.length());
+        Assertions.assertEquals(-1, body.firstByte());
+        Assertions.assertEquals("", body.toString());
+        body.release();
+        Assertions.assertTrue(pool.inUse.isEmpty());
+    }
+
+    @Test
+    public void testKnownLength() throws Exception {
+        byte[] json = "{\"CustomerName\": \"Zoe\", \"City\": \"Gyor\"}".getBytes(StandardCharsets.UTF_8);
+        CountingPool pool = new CountingPool();
+        RequestBody body = RequestBody.read(new ByteArrayInputStream(json), json.length, StandardCharsets.UTF_8, pool);
+        Assertions.assertEquals(json.length, body.length());
+        // no buffer is taken to find the end of the body
+        Assertions.assertEquals((json.length + 15) / 16, pool.acquiredCount);
+        body.release();
+    }
+
+    @Test
+    public void testContentLengthLargerThanBody() throws Exception {
+        byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+        CountingPool pool = new CountingPool();
+        RequestBody body = RequestBody.read(new ByteArrayInputStream(json), 2_000_000_000, StandardCharsets.UTF_8,
+            pool);
+        Assertions.assertEquals(2, body.length());
+        Assertions.assertTrue(pool.maxSize <= 65536, String.valueOf(pool.maxSize));
+        body.release();
+        Assertions.assertTrue(pool.inUse.isEmpty());
+    }
+}
@@ -0,0 +1,112 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.mcsuka.xml.http.SoapServices.*;
+
+public class TestRequestCoalescer {
+
+    @Test
+    public void testCollapse() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        RequestCoalescer.Call leader = coalescer.begin("a");
+        RequestCoalescer.Call follower = coalescer.begin("a");
+        RequestCoalescer.Call other = coalescer.begin("b");
+        Assertions.assertTrue(leader.isLeader());
+        Assertions.assertFalse(follower.isLeader());
+        Assertions.assertTrue(other.isLeader());
+        Assertions.assertFalse(follower.result().isDone());
+
+        byte[] json = "{}".getBytes(StandardCharsets.UTF_8);
+        leader.complete(new RequestCoalescer.Result(200, json));
+        Assertions.assertSame(json, follower.result().join().json());
+        Assertions.assertTrue(coalescer.begin("a").isLeader());     // the call has ended
+
+        other.fail(new IOException("backend failed"));
+        Assertions.assertThrows(CompletionException.class, () -> other.result().join());
+
+        RequestCoalescer.CoalescerStats stats = coalescer.getStats();
+        Assertions.assertEquals(3, stats.leaderCount());
+        Assertions.assertEquals(1, stats.collapsedCount());
+        Assertions.assertEquals(1, stats.inFlight());
+    }
+
+    @Test
+    public void testAbandon() {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        RequestCoalescer.Call leader = coalescer.begin("a");
+        RequestCoalescer.Call follower = coalescer.begin("a");
+        leader.abandon();
+        Assertions.assertNull(follower.result().join());
+        Assertions.assertEquals(0, coalescer.getStats().inFlight());
+
+        leader.fail(new IOException("too late"));     // no effect
+        Assertions.assertNull(follower.result().join());
+    }
+
+    @Test
+    public void testConcurrentCalls() throws Exception {
+        RequestCoalescer coalescer = new RequestCoalescer();
+        AtomicInteger backendCalls = new AtomicInteger();
+        CountDownLatch allJoined = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> responses = new ArrayList<>();
+            List<RequestCoalescer.Call> calls = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                calls.add(coalescer.begin("key"));
+            }
+            for (RequestCoalescer.Call call : calls) {
+                responses.add(executor.submit(() -> {
+                    if (call.isLeader()) {
+                        backendCalls.incrementAndGet();
+                        allJoined.await();
+                        call.complete(new RequestCoalescer.Result(200, new byte[]{1}));
+                    }
+                    return call.result().get().status();
+                }));
+            }
+            allJoined.countDown();
+            for (Future<Integer> response : responses) {
+                Assertions.assertEquals(200, (int) response.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(1, backendCalls.get());
+        Assertions.assertEquals(7, coalescer.getStats().collapsedCount());
+        Assertions.assertEquals(0, coalescer.getStats().inFlight());
+    }
+
+    @Test
+    public void testReadServicesOnly() throws Exception {
+        Assertions.assertTrue(ECommerceGet.getRequestCoalescer().isEmpty());     // off by default
+        Assertions.assertTrue(coalescingService("get").getRequestCoalescer().isPresent());
+        Assertions.assertTrue(coalescingService("post").getRequestCoalescer().isEmpty());
+    }
+
+    private static SoapRestServiceDefinition coalescingService(String method) throws Exception {
+        return new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/order/{productId}",
+            method,
+            List.of(ProductIdPath),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "GetProduct",
+            "GetProduct",
+            SoapRestServiceDefinition.Options.DEFAULT.withCoalesce(true));
+    }
+}
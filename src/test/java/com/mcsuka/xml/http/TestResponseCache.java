@@ -0,0 +1,99 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import static com.mcsuka.xml.http.SoapServices.*;
+
+public class TestResponseCache {
+
+    private static byte[] json(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static SoapRequest getProduct(Rest2SoapTransformer transformer, String productId) throws Exception {
+        NavigableMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        return transformer.transformRequest(new RestRequest("get", "/order/" + productId, null, null, headers));
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        SoapRestServiceDefinition cachedGet = new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/order/{productId}",
+            "get",
+            List.of(CorrelationIdHeader, ProductIdPath),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "GetProduct",
+            "GetProduct",
+            SoapRestServiceDefinition.Options.DEFAULT
+                .withHeaderSettings(new SoapEnvelopeWriter.HeaderSettings(true, null, null))
+                .withCacheSettings(new ResponseCache.Settings(60_000, 10, 10_000)));
+        Assertions.assertTrue(cachedGet.getResponseCache().isPresent());
+        Assertions.assertTrue(ECommerceGet.getResponseCache().isEmpty());
+
+        Rest2SoapTransformer transformer = new Rest2SoapTransformer(List.of(cachedGet));
+        SoapRequest first = getProduct(transformer, "123");
+        SoapRequest second = getProduct(transformer, "123");
+        Assertions.assertFalse(first.contents().equals(second.contents()));  // different wsa:MessageID
+        Assertions.assertEquals(first.payloadKey(), second.payloadKey());
+        Assertions.assertFalse(first.payloadKey().equals(getProduct(transformer, "124").payloadKey()));
+        Assertions.assertTrue(first.payloadKey().startsWith("get /order/{productId}\n<"));
+    }
+
+    @Test
+    public void testNotCachedPost() throws Exception {
+        SoapRestServiceDefinition post = new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/order",
+            "post",
+            List.of(),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "PlaceOrder",
+            "PlaceOrder",
+            SoapRestServiceDefinition.Options.DEFAULT.withCacheSettings(new ResponseCache.Settings(60_000, 10, 10_000)));
+        Assertions.assertTrue(post.getResponseCache().isEmpty());
+    }
+
+    @Test
+    public void testLimits() {
+        ResponseCache cache = new ResponseCache(new ResponseCache.Settings(60_000, 2, 100));
+        cache.put("a", json("{\"a\":1}"));
+        cache.put("b", json("{\"b\":2}"));
+        Assertions.assertEquals("{\"a\":1}", new String(cache.get("a").orElseThrow(), StandardCharsets.UTF_8));
+        cache.put("c", json("{\"c\":3}"));     // b is the least recently used
+        Assertions.assertTrue(cache.get("b").isEmpty());
+        Assertions.assertTrue(cache.get("a").isPresent());
+        Assertions.assertTrue(cache.get("c").isPresent());
+
+        cache.put("d", new byte[95]);   // a and c are evicted by weight
+        Assertions.assertEquals(1, cache.getStats().size());
+        Assertions.assertEquals(96, cache.getStats().weight());
+        cache.put("e", new byte[100]);  // too heavy to be cached
+        Assertions.assertTrue(cache.get("e").isEmpty());
+        Assertions.assertTrue(cache.get("d").isPresent());
+
+        ResponseCache.CacheStats stats = cache.getStats();
+        Assertions.assertEquals(4, stats.hitCount());
+        Assertions.assertEquals(2, stats.missCount());
+        Assertions.assertEquals(3, stats.evictionCount());
+        cache.clear();
+        Assertions.assertEquals(0, cache.getStats().weight());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        ResponseCache cache = new ResponseCache(new ResponseCache.Settings(1, 10, 1000));
+        cache.put("a", json("{}"));
+        Thread.sleep(5);
+        Assertions.assertTrue(cache.get("a").isEmpty());
+        Assertions.assertEquals(0, cache.getStats().size());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ResponseCache.Settings(0, 10, 1000));
+    }
+}
@@ -0,0 +1,41 @@
+package com.mcsuka.xml.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+public class TestResponseRecorder {
+
+    @Test
+    public void testRecorder() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ResponseRecorder recorder = new ResponseRecorder(out, 10);
+        recorder.write("{\"a\":".getBytes(StandardCharsets.UTF_8));
+        recorder.write('1');
+        recorder.write('}');
+        Assertions.assertEquals("{\"a\":1}", out.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("{\"a\":1}", new String(recorder.getBytes().orElseThrow(), StandardCharsets.UTF_8));
+
+        recorder.write(new byte[4]);    // over the limit
+        Assertions.assertEquals(11, out.size());
+        Assertions.assertTrue(recorder.getBytes().isEmpty());
+        recorder.write('x');
+        Assertions.assertEquals(12, out.size());
+        Assertions.assertTrue(recorder.getBytes().isEmpty());
+    }
+
+    @Test
+    public void testHead() throws Exception {
+        ResponseRecorder recorder = new ResponseRecorder(OutputStream.nullOutputStream(), 0, 4);
+        recorder.write('{');
+        recorder.write("\"a\":1}".getBytes(StandardCharsets.UTF_8));
+        Assertions.assertEquals(7, recorder.getCount());
+        Assertions.assertEquals(4, recorder.getHeadLength());
+        Assertions.assertEquals("{\"a\"", new String(recorder.getHead(), 0, recorder.getHeadLength(),
+            StandardCharsets.UTF_8));
+        Assertions.assertTrue(recorder.getBytes().isEmpty());
+    }
+}
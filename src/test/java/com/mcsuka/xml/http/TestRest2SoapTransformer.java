@@ -1,8 +1,12 @@
 package com.mcsuka.xml.http;
 
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.NavigableMap;
 import java.util.TreeMap;
@@ -106,4 +110,144 @@ public class TestRest2SoapTransformer {
 
         Assertions.assertEquals(500, restResponse.status());
         Assertions.assertEquals(expectedRestResponseBody, restResponse.body());
-    }}
+    }
+
+    @Test
+    public void testPrebuiltTranslators() throws Exception {
+        ECommercePost.warmUp();
+        ECommerceGet.warmUp();
+        Assertions.assertSame(ECommercePost.getRequestTranslator().orElseThrow(), ECommercePost.getRequestTranslator().orElseThrow());
+        Assertions.assertSame(ECommercePost.getResponseTranslator(), ECommercePost.getResponseTranslator());
+    }
+
+    @Test
+    public void testWarmUpSimpleTypedResponse() throws Exception {
+        SoapRestServiceDefinition counter = new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/count",
+            "post",
+            List.of(),
+            new WsdlDocumentSource("file://testdata/input/SimpleResponse.wsdl"),
+            "Count",
+            "Count");
+        Assertions.assertTrue(counter.getResponseSchema().isPresent());
+        counter.warmUp();   // an empty <CountResponse/> is not a valid int, the warm-up is skipped
+
+        Rest2SoapTransformer transformer = new Rest2SoapTransformer(List.of(counter));
+        String soapResponseBody = """
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Body>
+                    <CountResponse xmlns="http://dummy.net/Counter.xsd">42</CountResponse>
+                </SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+        RestResponse restResponse = transformer.transformResponse(counter, new SoapResponse(200, soapResponseBody));
+        Assertions.assertEquals(200, restResponse.status());
+        Assertions.assertTrue(restResponse.body().contains("42"), restResponse.body());
+    }
+
+    private static RestResponse transformStreaming(SoapResponse soapResponse) throws Exception {
+        Rest2SoapTransformer transformer = new Rest2SoapTransformer(List.of(ECommercePost, ECommerceGet));
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        int[] status = { -1 };
+        transformer.transformResponse(ECommercePost, soapResponse.status(),
+            new ByteArrayInputStream(soapResponse.contents().getBytes(StandardCharsets.UTF_8)), json, s -> {
+                Assertions.assertEquals(-1, status[0]);
+                Assertions.assertEquals(0, json.size());
+                status[0] = s;
+            });
+        return new RestResponse(status[0], json.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testStreamingResponse() throws Exception {
+        String productResponse = """
+            <?xml version="1.0" encoding="UTF-8"?>
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Header><trace>1</trace></SOAP-ENV:Header>
+                <SOAP-ENV:Body>
+                    <Product xmlns="http://example.com/ecommerce/schema">
+                        <ProductId>31415</ProductId>
+                        <ProductName>Fidget Spinner &amp; Co</ProductName>
+                        <Price>13.14</Price>
+                    </Product>
+                </SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+        String faultResponse = """
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Body>
+                    <SOAP-ENV:Fault>
+                        <faultcode>SOAP-ENV:Client</faultcode>
+                        <faultstring>Forbidden</faultstring>
+                    </SOAP-ENV:Fault>
+                </SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+        String emptyProduct = """
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Body><Product xmlns="http://example.com/ecommerce/schema"/></SOAP-ENV:Body>
+            </SOAP-ENV:Envelope>
+            """;
+        Rest2SoapTransformer transformer = new Rest2SoapTransformer(List.of(ECommercePost, ECommerceGet));
+        for (SoapResponse soapResponse : List.of(new SoapResponse(200, productResponse),
+                new SoapResponse(500, faultResponse), new SoapResponse(200, emptyProduct))) {
+            Assertions.assertEquals(transformer.transformResponse(ECommercePost, soapResponse),
+                transformStreaming(soapResponse));
+        }
+
+        String emptyBody = """
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Body/>
+            </SOAP-ENV:Envelope>
+            """;
+        Assertions.assertEquals(new RestResponse(404, "{}"), transformStreaming(new SoapResponse(200, emptyBody)));
+    }
+
+    @Test
+    public void testStreamingResponseTruncated() {
+        String truncated = """
+            <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+                <SOAP-ENV:Body>
+                    <Product xmlns="http://example.com/ecommerce/schema">
+                        <ProductId>31415</ProductId>
+                    </Product>
+                </SOAP-ENV:Body>
+            """;
+        Assertions.assertThrows(Exception.class, () -> transformStreaming(new SoapResponse(200, truncated)));
+    }
+
+    @Test
+    public void testXopResponse() throws Exception {
+        String xopResponse = """
+            <soap:Envelope xmlns:soap="http://www.w3.org/2003/05/soap-envelope">
+                <soap:Body>
+                    <Product xmlns="http://example.com/ecommerce/schema">
+                        <ProductId>31415</ProductId>
+                        <ProductName><xop:Include xmlns:xop="http://www.w3.org/2004/08/xop/include"
+                            href="cid:name@example.com"/></ProductName>
+                    </Product>
+                </soap:Body>
+            </soap:Envelope>
+            """;
+        String inlineResponse = """
+            <soap:Envelope xmlns:soap="http://www.w3.org/2003/05/soap-envelope">
+                <soap:Body>
+                    <Product xmlns="http://example.com/ecommerce/schema">
+                        <ProductId>31415</ProductId>
+                        <ProductName>/attachments/name@example.com</ProductName>
+                    </Product>
+                </soap:Body>
+            </soap:Envelope>
+            """;
+        Rest2SoapTransformer transformer = new Rest2SoapTransformer(List.of(ECommercePost, ECommerceGet));
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        int[] status = { -1 };
+        transformer.transformResponse(ECommercePost, 200,
+            new ByteArrayInputStream(xopResponse.getBytes(StandardCharsets.UTF_8)), json, s -> status[0] = s,
+            href -> "/attachments/" + href.substring(4));
+        RestResponse expected = transformer.transformResponse(ECommercePost, new SoapResponse(200, inlineResponse));
+        Assertions.assertEquals(expected, new RestResponse(status[0], json.toString(StandardCharsets.UTF_8)));
+        Assertions.assertTrue(expected.body().contains("/attachments/name@example.com"));
+    }
+}
@@ -0,0 +1,99 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.mcsuka.xml.http.SoapServices.*;
+
+public class TestRestRouter {
+
+    private static SoapRestServiceDefinition getProduct(String restPath) throws Exception {
+        return new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            restPath,
+            "get",
+            List.of(),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "GetProduct",
+            "GetProduct");
+    }
+
+    @Test
+    public void testRoute() {
+        RestRouter router = new RestRouter(List.of(OneService, ECommercePost, ECommerceGet));
+
+        RestRouter.Route route = router.route("get", "/order/123456").orElseThrow();
+        Assertions.assertEquals(ECommerceGet, route.serviceDef());
+        Assertions.assertEquals(Map.of("productId", "123456"), route.pathParams());
+
+        route = router.route("post", "/order").orElseThrow();
+        Assertions.assertEquals(ECommercePost, route.serviceDef());
+        Assertions.assertEquals(Map.of(), route.pathParams());
+
+        Assertions.assertEquals(OneService, router.route("post", "/oneservice").orElseThrow().serviceDef());
+    }
+
+    @Test
+    public void testNoRoute() {
+        RestRouter router = new RestRouter(List.of(OneService, ECommercePost, ECommerceGet));
+
+        Assertions.assertTrue(router.route("delete", "/order/123456").isEmpty());
+        Assertions.assertTrue(router.route("get", "/order").isEmpty());
+        Assertions.assertTrue(router.route("get", "/order/").isEmpty());
+        Assertions.assertTrue(router.route("get", "/order/123-456").isEmpty());
+        Assertions.assertTrue(router.route("get", "/order/123456/").isEmpty());
+        Assertions.assertTrue(router.route("post", "/order/123456").isEmpty());
+    }
+
+    @Test
+    public void testLiteralSegmentWins() throws Exception {
+        SoapRestServiceDefinition latest = getProduct("/order/latest");
+        SoapRestServiceDefinition item = getProduct("/order/{orderId}/item/{itemId}");
+        SoapRestServiceDefinition latestItem = getProduct("/order/latest/item/{itemId}");
+
+        for (List<SoapRestServiceDefinition> serviceDefs : List.of(List.of(latest, ECommerceGet, item, latestItem),
+            List.of(ECommerceGet, latest, item, latestItem), List.of(item, latestItem, ECommerceGet, latest))) {
+            RestRouter router = new RestRouter(serviceDefs);
+            Assertions.assertEquals(latest, router.route("get", "/order/latest").orElseThrow().serviceDef());
+            Assertions.assertEquals(ECommerceGet, router.route("get", "/order/oldest").orElseThrow().serviceDef());
+            RestRouter.Route route = router.route("get", "/order/latest/item/7").orElseThrow();
+            Assertions.assertEquals(latestItem, route.serviceDef());
+            Assertions.assertEquals(Map.of("itemId", "7"), route.pathParams());
+            route = router.route("get", "/order/oldest/item/7").orElseThrow();
+            Assertions.assertEquals(item, route.serviceDef());
+            Assertions.assertEquals(Map.of("orderId", "oldest", "itemId", "7"), route.pathParams());
+        }
+    }
+
+    @Test
+    public void testOverlappingTemplates() throws Exception {
+        SoapRestServiceDefinition xc = getProduct("/a/{x}/c");
+        SoapRestServiceDefinition by = getProduct("/a/b/{y}");
+        SoapRestServiceDefinition bydz = getProduct("/a/b/{y}/d/{z}");
+        SoapRestServiceDefinition xcd = getProduct("/a/{x}/c/d");
+        RestRouter router = new RestRouter(List.of(xc, by, bydz, xcd));
+
+        RestRouter.Route route = router.route("get", "/a/b/c").orElseThrow();
+        Assertions.assertEquals(by, route.serviceDef());
+        Assertions.assertEquals(Map.of("y", "c"), route.pathParams());
+        route = router.route("get", "/a/q/c").orElseThrow();
+        Assertions.assertEquals(xc, route.serviceDef());
+        Assertions.assertEquals(Map.of("x", "q"), route.pathParams());
+        Assertions.assertEquals(bydz, router.route("get", "/a/b/c/d/e").orElseThrow().serviceDef());
+        // /a/b/{y}/d is a prefix of a route, but not a route itself
+        route = router.route("get", "/a/b/c/d").orElseThrow();
+        Assertions.assertEquals(xcd, route.serviceDef());
+        Assertions.assertEquals(Map.of("x", "b"), route.pathParams());
+        Assertions.assertTrue(router.route("get", "/a/q/d").isEmpty());
+
+        SoapRestServiceDefinition first = getProduct("/a/{p}/c");
+        router = new RestRouter(List.of(first, xc));
+        route = router.route("get", "/a/b/c").orElseThrow();
+        Assertions.assertEquals(first, route.serviceDef());
+        Assertions.assertEquals(Map.of("p", "b"), route.pathParams());
+    }
+}
@@ -0,0 +1,123 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.StringReader;
+
+public class TestSoapEnvelope {
+
+    private static final String RESPONSE = """
+        <soap:Envelope xmlns:soap="http://schemas.xmlsoap.org/soap/envelope/">
+            <!-- comment -->
+            <soap:Header>
+                <trace xmlns="urn:trace">1</trace>
+                <user xmlns="urn:trace">admin</user>
+            </soap:Header>
+            <soap:Body>
+                <Product xmlns="http://example.com/ecommerce/schema"><ProductId>31415</ProductId></Product>
+            </soap:Body>
+        </soap:Envelope>
+        """;
+
+    private static final String FAULT = """
+        <SOAP-ENV:Envelope xmlns:SOAP-ENV="http://schemas.xmlsoap.org/soap/envelope/">
+            <SOAP-ENV:Body>
+                <SOAP-ENV:Fault>
+                    <faultcode>SOAP-ENV:Client</faultcode>
+                    <faultstring> Forbidden </faultstring>
+                    <detail><code>9876543</code></detail>
+                </SOAP-ENV:Fault>
+            </SOAP-ENV:Body>
+        </SOAP-ENV:Envelope>
+        """;
+
+    private static final String FAULT12 = """
+        <env:Envelope xmlns:env="http://www.w3.org/2003/05/soap-envelope">
+            <env:Body>
+                <env:Fault>
+                    <env:Code><env:Value>env:Sender</env:Value></env:Code>
+                    <env:Reason><env:Text xml:lang="en">Forbidden</env:Text></env:Reason>
+                    <env:Role>urn:gateway</env:Role>
+                    <env:Detail><code>9876543</code></env:Detail>
+                </env:Fault>
+            </env:Body>
+        </env:Envelope>
+        """;
+
+    @Test
+    public void testEnvelope() throws Exception {
+        SoapEnvelope envelope = SoapEnvelope.read(XmlTools.parseXML(RESPONSE)).orElseThrow();
+        Assertions.assertEquals(2, envelope.getHeaderEntries().size());
+        Assertions.assertEquals("user", envelope.getHeaderEntries().get(1).getLocalName());
+        Assertions.assertEquals("Body", envelope.getBody().getLocalName());
+        Assertions.assertEquals("Product", envelope.getPayload().orElseThrow().getLocalName());
+        Assertions.assertFalse(envelope.isFault());
+        Assertions.assertTrue(envelope.getFault().isEmpty());
+    }
+
+    @Test
+    public void testFault() throws Exception {
+        SoapEnvelope envelope = SoapEnvelope.read(XmlTools.parseXML(FAULT)).orElseThrow();
+        Assertions.assertTrue(envelope.getHeader().isEmpty());
+        Assertions.assertTrue(envelope.isFault());
+        SoapEnvelope.SoapFault fault = envelope.getFault().orElseThrow();
+        Assertions.assertEquals("SOAP-ENV:Client", fault.code());
+        Assertions.assertEquals("Forbidden", fault.reason());
+        Assertions.assertNull(fault.actor());
+        Element detail = fault.detail();
+        Assertions.assertEquals("9876543", detail.getTextContent());
+    }
+
+    @Test
+    public void testSoap12Fault() throws Exception {
+        SoapEnvelope envelope = SoapEnvelope.read(XmlTools.parseXML(FAULT12)).orElseThrow();
+        Assertions.assertEquals(SoapVersion.SOAP_12, envelope.getVersion());
+        SoapEnvelope.SoapFault fault = envelope.getFault().orElseThrow();
+        Assertions.assertEquals("env:Sender", fault.code());
+        Assertions.assertEquals("Forbidden", fault.reason());
+        Assertions.assertEquals("urn:gateway", fault.actor());
+        Assertions.assertEquals("9876543", fault.detail().getTextContent());
+
+        XMLStreamReader reader = XmlTools.newXMLStreamReader(new StringReader(FAULT12));
+        Assertions.assertTrue(SoapEnvelope.moveToBodyContent(reader));
+        Assertions.assertEquals("Fault", reader.getLocalName());
+    }
+
+    @Test
+    public void testNotAnEnvelope() throws Exception {
+        Assertions.assertTrue(SoapEnvelope.read(XmlTools.parseXML("<Envelope><Body><a/></Body></Envelope>")).isEmpty());
+        Assertions.assertTrue(SoapEnvelope.read(XmlTools.parseXML(
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"/>")).isEmpty());
+        SoapEnvelope empty = SoapEnvelope.read(XmlTools.parseXML(
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body/></s:Envelope>")).orElseThrow();
+        Assertions.assertTrue(empty.getPayload().isEmpty());
+    }
+
+    @Test
+    public void testMoveToBodyContent() throws Exception {
+        XMLStreamReader reader = XmlTools.newXMLStreamReader(new StringReader(RESPONSE));
+        Assertions.assertTrue(SoapEnvelope.moveToBodyContent(reader));
+        Assertions.assertEquals(XMLStreamConstants.START_ELEMENT, reader.getEventType());
+        Assertions.assertEquals("Product", reader.getLocalName());
+
+        reader = XmlTools.newXMLStreamReader(new StringReader(
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Body> </s:Body></s:Envelope>"));
+        Assertions.assertTrue(SoapEnvelope.moveToBodyContent(reader));
+        Assertions.assertEquals(XMLStreamConstants.END_ELEMENT, reader.getEventType());
+
+        reader = XmlTools.newXMLStreamReader(new StringReader("<Product><ProductId>1</ProductId></Product>"));
+        Assertions.assertFalse(SoapEnvelope.moveToBodyContent(reader));
+        Assertions.assertEquals("Product", reader.getLocalName());
+
+        XMLStreamReader noBody = XmlTools.newXMLStreamReader(new StringReader(
+            "<s:Envelope xmlns:s=\"http://schemas.xmlsoap.org/soap/envelope/\"><s:Header/></s:Envelope>"));
+        Assertions.assertThrows(XMLStreamException.class, () -> SoapEnvelope.moveToBodyContent(noBody));
+    }
+}
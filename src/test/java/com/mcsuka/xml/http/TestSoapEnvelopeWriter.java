@@ -0,0 +1,81 @@
+package com.mcsuka.xml.http;
+
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import com.mcsuka.xml.xsd.tools.XmlTools;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Element;
+
+import javax.xml.namespace.QName;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+public class TestSoapEnvelopeWriter {
+
+    private static String write(SoapEnvelopeWriter writer, RestRequest restRequest) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeStart(out, restRequest);
+        out.write("<a xmlns=\"urn:a\">1</a>".getBytes(StandardCharsets.UTF_8));
+        writer.writeEnd(out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static RestRequest request(String trackingId) {
+        NavigableMap<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        if (trackingId != null) {
+            headers.put("X-Tracking-Id", trackingId);
+        }
+        return new RestRequest("get", "/", null, null, headers);
+    }
+
+    @Test
+    public void testNoHeaders() throws Exception {
+        Assertions.assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><SOAP-ENV:Envelope "
+            + "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"><SOAP-ENV:Body><a xmlns=\"urn:a\">1</a>"
+            + "</SOAP-ENV:Body></SOAP-ENV:Envelope>", write(new SoapEnvelopeWriter(), request("t-1")));
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        SoapEnvelopeWriter writer = new SoapEnvelopeWriter(SoapVersion.SOAP_12, "urn:getProduct", "http://host/soap?a=1&b=2",
+            new SoapEnvelopeWriter.HeaderSettings(true, "x-tracking-id", QName.valueOf("{urn:trk}TrackingId")));
+
+        SoapEnvelope envelope = SoapEnvelope.read(XmlTools.parseXML(write(writer, request("<t&1>")))).orElseThrow();
+        Assertions.assertEquals(SoapVersion.SOAP_12, envelope.getVersion());
+        List<Element> headers = envelope.getHeaderEntries();
+        Assertions.assertEquals(List.of("Action", "To", "MessageID", "TrackingId"),
+            headers.stream().map(Element::getLocalName).toList());
+        Assertions.assertEquals(SoapEnvelopeWriter.WS_ADDRESSING_NS, headers.getFirst().getNamespaceURI());
+        Assertions.assertEquals("urn:getProduct", headers.get(0).getTextContent());
+        Assertions.assertEquals("http://host/soap?a=1&b=2", headers.get(1).getTextContent());
+        Assertions.assertTrue(headers.get(2).getTextContent().startsWith("urn:uuid:"));
+        Assertions.assertEquals("urn:trk", headers.get(3).getNamespaceURI());
+        Assertions.assertEquals("<t&1>", headers.get(3).getTextContent());
+        Assertions.assertEquals("a", envelope.getPayload().orElseThrow().getLocalName());
+
+        SoapEnvelope second = SoapEnvelope.read(XmlTools.parseXML(write(writer, request(null)))).orElseThrow();
+        Assertions.assertEquals(3, second.getHeaderEntries().size());
+        Assertions.assertFalse(headers.get(2).getTextContent().equals(second.getHeaderEntries().get(2).getTextContent()));
+    }
+
+    @Test
+    public void testUnqualifiedTrackingElement() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+            () -> new SoapEnvelopeWriter.HeaderSettings(false, "X-Tracking-Id", new QName("TrackingId")));
+    }
+
+    @Test
+    public void testInvalidTrackingElement() {
+        for (String name : List.of("", "1Id", "trk:Id", "Id\"><x", "Tracking Id")) {
+            Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SoapEnvelopeWriter.HeaderSettings(false, "X-Tracking-Id", new QName("urn:trk", name)));
+        }
+        for (String name : List.of("Id", "_tracking-id.1", "Azonos\u00EDt\u00F3")) {
+            Assertions.assertEquals(name, new SoapEnvelopeWriter.HeaderSettings(false, "X-Tracking-Id",
+                new QName("urn:trk", name)).trackingElement().getLocalPart());
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.mcsuka.xml.http;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+public class TestStaticContent {
+
+    private static byte[] json(int repeat) {
+        return ("[" + "{\"name\":\"value\"},".repeat(repeat) + "{}]").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        byte[] content = json(100);
+        StaticContent staticContent = new StaticContent(content, "application/json", 1024);
+        Assertions.assertNotNull(staticContent.getGzipped());
+        Assertions.assertTrue(staticContent.getGzipped().length < content.length / 10);
+        try (GZIPInputStream gunzip = new GZIPInputStream(new ByteArrayInputStream(staticContent.getGzipped()))) {
+            Assertions.assertArrayEquals(content, gunzip.readAllBytes());
+        }
+
+        Assertions.assertNull(new StaticContent(json(10), "application/json", 1024).getGzipped());   // too small
+        Assertions.assertNull(new StaticContent(content, "application/json", -1).getGzipped());      // disabled
+        Assertions.assertNull(new StaticContent(new byte[0], "application/json", 0).getGzipped());   // not smaller
+    }
+
+    @Test
+    public void testEtag() {
+        StaticContent staticContent = new StaticContent(json(100), "application/json", 1024);
+        String etag = staticContent.getEtag();
+        Assertions.assertTrue(etag.matches("^\"[A-Za-z0-9_-]{24}\"$"), etag);
+        Assertions.assertEquals(etag, new StaticContent(json(100), "application/json", -1).getEtag());
+        Assertions.assertFalse(etag.equals(new StaticContent(json(101), "application/json", 1024).getEtag()));
+
+        Assertions.assertTrue(staticContent.isNotModified(etag));
+        Assertions.assertTrue(staticContent.isNotModified("\"other\", " + etag));
+        String gzipEtag = etag.substring(0, etag.length() - 1) + "--gzip\"";  // ETag of the gzipped variant
+        Assertions.assertTrue(staticContent.isNotModified(gzipEtag));
+        Assertions.assertTrue(staticContent.isNotModified("*"));
+        Assertions.assertFalse(staticContent.isNotModified("\"other\""));
+        Assertions.assertFalse(staticContent.isNotModified(null));
+    }
+
+    @Test
+    public void testAcceptsGzip() {
+        Assertions.assertTrue(StaticContent.acceptsGzip("gzip, deflate, br"));
+        Assertions.assertTrue(StaticContent.acceptsGzip("br;q=1.0, GZIP;q=0.5"));
+        Assertions.assertTrue(StaticContent.acceptsGzip("*"));
+        Assertions.assertFalse(StaticContent.acceptsGzip("gzip;q=0, deflate"));
+        Assertions.assertFalse(StaticContent.acceptsGzip("identity"));
+        Assertions.assertFalse(StaticContent.acceptsGzip(null));
+    }
+}
@@ -0,0 +1,128 @@
+package com.mcsuka.xml.json;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.jupiter.api.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.model.SchemaParser;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
+import com.mcsuka.xml.testtools.GenericTools;
+
+public class TestStreamingXml2Json {
+
+    private static final Gson GSON = new GsonBuilder()
+            .setPrettyPrinting()
+            .create();
+
+    private static String translate(StreamingXml2Json xml2json, String xml) throws Exception {
+        StringWriter sw = new StringWriter();
+        xml2json.translate(new StringReader(xml), sw);
+        return GSON.toJson(JsonParser.parseString(sw.toString()));
+    }
+
+    private static String xml2json(String xmlFileName, boolean ignoreAttributes) throws Exception {
+        String xmlFile = GenericTools.getResourceFile(xmlFileName);
+        return translate(new StreamingXml2Json(ignoreAttributes), xmlFile);
+    }
+
+    private static String xml2jsonNs(String xsdFileName, String rootElem, String xmlFileName, boolean ignoreAttributes) throws Exception {
+        String xmlFile = GenericTools.getResourceFile(xmlFileName);
+        SchemaParser model = SchemaParserFactory.newSchemaParser(xsdFileName, new XsdDocumentSource());
+        SchemaNode grammar = model.parse(rootElem);
+        return translate(new StreamingXml2Json(ignoreAttributes, grammar), xmlFile);
+    }
+
+    @Test
+    public void testXml2JsonNoxsdNoattribute() throws Exception {
+        String actual = xml2json("testdata/input/Xml2JsonNoxsdNoattribute.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonNoxsdNoattribute.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdNoattribute() throws Exception {
+        String actual = xml2jsonNs("testdata/input/Simple.xsd", "root2", "testdata/input/Xml2JsonXsdNoattribute.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonXsdNoattribute.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdAttribute() throws Exception {
+        String actual = xml2jsonNs("testdata/input/Simple.xsd", "root3", "testdata/input/Xml2JsonXsdAttribute.xml", false);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonXsdAttribute.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdAttribute2() throws Exception {
+        String actual = xml2jsonNs("testdata/input/Simple.xsd", "root2", "testdata/input/Xml2JsonXsdAttribute2.xml", false);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonXsdAttribute2.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdArray() throws Exception {
+        String actual = xml2jsonNs("testdata/input/Array.xsd", "root", "testdata/input/Xml2JsonXsdArray.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonXsdArray.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonNoxsdArray() throws Exception {
+        String actual = xml2json("testdata/input/Xml2JsonNoxsdArray.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonNoxsdArray.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonNoxsdScalarArray() throws Exception {
+        String actual = xml2json("testdata/input/Xml2JsonNoxsdScalarArray.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonNoxsdScalarArray.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonNoxsdChildArray() throws Exception {
+        String actual = xml2json("testdata/input/Xml2JsonNoxsdChildArray.xml", true);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonNoxsdChildArray.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdScalar() throws Exception {
+        String actual = xml2jsonNs("testdata/input/Scalar.xsd", "root", "testdata/input/Xml2JsonNoxsdScalar.xml", false);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonXsdScalar.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonNoxsdScalar() throws Exception {
+        String actual = xml2json("testdata/input/Xml2JsonNoxsdScalar.xml", false);
+        String expected = GenericTools.getResourceFile("testdata/output/Xml2JsonNoxsdScalar.json");
+        GenericTools.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testXml2JsonXsdLargeArray() throws Exception {
+        SchemaParser model = SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource());
+        SchemaNode grammar = model.parse("root2");
+        StringBuilder xml = new StringBuilder("<ns0:root2 xmlns:ns0=\"http://dummy.org/1231312\"><address>")
+            .append("<street>strt</street><houseNumber>1</houseNumber><postCode>zip</postCode><city>cty</city>")
+            .append("<ns0:municipality x=\"x\">true</ns0:municipality>");
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<address><street>s").append(i).append("</street><houseNumber>").append(i)
+                .append("</houseNumber><postCode>zip</postCode><city>cty</city></address>");
+        }
+        xml.append("</address></ns0:root2>");
+
+        String expected = GSON.toJson(new Xml2Json(true, grammar).translate(xml.toString()));
+        String actual = translate(new StreamingXml2Json(true, grammar), xml.toString());
+        GenericTools.assertEquals(expected, actual);
+    }
+}
@@ -0,0 +1,82 @@
+package com.mcsuka.xml.json;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.mcsuka.xml.xsd.model.SchemaNode;
+import com.mcsuka.xml.xsd.model.SchemaParserFactory;
+import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
+
+public class TestTranslationPlan {
+
+    private static SchemaNode parse(String xsdFileName, String rootElem) throws Exception {
+        return SchemaParserFactory.newSchemaParser(xsdFileName, new XsdDocumentSource()).parse(rootElem);
+    }
+
+    private static void assertSameModel(SchemaNode xsdNode, TranslationPlan.Node node) {
+        Assertions.assertEquals(xsdNode.getElementName(), node.getElementName(), xsdNode.getPath());
+        Assertions.assertEquals(xsdNode.getIndicator(), node.getIndicator(), xsdNode.getPath());
+        Assertions.assertEquals(xsdNode.getW3CType(), node.getW3CType(), xsdNode.getPath());
+        Assertions.assertEquals(xsdNode.isLeaf(), node.isLeaf(), xsdNode.getPath());
+        Assertions.assertEquals(xsdNode.getOptionalValue(), node.getOptionalValue(), xsdNode.getPath());
+        Assertions.assertEquals(xsdNode.getChildren().size(), node.getChildren().size(), xsdNode.getPath());
+        if (!xsdNode.isRecursive()) {
+            for (int i = 0; i < xsdNode.getChildren().size(); i++) {
+                SchemaNode xsdChild = xsdNode.getChildren().get(i);
+                assertSameModel(xsdChild, node.getChildren().get(i));
+                if (!xsdNode.isIndicator() && !xsdChild.isIndicator()) {
+                    Assertions.assertEquals(xsdNode.getChild(xsdChild.getElementName()).getPath(),
+                        xsdNode.getPath() + "/" + node.getChild(xsdChild.getElementName()).getElementName());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSimpleRoot2() throws Exception {
+        SchemaNode grammar = parse("testdata/input/Simple.xsd", "root2");
+        TranslationPlan plan = TranslationPlan.compile(grammar);
+        assertSameModel(grammar, plan.getRoot());
+        Assertions.assertEquals("ns0:root2", plan.getRoot().getQualifiedName());
+        Assertions.assertNull(plan.getRoot().getChild("unknown"));
+    }
+
+    @Test
+    public void testChildLookupThroughIndicators() throws Exception {
+        SchemaNode grammar = parse("testdata/input/Choice.xsd", "root");
+        TranslationPlan plan = TranslationPlan.compile(grammar);
+        assertSameModel(grammar, plan.getRoot());
+        assertChildrenFound(grammar, plan.getRoot());
+    }
+
+    private static void assertChildrenFound(SchemaNode xsdNode, TranslationPlan.Node root) {
+        for (SchemaNode child : xsdNode.getChildren()) {
+            if (child.isIndicator()) {
+                assertChildrenFound(child, root);
+            } else {
+                Assertions.assertEquals(child.getElementName(), root.getChild(child.getElementName()).getElementName());
+            }
+        }
+    }
+
+    @Test
+    public void testRecursiveDefinition() throws Exception {
+        SchemaNode grammar = parse("testdata/input/Simple.xsd", "root2");
+        TranslationPlan plan = TranslationPlan.compile(grammar);
+        TranslationPlan.Node address = plan.getRoot().getChild("address");
+        TranslationPlan.Node nested = address.getChild("address");
+        Assertions.assertNotNull(nested);
+        Assertions.assertTrue(nested.isLeaf());
+        Assertions.assertEquals(address.getChildren(), nested.getChildren());
+        Assertions.assertSame(nested, nested.getChild("address"));
+    }
+
+    @Test
+    public void testConverters() throws Exception {
+        SchemaNode grammar = parse("testdata/input/Simple.xsd", "root3");
+        TranslationPlan.Node address = TranslationPlan.compile(grammar).getRoot().getChild("address");
+        Assertions.assertEquals(12, address.getChild("houseNumber").toJsonValue("12").getAsInt());
+        Assertions.assertEquals("12", address.getChild("street").toJsonValue("12").getAsString());
+        Assertions.assertTrue(address.getChild("info").toJsonValue("x").isJsonNull());
+    }
+}
@@ -0,0 +1,129 @@
+package com.mcsuka.xml.proxy;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+public class TestBackendPools {
+
+    private static void addService(Properties props, String name, String targetUrl) {
+        String prefix = "rest2soap.service." + name;
+        props.setProperty(prefix + ".targetUrl", targetUrl);
+        props.setProperty(prefix + ".restPath", "/" + name + "/{productId}");
+        props.setProperty(prefix + ".restMethod", "get");
+        props.setProperty(prefix + ".paramList", "productId");
+        props.setProperty(prefix + ".wsdlUrl", "file://testdata/input/eCommerce.wsdl");
+        props.setProperty(prefix + ".operationName", "GetProduct");
+        props.setProperty(prefix + ".description", "GetProduct");
+    }
+
+    @Test
+    public void testDestinationOf() {
+        Assertions.assertEquals("http://localhost:9090", BackendPools.destinationOf("http://LocalHost:9090/soap"));
+        Assertions.assertEquals("http://localhost:80", BackendPools.destinationOf("http://localhost/soap"));
+        Assertions.assertEquals("https://localhost:443", BackendPools.destinationOf("HTTPS://localhost/soap"));
+    }
+
+    @Test
+    public void testMerge() {
+        BackendPools.DestinationSettings small = new BackendPools.DestinationSettings(4, false);
+        BackendPools.DestinationSettings large = new BackendPools.DestinationSettings(8, false);
+        BackendPools.DestinationSettings h2c = new BackendPools.DestinationSettings(0, true);
+        Assertions.assertEquals(new BackendPools.DestinationSettings(8, false), small.merge(large));
+        Assertions.assertEquals(new BackendPools.DestinationSettings(8, false), large.merge(small));
+        Assertions.assertEquals(new BackendPools.DestinationSettings(4, true), small.merge(h2c));
+        Assertions.assertEquals(new BackendPools.DestinationSettings(4, true), h2c.merge(small));
+    }
+
+    @Test
+    public void testDestinations() {
+        Properties props = new Properties();
+        addService(props, "small", "http://backend:9090/small");
+        props.setProperty("rest2soap.service.small.maxConnections", "4");
+        addService(props, "large", "http://Backend:9090/large");
+        props.setProperty("rest2soap.service.large.maxConnections", "8");
+        addService(props, "h2c", "http://backend:9090/h2c");
+        props.setProperty("rest2soap.service.h2c.http2", "true");
+        addService(props, "other", "https://other/soap");
+        addService(props, "otherH2c", "http://other:9091/soap");
+        props.setProperty("rest2soap.service.otherH2c.http2", "true");
+        props.setProperty("rest2soap.service.otherH2c.maxConnections", "-1");
+
+        Map<String, BackendPools.DestinationSettings> destinations = ProxySettings.destinations(props, 64);
+        Assertions.assertEquals(Map.of(
+            "http://backend:9090", new BackendPools.DestinationSettings(8, true),
+            "https://other:443", new BackendPools.DestinationSettings(64, false),
+            "http://other:9091", new BackendPools.DestinationSettings(64, true)), destinations);
+    }
+
+    private static final class OkHandler extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) {
+            baseRequest.setHandled(true);
+            response.setStatus(200);
+        }
+    }
+
+    private static Server startServer() throws Exception {
+        Server server = new Server(0);
+        server.setHandler(new OkHandler());
+        server.start();
+        return server;
+    }
+
+    private static int portOf(Server server) {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @Test
+    public void testNewTransport() throws Exception {
+        Server configured = startServer();
+        Server unconfigured = startServer();
+        HttpClient client = null;
+        try {
+            Properties props = new Properties();
+            props.setProperty("client.maxConnectionsPerDestination", "5");
+            props.setProperty("rest.params.productId.name", "productId");
+            props.setProperty("rest.params.productId.paramType", "path");
+            props.setProperty("rest.params.productId.oasTypeDef", "type:string");
+            props.setProperty("rest.params.productId.jsonPath", "ProductId");
+            addService(props, "configured", "http://localhost:" + portOf(configured) + "/soap");
+            props.setProperty("rest2soap.service.configured.maxConnections", "3");
+            ProxySettings settings = ProxySettings.propsToSettings(props);
+            Assertions.assertEquals(Map.of("http://localhost:" + portOf(configured),
+                new BackendPools.DestinationSettings(3, false)), settings.destinations());
+            Assertions.assertTrue(BackendPools.http2Destinations(settings).isEmpty());
+
+            client = new HttpClient(BackendPools.newTransport(settings));
+            client.start();
+            Assertions.assertEquals(200, client.GET("http://localhost:" + portOf(configured) + "/soap").getStatus());
+            Assertions.assertEquals(200, client.GET("http://localhost:" + portOf(unconfigured) + "/").getStatus());
+
+            List<BackendPools.PoolStats> stats = BackendPools.getStats(client);
+            Assertions.assertEquals(2, stats.size());
+            for (BackendPools.PoolStats pool : stats) {
+                int expected = pool.destination().equals("http://localhost:" + portOf(configured)) ? 3 : 5;
+                Assertions.assertEquals(expected, pool.maxConnections(), pool.destination());
+                Assertions.assertEquals(1, pool.connections(), pool.destination());
+            }
+        } finally {
+            if (client != null) {
+                client.stop();
+            }
+            configured.stop();
+            unconfigured.stop();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.mcsuka.xml.proxy;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class TestClientHandler {
+
+    private static final Pattern PRODUCT_ID = Pattern.compile("ProductId>([^<]*)<");
+
+    /**
+     * SOAP backend of GetProduct, it answers after a delay. It aborts the connection instead, if the product ID starts
+     * with "fail". If it starts with "slow", the headers and the start of the envelope are sent at once, the rest after
+     * the delay. If it starts with "fast", it answers without a delay.
+     */
+    private static final class Backend extends AbstractHandler {
+
+        private final long delayMs;
+        private final AtomicInteger calls = new AtomicInteger();
+
+        private Backend(long delayMs) {
+            this.delayMs = delayMs;
+        }
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            String body = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            calls.incrementAndGet();
+            Matcher matcher = PRODUCT_ID.matcher(body);
+            String productId = matcher.find() ? matcher.group(1) : "";
+            baseRequest.setHandled(true);
+            boolean slow = productId.startsWith("slow");
+            if (slow) {
+                response.setContentType("text/xml;charset=UTF-8");
+                response.getWriter().write("<SOAP-ENV:Envelope "
+                    + "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"><SOAP-ENV:Body>");
+                response.flushBuffer();
+            }
+            try {
+                Thread.sleep(productId.startsWith("fast") ? 0 : delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (productId.startsWith("fail")) {
+                baseRequest.getHttpChannel().abort(new IOException("Backend failure"));
+                return;
+            }
+            if (!slow) {
+                response.setContentType("text/xml;charset=UTF-8");
+                response.getWriter().write("<SOAP-ENV:Envelope "
+                    + "xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"><SOAP-ENV:Body>");
+            }
+            response.getWriter().write("<Product xmlns=\"http://example.com/ecommerce/schema\"><ProductId>" + productId
+                + "</ProductId><ProductName>Spinner</ProductName><Price>13.14</Price></Product></SOAP-ENV:Body>"
+                + "</SOAP-ENV:Envelope>");
+        }
+    }
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final java.net.http.HttpClient restClient = java.net.http.HttpClient.newBuilder()
+        .version(java.net.http.HttpClient.Version.HTTP_1_1)
+        .build();
+    private Backend backend;
+    private int proxyPort;
+
+    private void stop() throws Exception {
+        for (AutoCloseable resource : resources.reversed()) {
+            resource.close();
+        }
+        resources.clear();
+    }
+
+    private static int start(Server server) throws Exception {
+        server.start();
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    /**
+     * Start the backend and the proxy
+     *
+     * @param threading threading mode of the proxy
+     * @param translatorPoolSize size of the translator pool in async mode
+     */
+    private void start(long backendDelayMs, String threading, int translatorPoolSize) throws Exception {
+        start(backendDelayMs, threading, translatorPoolSize, 1024 * 1024);
+    }
+
+    /**
+     * @param coalesceMaxBytes maximum size of a shared response
+     */
+    private void start(long backendDelayMs, String threading, int translatorPoolSize, int coalesceMaxBytes)
+        throws Exception {
+        backend = new Backend(backendDelayMs);
+        Server backendServer = new Server(0);
+        backendServer.setHandler(backend);
+        int backendPort = start(backendServer);
+        resources.add(backendServer::stop);
+
+        Properties props = new Properties();
+        props.setProperty("server.threading", threading);
+        props.setProperty("client.requestTimeoutMs", "5000");
+        props.setProperty("rest2soap.coalesce.maxBytes", String.valueOf(coalesceMaxBytes));
+        props.setProperty("rest2soap.service.getProduct.targetUrl", "http://localhost:" + backendPort + "/soap");
+        props.setProperty("rest2soap.service.getProduct.restPath", "/order/{productId}");
+        props.setProperty("rest2soap.service.getProduct.restMethod", "get");
+        props.setProperty("rest2soap.service.getProduct.paramList", "productId");
+        props.setProperty("rest2soap.service.getProduct.wsdlUrl", "file://testdata/input/eCommerce.wsdl");
+        props.setProperty("rest2soap.service.getProduct.operationName", "GetProduct");
+        props.setProperty("rest2soap.service.getProduct.description", "GetProduct");
+        props.setProperty("rest2soap.service.getProduct.coalesce", "true");
+        props.setProperty("rest.params.productId.name", "productId");
+        props.setProperty("rest.params.productId.paramType", "path");
+        props.setProperty("rest.params.productId.oasTypeDef", "type:string");
+        props.setProperty("rest.params.productId.jsonPath", "ProductId");
+        ProxySettings settings = ProxySettings.propsToSettings(props);
+
+        Executor executor = null;
+        if (ProxySettings.THREADING_ASYNC.equals(threading)) {
+            ExecutorService translatorPool = Executors.newFixedThreadPool(translatorPoolSize);
+            resources.add(translatorPool::shutdownNow);
+            executor = translatorPool;
+        } else if (ProxySettings.THREADING_VIRTUAL.equals(threading)) {
+            executor = new VirtualThreadExecutor("request", settings.maxConcurrentRequests());
+        }
+        HttpClient httpClient = new HttpClient();
+        ClientHandler clientHandler = new ClientHandler(settings, httpClient, null, executor);
+        Server proxyServer = new Server(0);
+        proxyServer.setHandler(clientHandler);
+        clientHandler.startClient();
+        resources.add(clientHandler::stopClient);
+        proxyPort = start(proxyServer);
+        resources.add(proxyServer::stop);
+    }
+
+    private CompletableFuture<HttpResponse<String>> get(String path) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + proxyPort + path))
+            .timeout(Duration.ofSeconds(10))
+            .build();
+        return restClient.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    public void testCoalescedLeaderDisconnects() throws Exception {
+        for (String threading : List.of(ProxySettings.THREADING_PLATFORM, ProxySettings.THREADING_ASYNC,
+            ProxySettings.THREADING_VIRTUAL)) {
+            try {
+                start(500, threading, 2);
+                testCoalescedLeaderDisconnects(threading);
+            } finally {
+                stop();
+            }
+        }
+    }
+
+    private void testCoalescedLeaderDisconnects(String threading) throws Exception {
+        try (Socket leader = new Socket("localhost", proxyPort)) {
+            OutputStream out = leader.getOutputStream();
+            out.write("GET /order/42 HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            Thread.sleep(150);  // the leader waits for the backend
+        }
+        List<CompletableFuture<HttpResponse<String>>> followers = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            followers.add(get("/order/42"));
+        }
+        for (CompletableFuture<HttpResponse<String>> follower : followers) {
+            HttpResponse<String> response = follower.get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(200, response.statusCode(), threading);
+            Assertions.assertTrue(response.body().contains("\"ProductId\":\"42\""), response.body());
+        }
+        Assertions.assertEquals(1, backend.calls.get(), threading);
+    }
+
+    @Test
+    public void testCoalescedBackendFailure() throws Exception {
+        for (String threading : List.of(ProxySettings.THREADING_PLATFORM, ProxySettings.THREADING_ASYNC,
+            ProxySettings.THREADING_VIRTUAL)) {
+            try {
+                start(300, threading, 2);
+                testCoalescedBackendFailure(threading);
+            } finally {
+                stop();
+            }
+        }
+    }
+
+    private void testCoalescedBackendFailure(String threading) throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(get("/order/fail1"));
+            Thread.sleep(50);
+        }
+        for (CompletableFuture<HttpResponse<String>> request : requests) {
+            Assertions.assertEquals(500, request.get(10, TimeUnit.SECONDS).statusCode(), threading);
+        }
+        Assertions.assertEquals(1, backend.calls.get(), threading);
+
+        // the failed call is not in flight any more
+        Assertions.assertEquals(500, get("/order/fail1").get(10, TimeUnit.SECONDS).statusCode());
+        Assertions.assertEquals(2, backend.calls.get(), threading);
+        Assertions.assertEquals(200, get("/order/43").get(10, TimeUnit.SECONDS).statusCode());
+    }
+
+    @Test
+    public void testCoalescedResponseTooLarge() throws Exception {
+        for (String threading : List.of(ProxySettings.THREADING_PLATFORM, ProxySettings.THREADING_ASYNC,
+            ProxySettings.THREADING_VIRTUAL)) {
+            try {
+                start(500, threading, 2, 10);
+                testCoalescedResponseTooLarge(threading);
+            } finally {
+                stop();
+            }
+        }
+    }
+
+    private void testCoalescedResponseTooLarge(String threading) throws Exception {
+        List<CompletableFuture<HttpResponse<String>>> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(get("/order/44"));
+            Thread.sleep(100);
+        }
+        for (CompletableFuture<HttpResponse<String>> request : requests) {
+            HttpResponse<String> response = request.get(10, TimeUnit.SECONDS);
+            Assertions.assertEquals(200, response.statusCode(), threading);
+            Assertions.assertTrue(response.body().contains("\"ProductId\":\"44\""), response.body());
+        }
+        // the call is abandoned, the collapsed requests make their own calls
+        Assertions.assertEquals(3, backend.calls.get(), threading);
+    }
+
+    @Test
+    public void testSlowResponsesOutnumberTranslators() throws Exception {
+        try {
+            start(500, ProxySettings.THREADING_ASYNC, 2);
+            Assertions.assertEquals(200, get("/order/fast0").get(10, TimeUnit.SECONDS).statusCode());
+
+            List<CompletableFuture<HttpResponse<String>>> requests = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                requests.add(get("/order/slow" + i));
+            }
+            Thread.sleep(100);  // the slow responses are streaming in
+            long start = System.nanoTime();
+            HttpResponse<String> fast = get("/order/fast1").get(10, TimeUnit.SECONDS);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            Assertions.assertEquals(200, fast.statusCode());
+            // the fast request is not queued behind the slow responses on the translator threads
+            Assertions.assertTrue(elapsedMs < 250, elapsedMs + " ms");
+            Assertions.assertTrue(requests.stream().noneMatch(CompletableFuture::isDone));
+
+            for (int i = 0; i < requests.size(); i++) {
+                HttpResponse<String> response = requests.get(i).get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals(200, response.statusCode());
+                Assertions.assertTrue(response.body().contains("\"ProductId\":\"slow" + i + "\""), response.body());
+            }
+        } finally {
+            stop();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.mcsuka.xml.proxy;
+
+import com.mcsuka.xml.http.RequestCoalescer;
+import com.mcsuka.xml.http.ResponseCache;
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+public class TestProxyMetrics {
+
+    private static String write(ProxyMetrics metrics, List<SoapRestServiceDefinition> services,
+                                List<BackendPools.PoolStats> backendPools) throws Exception {
+        StringWriter out = new StringWriter();
+        metrics.write(out, services, backendPools);
+        return out.toString();
+    }
+
+    @Test
+    public void testBuckets() throws Exception {
+        ProxyMetrics metrics = new ProxyMetrics();
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.BACKEND, 100_000);      // on the bound of 0.0001
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.BACKEND, 100_001);      // just above it
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.BACKEND, 0);
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.BACKEND, 60_000_000_000L);
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.BACKEND, 60_000_000_001L);
+
+        String text = write(metrics, List.of(), List.of());
+        String labels = "operation=\"GetProduct\",status=\"200\",phase=\"backend\"";
+        Assertions.assertTrue(text.contains("# TYPE rest2soap_phase_seconds histogram\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_bucket{" + labels + ",le=\"0.0001\"} 2\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_bucket{" + labels + ",le=\"0.00025\"} 3\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_bucket{" + labels + ",le=\"30\"} 3\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_bucket{" + labels + ",le=\"60\"} 4\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_bucket{" + labels + ",le=\"+Inf\"} 5\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_sum{" + labels + "} 120.000200002\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_count{" + labels + "} 5\n"), text);
+    }
+
+    @Test
+    public void testCumulativeSeries() throws Exception {
+        ProxyMetrics metrics = new ProxyMetrics();
+        metrics.record("PlaceOrder", 500, ProxyMetrics.Phase.TOTAL, 3_000_000);
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.TOTAL, 1_000_000);
+        metrics.record("GetProduct", 200, ProxyMetrics.Phase.READ, 1_000);
+
+        String text = write(metrics, List.of(), List.of());
+        List<String> buckets = text.lines()
+            .filter(line -> line.startsWith("rest2soap_phase_seconds_bucket{operation=\"GetProduct\",status=\"200\","
+                + "phase=\"total\""))
+            .toList();
+        Assertions.assertEquals(19, buckets.size());
+        long previous = 0;
+        for (String bucket : buckets) {
+            long count = Long.parseLong(bucket.substring(bucket.lastIndexOf(' ') + 1));
+            Assertions.assertTrue(count >= previous, bucket);
+            previous = count;
+        }
+        Assertions.assertTrue(buckets.get(2).endsWith("le=\"0.0005\"} 0"), buckets.get(2));
+        Assertions.assertTrue(buckets.get(3).endsWith("le=\"0.001\"} 1"), buckets.get(3));
+
+        // series sorted by operation, status and phase
+        int read = text.indexOf("operation=\"GetProduct\",status=\"200\",phase=\"read\"");
+        int total = text.indexOf("operation=\"GetProduct\",status=\"200\",phase=\"total\"");
+        int placeOrder = text.indexOf("operation=\"PlaceOrder\",status=\"500\",phase=\"total\"");
+        Assertions.assertTrue(read >= 0 && read < total && total < placeOrder, text);
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_sum{operation=\"PlaceOrder\",status=\"500\","
+            + "phase=\"total\"} 0.003\n"), text);
+    }
+
+    @Test
+    public void testLabelEscaping() throws Exception {
+        ProxyMetrics metrics = new ProxyMetrics();
+        metrics.record("a\"b\\c\nd", 200, ProxyMetrics.Phase.TOTAL, 1);
+        metrics.addPool("pool \"1\"", () -> 1, () -> 2, () -> 3);
+
+        String text = write(metrics, List.of(), List.of());
+        Assertions.assertTrue(text.contains("rest2soap_phase_seconds_count{operation=\"a\\\"b\\\\c\\nd\",status=\"200\","
+            + "phase=\"total\"} 1\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_pool_active_threads{pool=\"pool \\\"1\\\"\"} 1\n"), text);
+        Assertions.assertEquals(0, text.lines().filter(line -> line.startsWith("d\"")).count());
+    }
+
+    @Test
+    public void testGauges() throws Exception {
+        ProxyMetrics metrics = new ProxyMetrics();
+        int[] active = {3};
+        metrics.addPool("translator", () -> active[0], () -> 8, () -> 5);
+        SoapRestServiceDefinition service = new SoapRestServiceDefinition(
+            "http://dummy.net/soap",
+            "/order/{productId}",
+            "get",
+            List.of(),
+            new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"),
+            "GetProduct",
+            "GetProduct",
+            SoapRestServiceDefinition.Options.DEFAULT.withCacheSettings(new ResponseCache.Settings(60_000, 10, 1000))
+                .withCoalesce(true));
+        ResponseCache cache = service.getResponseCache().orElseThrow();
+        cache.put("key", new byte[10]);
+        cache.get("key");
+        cache.get("other");
+        RequestCoalescer coalescer = service.getRequestCoalescer().orElseThrow();
+        RequestCoalescer.Call leader = coalescer.begin("key");
+        coalescer.begin("key");
+        leader.complete(new RequestCoalescer.Result(200, new byte[0]));
+        List<BackendPools.PoolStats> backendPools =
+            List.of(new BackendPools.PoolStats("http://localhost:9090", 64, 6, 4, 2, 1, 7));
+
+        String text = write(metrics, List.of(service), backendPools);
+        Assertions.assertTrue(text.contains("rest2soap_pool_active_threads{pool=\"translator\"} 3\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_pool_max_threads{pool=\"translator\"} 8\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_pool_queued_tasks{pool=\"translator\"} 5\n"), text);
+        active[0] = 4;      // gauges are read when the metrics are written
+        Assertions.assertTrue(write(metrics, List.of(service), backendPools)
+            .contains("rest2soap_pool_active_threads{pool=\"translator\"} 4\n"));
+
+        String destination = "destination=\"http://localhost:9090\"";
+        Assertions.assertTrue(text.contains("rest2soap_backend_connections{" + destination + ",state=\"active\"} 4\n"));
+        Assertions.assertTrue(text.contains("rest2soap_backend_connections{" + destination + ",state=\"idle\"} 2\n"));
+        Assertions.assertTrue(text.contains("rest2soap_backend_connections{" + destination + ",state=\"pending\"} 1\n"));
+        Assertions.assertTrue(text.contains("rest2soap_backend_max_connections{" + destination + "} 64\n"));
+        Assertions.assertTrue(text.contains("rest2soap_backend_queued_requests{" + destination + "} 7\n"));
+
+        String serviceLabels = "operation=\"GetProduct\",path=\"/order/{productId}\"";
+        Assertions.assertTrue(text.contains("rest2soap_cache_hits_total{" + serviceLabels + "} 1\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_cache_misses_total{" + serviceLabels + "} 1\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_cache_evictions_total{" + serviceLabels + "} 0\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_cache_bytes{" + serviceLabels + "} 13\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_coalesced_calls_total{" + serviceLabels + "} 1\n"), text);
+        Assertions.assertTrue(text.contains("rest2soap_collapsed_requests_total{" + serviceLabels + "} 1\n"), text);
+    }
+}
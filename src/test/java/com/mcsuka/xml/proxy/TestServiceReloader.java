@@ -0,0 +1,217 @@
+package com.mcsuka.xml.proxy;
+
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class TestServiceReloader {
+
+    private static final Path WSDL = Path.of("testdata/input/eCommerce.wsdl");
+
+    private static Properties serviceProps(Path dir) {
+        Properties props = new Properties();
+        addService(props, "getProduct", "/order/{productId}", dir.resolve("eCommerce.wsdl"));
+        props.setProperty("rest.params.productId.name", "productId");
+        props.setProperty("rest.params.productId.paramType", "path");
+        props.setProperty("rest.params.productId.oasTypeDef", "type:string");
+        props.setProperty("rest.params.productId.jsonPath", "ProductId");
+        return props;
+    }
+
+    private static void addService(Properties props, String name, String restPath, Path wsdl) {
+        String prefix = "rest2soap.service." + name;
+        props.setProperty(prefix + ".targetUrl", "http://localhost:9090/soap");
+        props.setProperty(prefix + ".restPath", restPath);
+        props.setProperty(prefix + ".restMethod", "get");
+        props.setProperty(prefix + ".paramList", "productId");
+        props.setProperty(prefix + ".wsdlUrl", "file://" + wsdl.toAbsolutePath());
+        props.setProperty(prefix + ".operationName", "GetProduct");
+        props.setProperty(prefix + ".description", "GetProduct");
+    }
+
+    private static void write(Properties props, Path file) throws IOException {
+        try (Writer writer = new FileWriter(file.toFile())) {
+            props.store(writer, null);
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /**
+     * The reloader of the properties, with the service definitions built from them. The reloaded lists are added to
+     * reloads.
+     */
+    private static ServiceReloader newReloader(Path propsFile, Properties props,
+                                               List<List<SoapRestServiceDefinition>> reloads) throws Exception {
+        List<SoapRestServiceDefinition> serviceDefs = new ArrayList<>();
+        for (String prefix : ProxySettings.servicePrefixes(props)) {
+            serviceDefs.add(ProxySettings.propsToServiceDef(props, prefix, null));
+        }
+        return new ServiceReloader(propsFile, props, serviceDefs, reloads::add);
+    }
+
+    private static SoapRestServiceDefinition find(List<SoapRestServiceDefinition> serviceDefs, String restPath) {
+        return serviceDefs.stream().filter(s -> s.getRestPath().equals(restPath)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        Path dir = Files.createTempDirectory("reload");
+        try {
+            Path propsFile = dir.resolve("rest2soap.properties");
+            Path wsdl = dir.resolve("eCommerce.wsdl");
+            Path otherWsdl = dir.resolve("eCommerce2.wsdl");
+            Files.copy(WSDL, wsdl);
+            Files.copy(WSDL, otherWsdl);
+            Properties props = serviceProps(dir);
+            addService(props, "getOther", "/other/{productId}", otherWsdl);
+            write(props, propsFile);
+            List<List<SoapRestServiceDefinition>> reloads = new ArrayList<>();
+            ServiceReloader reloader = newReloader(propsFile, props, reloads);
+            try {
+                // unchanged
+                reloader.reload(Set.of(propsFile));
+                Assertions.assertEquals(0, reloads.size());
+
+                // changed WSDL, only its service is rebuilt
+                Files.copy(WSDL, wsdl, StandardCopyOption.REPLACE_EXISTING);
+                reloader.reload(Set.of(wsdl.toAbsolutePath().normalize()));
+                Assertions.assertEquals(1, reloads.size());
+                List<SoapRestServiceDefinition> first = reloads.get(0);
+                Assertions.assertEquals(2, first.size());
+
+                // changed properties
+                props.setProperty("rest2soap.service.getOther.description", "Other product");
+                write(props, propsFile);
+                reloader.reload(Set.of(propsFile));
+                Assertions.assertEquals(2, reloads.size());
+                List<SoapRestServiceDefinition> second = reloads.get(1);
+                Assertions.assertSame(find(first, "/order/{productId}"), find(second, "/order/{productId}"));
+                Assertions.assertNotSame(find(first, "/other/{productId}"), find(second, "/other/{productId}"));
+                Assertions.assertEquals("Other product", find(second, "/other/{productId}").getDescription());
+
+                // added
+                addService(props, "getNew", "/new/{productId}", wsdl);
+                write(props, propsFile);
+                reloader.reload(Set.of(propsFile));
+                Assertions.assertEquals(3, reloads.size());
+                Assertions.assertEquals(3, reloads.get(2).size());
+                Assertions.assertSame(find(second, "/other/{productId}"), find(reloads.get(2), "/other/{productId}"));
+
+                // removed
+                props.keySet().removeIf(key -> key.toString().startsWith("rest2soap.service.getNew."));
+                write(props, propsFile);
+                reloader.reload(Set.of(propsFile));
+                Assertions.assertEquals(4, reloads.size());
+                Assertions.assertEquals(2, reloads.get(3).size());
+                Assertions.assertTrue(reloads.get(3).stream().noneMatch(s -> s.getRestPath().startsWith("/new")));
+            } finally {
+                reloader.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    @Test
+    public void testFailedRebuild() throws Exception {
+        Path dir = Files.createTempDirectory("reload");
+        try {
+            Path propsFile = dir.resolve("rest2soap.properties");
+            Path wsdl = dir.resolve("eCommerce.wsdl");
+            Files.copy(WSDL, wsdl);
+            Properties props = serviceProps(dir);
+            write(props, propsFile);
+            List<List<SoapRestServiceDefinition>> reloads = new ArrayList<>();
+            ServiceReloader reloader = newReloader(propsFile, props, reloads);
+            try {
+                // the previous definition is kept, nothing to swap
+                Files.writeString(wsdl, "<definitions");
+                reloader.reload(Set.of(wsdl.toAbsolutePath().normalize()));
+                Assertions.assertEquals(0, reloads.size());
+
+                // the previous definition is kept next to the rebuilt services
+                addService(props, "getNew", "/new/{productId}", WSDL);
+                write(props, propsFile);
+                reloader.reload(Set.of(propsFile));
+                Assertions.assertEquals(1, reloads.size());
+                List<SoapRestServiceDefinition> reloaded = reloads.get(0);
+                Assertions.assertEquals(2, reloaded.size());
+                Assertions.assertEquals("GetProduct", find(reloaded, "/order/{productId}").getDescription());
+
+                // rebuilt again when the WSDL is fixed
+                Files.copy(WSDL, wsdl, StandardCopyOption.REPLACE_EXISTING);
+                reloader.reload(Set.of(wsdl.toAbsolutePath().normalize()));
+                Assertions.assertEquals(2, reloads.size());
+                Assertions.assertNotSame(find(reloaded, "/order/{productId}"),
+                    find(reloads.get(1), "/order/{productId}"));
+                Assertions.assertSame(find(reloaded, "/new/{productId}"), find(reloads.get(1), "/new/{productId}"));
+            } finally {
+                reloader.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * The files of a Kubernetes ConfigMap volume are links to ..data/file, and ..data is a link to a directory of the
+     * current version, swapped at once when the ConfigMap changes
+     */
+    @Test
+    public void testLinkSwap() throws Exception {
+        Path dir = Files.createTempDirectory("reload");
+        try {
+            Path version1 = Files.createDirectory(dir.resolve("..v1"));
+            Properties props = serviceProps(dir);
+            write(props, version1.resolve("rest2soap.properties"));
+            Files.copy(WSDL, version1.resolve("eCommerce.wsdl"));
+            Files.createSymbolicLink(dir.resolve("..data"), version1.getFileName());
+            Path propsFile = Files.createSymbolicLink(dir.resolve("rest2soap.properties"),
+                Path.of("..data/rest2soap.properties"));
+            Files.createSymbolicLink(dir.resolve("eCommerce.wsdl"), Path.of("..data/eCommerce.wsdl"));
+
+            CompletableFuture<List<SoapRestServiceDefinition>> reloaded = new CompletableFuture<>();
+            List<SoapRestServiceDefinition> serviceDefs = List.of(
+                ProxySettings.propsToServiceDef(props, "rest2soap.service.getProduct", null));
+            ServiceReloader reloader = new ServiceReloader(propsFile, props, serviceDefs, reloaded::complete);
+            try {
+                reloader.start();
+                Path version2 = Files.createDirectory(dir.resolve("..v2"));
+                props.setProperty("rest2soap.service.getProduct.description", "Product");
+                write(props, version2.resolve("rest2soap.properties"));
+                Files.copy(WSDL, version2.resolve("eCommerce.wsdl"));
+                Path newLink = Files.createSymbolicLink(dir.resolve("..data_tmp"), version2.getFileName());
+                Files.move(newLink, dir.resolve("..data"), StandardCopyOption.ATOMIC_MOVE);
+
+                List<SoapRestServiceDefinition> services = reloaded.get(10, TimeUnit.SECONDS);
+                Assertions.assertEquals("Product", services.get(0).getDescription());
+            } finally {
+                reloader.close();
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+}
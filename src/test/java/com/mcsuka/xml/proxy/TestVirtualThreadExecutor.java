@@ -0,0 +1,68 @@
+package com.mcsuka.xml.proxy;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class TestVirtualThreadExecutor {
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                await(release);
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        waitFor(() -> executor.getWaitingCount() == 7);
+        Assertions.assertEquals(3, executor.getMaxConcurrency());
+        Assertions.assertEquals(3, executor.getRunningCount());
+        Assertions.assertEquals(7, executor.getWaitingCount());
+        Assertions.assertEquals(3, running.get());
+
+        release.countDown();
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(3, maxRunning.get());
+        // the permit is released after the task
+        waitFor(() -> executor.getRunningCount() == 0);
+        Assertions.assertEquals(0, executor.getRunningCount());
+    }
+
+    @Test
+    public void testFailedTaskReleasesPermit() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 1);
+        executor.execute(() -> {
+            throw new IllegalStateException("Task failure");
+        });
+        CountDownLatch done = new CountDownLatch(1);
+        executor.execute(done::countDown);
+        Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -1,12 +1,30 @@
 package com.mcsuka.xml.xsd.model;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPathExpressionException;
 
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
 
+import com.mcsuka.xml.xsd.tools.DocumentSource;
 import com.mcsuka.xml.xsd.tools.DocumentSourceException;
+import com.mcsuka.xml.xsd.tools.MappedDocumentSource;
+import com.mcsuka.xml.xsd.tools.SoapVersion;
 import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
 import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
 import com.mcsuka.xml.testtools.GenericTools;
@@ -75,6 +93,117 @@ public class TestSchemaParser {
         GenericTools.assertEquals(expected, actual);
     }
 
+    @Test
+    public void testParallelImports() throws Exception {
+        Map<String, Integer> loaded = new ConcurrentHashMap<>();
+        DocumentSource countingSource = new XsdDocumentSource() {
+            @Override
+            public Document parse(String url) throws DocumentSourceException {
+                loaded.merge(url, 1, Integer::sum);
+                return super.parse(url);
+            }
+        };
+        SchemaParserFactory.clearCache();
+        SchemaNode n = SchemaParserFactory.newSchemaParser("testdata/input/Complex.xsd", countingSource).parse("root");
+        GenericTools.assertEquals(GenericTools.getResourceFile("testdata/output/Complex.txt"), collectResult(n));
+
+        List<String> types = List.of("Skeleton", "Header", "Priority", "Result", "Data");
+        Assertions.assertEquals(types.size() + 1, loaded.size());
+        Assertions.assertTrue(loaded.values().stream().allMatch(count -> count == 1), loaded.toString());
+        for (String type : types) {
+            Assertions.assertTrue(SchemaParserFactory.isCached("testdata/input/types/" + type + ".xsd"), type);
+        }
+    }
+
+    @Test
+    public void testSingleLoaderPerUrl() throws Exception {
+        Map<String, Integer> loaded = new ConcurrentHashMap<>();
+        DocumentSource countingSource = new XsdDocumentSource() {
+            @Override
+            public Document parse(String url) throws DocumentSourceException {
+                loaded.merge(url, 1, Integer::sum);
+                return super.parse(url);
+            }
+        };
+        SchemaParserFactory.clearCache();
+        List<Future<SchemaParser>> results = new ArrayList<>();
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", countingSource)));
+            }
+        }
+        SchemaParser first = results.get(0).get();
+        for (Future<SchemaParser> result : results) {
+            Assertions.assertSame(first, result.get());
+        }
+        Assertions.assertEquals(Map.of("testdata/input/Simple.xsd", 1), loaded);
+    }
+
+    @Test
+    public void testCacheEviction() throws Exception {
+        SchemaParserFactory.clearCache();
+        try {
+            SchemaParserFactory.setCacheLimits(2, Long.MAX_VALUE);
+            SchemaParser simple = SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource());
+            SchemaParserFactory.newSchemaParser("testdata/input/Choice2.xsd", new XsdDocumentSource());
+            Assertions.assertSame(simple, SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource()));
+            long evictions = SchemaParserFactory.getCacheStats().evictionCount();
+            SchemaParserFactory.newSchemaParser("testdata/input/Group.xsd", new XsdDocumentSource());
+            Assertions.assertEquals(evictions + 1, SchemaParserFactory.getCacheStats().evictionCount());
+            Assertions.assertTrue(SchemaParserFactory.isCached("testdata/input/Simple.xsd"));
+            Assertions.assertFalse(SchemaParserFactory.isCached("testdata/input/Choice2.xsd"));
+            Assertions.assertTrue(SchemaParserFactory.isCached("testdata/input/Group.xsd"));
+
+            SchemaParserFactory.setCacheLimits(Integer.MAX_VALUE, simple.getWeight());
+            Assertions.assertEquals(1, SchemaParserFactory.getCacheStats().size());
+            Assertions.assertTrue(SchemaParserFactory.isCached("testdata/input/Group.xsd"));
+        } finally {
+            SchemaParserFactory.setCacheLimits(Integer.MAX_VALUE, Long.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void testCacheWeight() throws Exception {
+        SchemaParserFactory.clearCache();
+        Assertions.assertEquals(0, SchemaParserFactory.getCacheStats().weight());
+        SchemaParser simple = SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource());
+        SchemaParser group = SchemaParserFactory.newSchemaParser("testdata/input/Group.xsd", new XsdDocumentSource());
+        Assertions.assertEquals(simple.getWeight() + group.getWeight(), SchemaParserFactory.getCacheStats().weight());
+
+        Assertions.assertTrue(SchemaParserFactory.invalidate("testdata/input/Simple.xsd"));
+        Assertions.assertFalse(SchemaParserFactory.invalidate("testdata/input/Simple.xsd"));
+        Assertions.assertEquals(group.getWeight(), SchemaParserFactory.getCacheStats().weight());
+
+        SchemaParserFactory.clearCache();
+        Assertions.assertEquals(0, SchemaParserFactory.getCacheStats().weight());
+        Assertions.assertEquals(0, SchemaParserFactory.getCacheStats().size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        SchemaParserFactory.clearCache();
+        SchemaParserFactory.CacheStats before = SchemaParserFactory.getCacheStats();
+        SchemaParser simple = SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource());
+        SchemaParser choice = SchemaParserFactory.newSchemaParser("testdata/input/Choice2.xsd", new XsdDocumentSource());
+        Assertions.assertSame(simple, SchemaParserFactory.newSchemaParser("./testdata/input/Simple.xsd", new XsdDocumentSource()));
+
+        Assertions.assertTrue(SchemaParserFactory.invalidate("testdata/input/Simple.xsd"));
+        Assertions.assertFalse(SchemaParserFactory.invalidate("testdata/input/Simple.xsd"));
+        Assertions.assertNotSame(simple, SchemaParserFactory.newSchemaParser("testdata/input/Simple.xsd", new XsdDocumentSource()));
+        Assertions.assertSame(choice, SchemaParserFactory.newSchemaParser("testdata/input/Choice2.xsd", new XsdDocumentSource()));
+
+        SchemaParserFactory.CacheStats after = SchemaParserFactory.getCacheStats();
+        Assertions.assertEquals(2, after.hitCount() - before.hitCount());
+        Assertions.assertEquals(3, after.missCount() - before.missCount());
+        Assertions.assertEquals(2, after.size());
+        Assertions.assertTrue(after.totalLoadTimeNanos() > before.totalLoadTimeNanos());
+
+        Assertions.assertThrows(DocumentSourceException.class,
+            () -> SchemaParserFactory.newSchemaParser("testdata/input/Missing.xsd", new XsdDocumentSource()));
+        Assertions.assertFalse(SchemaParserFactory.isCached("testdata/input/Missing.xsd"));
+        Assertions.assertEquals(after.loadFailureCount() + 1, SchemaParserFactory.getCacheStats().loadFailureCount());
+    }
+
     @Test
     public void testRestriction() throws Exception {
         String actual = parseXsdFile("testdata/input/Restriction.xsd", "root");
@@ -104,6 +233,68 @@ public class TestSchemaParser {
         GenericTools.assertEquals("Operation", actual.get(0));
     }
 
+    @Test
+    public void testWsdlIndex() throws Exception {
+        WsdlDocumentSource ws = new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl");
+        Assertions.assertEquals(List.of("http://example.com/ecommerce/GetProduct", "http://example.com/ecommerce/PlaceOrder"),
+            ws.getSoapActions());
+        WsdlDocumentSource.SoapOperation op = ws.getOperation("PlaceOrder").orElseThrow();
+        Assertions.assertEquals("http://example.com/ecommerce/PlaceOrder", op.soapAction());
+        Assertions.assertEquals(new QName("http://example.com/ecommerce/schema", "Order", "my"), op.requestRootElement());
+        Assertions.assertEquals("my", op.requestRootElement().getPrefix());
+        Assertions.assertEquals(new QName("http://example.com/ecommerce/schema", "OrderStatus"), op.responseRootElement());
+        Assertions.assertTrue(ws.getOperation("CancelOrder").isEmpty());
+        Assertions.assertEquals("http://example.com/ecommerce", ws.getPrefixMap().get("tns"));
+        Assertions.assertEquals(Set.of("http://example.com/ecommerce/schema"), ws.getSchemaNamespaces());
+        Assertions.assertEquals(Path.of("testdata/input/eCommerce.wsdl").toAbsolutePath(), ws.getFile().orElseThrow());
+
+        Document schema = ws.parse("http://example.com/ecommerce/schema");
+        Assertions.assertEquals("schema", schema.getDocumentElement().getLocalName());
+        Assertions.assertNotSame(schema, ws.parse("http://example.com/ecommerce/schema"));
+        Assertions.assertThrows(DocumentSourceException.class, () -> ws.parse("http://example.com/unknown"));
+        Assertions.assertEquals(SoapVersion.SOAP_11, op.soapVersion());
+
+        WsdlDocumentSource ws12 = new WsdlDocumentSource("file://testdata/input/eCommerce12.wsdl");
+        Assertions.assertEquals(SoapVersion.SOAP_12, ws12.getOperation("PlaceOrder").orElseThrow().soapVersion());
+    }
+
+    @Test
+    public void testMappedFiles() throws Exception {
+        SchemaParserFactory.clearCache();
+        SchemaNode n = SchemaParserFactory.newSchemaParser("testdata/input/Complex.xsd", new MappedDocumentSource()).parse("root");
+        GenericTools.assertEquals(GenericTools.getResourceFile("testdata/output/Complex.txt"), collectResult(n));
+        SchemaParserFactory.clearCache();
+    }
+
+    @Test
+    public void testMappedBundle() throws Exception {
+        Path bundle = Files.createTempFile("schemas", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(bundle))) {
+            for (String name : List.of("Complex.xsd", "types/Skeleton.xsd", "types/Header.xsd", "types/Priority.xsd",
+                    "types/Result.xsd", "types/Data.xsd")) {
+                byte[] content = Files.readAllBytes(Path.of("testdata/input", name));
+                ZipEntry entry = new ZipEntry("testdata/input/" + name);
+                if (name.startsWith("types/H")) {
+                    // a stored entry, the rest are deflated
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        MappedDocumentSource source = new MappedDocumentSource(bundle);
+        SchemaParserFactory.clearCache();
+        SchemaNode n = SchemaParserFactory.newSchemaParser("testdata/input/Complex.xsd", source).parse("root");
+        GenericTools.assertEquals(GenericTools.getResourceFile("testdata/output/Complex.txt"), collectResult(n));
+        SchemaParserFactory.clearCache();
+        Assertions.assertThrows(DocumentSourceException.class, () -> source.parse("testdata/input/Simple.xsd"));
+    }
+
     @Test
     public void testChoice() throws Exception {
         String actual = parseXsdFile("testdata/input/Choice.xsd", "root");
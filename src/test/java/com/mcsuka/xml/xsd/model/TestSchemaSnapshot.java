@@ -0,0 +1,116 @@
+package com.mcsuka.xml.xsd.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.mcsuka.xml.http.SoapRestServiceDefinition;
+import com.mcsuka.xml.xsd.tools.SoapVersion;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource;
+import com.mcsuka.xml.xsd.tools.WsdlDocumentSource.SoapOperation;
+import com.mcsuka.xml.xsd.tools.XsdDocumentSource;
+
+public class TestSchemaSnapshot {
+
+    private static SchemaNode parse(String xsdFileName, String rootElem) throws Exception {
+        return SchemaParserFactory.newSchemaParser(xsdFileName, new XsdDocumentSource()).parse(rootElem);
+    }
+
+    private static SchemaSnapshot roundTrip(SchemaSnapshot snapshot) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        snapshot.write(out);
+        return SchemaSnapshot.read(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    private static void assertSameModel(SchemaNode expected, SchemaNode actual) {
+        Assertions.assertEquals(expected.toString(), actual.toString());
+        Assertions.assertEquals(expected.getOptionalValue(), actual.getOptionalValue(), expected.getPath());
+        Assertions.assertEquals(expected.getRestrictions(), actual.getRestrictions(), expected.getPath());
+        Assertions.assertEquals(expected.isRecursive(), actual.isRecursive(), expected.getPath());
+        Assertions.assertEquals(expected.isLeaf(), actual.isLeaf(), expected.getPath());
+        Assertions.assertEquals(expected.getChildren().size(), actual.getChildren().size(), expected.getPath());
+        if (!expected.isRecursive()) {
+            for (int i = 0; i < expected.getChildren().size(); i++) {
+                SchemaNode child = actual.getChildren().get(i);
+                Assertions.assertSame(actual, child.getParent());
+                assertSameModel(expected.getChildren().get(i), child);
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (String root : List.of("root1", "root2", "root3")) {
+            SchemaNode expected = parse("testdata/input/Simple.xsd", root);
+            SchemaNode actual = roundTrip(new SchemaSnapshot(null, expected, null)).getRequestSchema().orElseThrow();
+            assertSameModel(expected, actual);
+            Assertions.assertEquals(expected.dumpTree(), actual.dumpTree());
+        }
+    }
+
+    @Test
+    public void testRestrictions() throws Exception {
+        SchemaNode expected = parse("testdata/input/Restriction.xsd", "root");
+        SchemaSnapshot snapshot = roundTrip(new SchemaSnapshot(null, null, expected));
+        Assertions.assertTrue(snapshot.getRequestSchema().isEmpty());
+        assertSameModel(expected, snapshot.getResponseSchema().orElseThrow());
+    }
+
+    @Test
+    public void testRecursiveDefinition() throws Exception {
+        SchemaNode root = roundTrip(new SchemaSnapshot(null, parse("testdata/input/Simple.xsd", "root2"), null))
+            .getRequestSchema().orElseThrow();
+        SchemaNode address = root.getChild("address");
+        SchemaNode nested = address.getChild("address");
+        Assertions.assertTrue(nested.isRecursive());
+        Assertions.assertSame(address.getChildren(), nested.getChildren());
+        Assertions.assertSame(address.getChild("street"), nested.getChild("street"));
+    }
+
+    @Test
+    public void testOperation() throws Exception {
+        SoapOperation op = new SoapOperation("urn:action",
+            new QName("http://dummy.net/a", "Request", "a"),
+            new QName("http://dummy.net/b", "Response"));
+        Assertions.assertEquals(op, roundTrip(new SchemaSnapshot(op, null, null)).getOperation().orElseThrow());
+        SoapOperation op12 = new SoapOperation("", op.requestRootElement(), op.responseRootElement(),
+            SoapVersion.SOAP_12);
+        Assertions.assertEquals(op12, roundTrip(new SchemaSnapshot(op12, null, null)).getOperation().orElseThrow());
+    }
+
+    @Test
+    public void testInvalidSnapshot() throws Exception {
+        Assertions.assertThrows(IOException.class,
+            () -> SchemaSnapshot.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8})));
+        Path dir = Files.createTempDirectory("snapshots");
+        Files.write(dir.resolve("broken.xsds"), new byte[]{0x58, 0x53, 0x44, 0x53, 0, 0, 0, 1, 5});
+        Assertions.assertTrue(SchemaSnapshot.load(dir, "broken").isEmpty());
+        Assertions.assertTrue(SchemaSnapshot.load(dir, "missing").isEmpty());
+    }
+
+    @Test
+    public void testServiceDefinitionSnapshot() throws Exception {
+        Path dir = Files.createTempDirectory("snapshots");
+        WsdlDocumentSource wsdlSource = new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl");
+        SoapRestServiceDefinition parsed = new SoapRestServiceDefinition("http://dummy.net/soap", "/order", "post",
+            List.of(), wsdlSource, "PlaceOrder", "PlaceOrder",
+            SoapRestServiceDefinition.Options.DEFAULT.withSnapshotDir(dir));
+        Assertions.assertTrue(Files.exists(dir.resolve(wsdlSource.getContentHash() + "-PlaceOrder.xsds")));
+
+        SoapRestServiceDefinition restored = new SoapRestServiceDefinition("http://dummy.net/soap", "/order", "post",
+            List.of(), new WsdlDocumentSource("file://testdata/input/eCommerce.wsdl"), "PlaceOrder", "PlaceOrder",
+            SoapRestServiceDefinition.Options.DEFAULT.withSnapshotDir(dir));
+        Assertions.assertEquals(parsed.getOperation(), restored.getOperation());
+        Assertions.assertEquals(parsed.getSoapAction(), restored.getSoapAction());
+        assertSameModel(parsed.getRequestSchema().orElseThrow(), restored.getRequestSchema().orElseThrow());
+        assertSameModel(parsed.getResponseSchema().orElseThrow(), restored.getResponseSchema().orElseThrow());
+    }
+}